@@ -0,0 +1,57 @@
+package ca.awoo.jabert.processor;
+
+import javax.lang.model.type.TypeKind;
+
+/**
+ * A field the generated serializer reads and writes, worked out the same way ReflectionPlan does it at runtime.
+ */
+final class FieldModel {
+    /**
+     * How a field is serialized.
+     */
+    enum Kind {
+        PLAIN, OPTIONAL, MAP, COLLECTION
+    }
+
+    final String name;
+    final int index;
+    final Kind kind;
+    /**
+     * The kind of a primitive field, or null if the field is not primitive.
+     */
+    final TypeKind primitive;
+    /**
+     * The erasure of the type of the field, as it is written in source.
+     */
+    final String type;
+    /**
+     * Whether the field is private or final, so the generated code has to go through reflection.
+     */
+    final boolean reflective;
+    final boolean serializeAsNull;
+    /**
+     * The type inside an Optional, the value type of a Map or the element type of a Collection, or null if it could not be resolved.
+     */
+    final String elementType;
+    /**
+     * For maps, whether the keys are declared as Strings.
+     */
+    final boolean stringKeys;
+    /**
+     * For maps and collections, the expression that creates an empty one.
+     */
+    final String newContainer;
+
+    FieldModel(String name, int index, Kind kind, TypeKind primitive, String type, boolean reflective, boolean serializeAsNull, String elementType, boolean stringKeys, String newContainer){
+        this.name = name;
+        this.index = index;
+        this.kind = kind;
+        this.primitive = primitive;
+        this.type = type;
+        this.reflective = reflective;
+        this.serializeAsNull = serializeAsNull;
+        this.elementType = elementType;
+        this.stringKeys = stringKeys;
+        this.newContainer = newContainer;
+    }
+}
@@ -0,0 +1,247 @@
+package ca.awoo.jabert.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import ca.awoo.jabert.GeneratedSerializer;
+import ca.awoo.jabert.SerializeAsNull;
+
+/**
+ * Generates a serializer for every class marked with {@link ca.awoo.jabert.GenerateSerializer}.
+ * <p>
+ * The generated serializers extend {@link GeneratedSerializer} and are found at runtime by {@link ca.awoo.jabert.Serializers#defaultSerializer()}.
+ * Classes the generated code could not create or refer to are reported as errors, since the annotation asks for a serializer that can not be made.
+ * </p>
+ */
+@SupportedAnnotationTypes("ca.awoo.jabert.GenerateSerializer")
+public class SerializerProcessor extends AbstractProcessor {
+    /**
+     * A class that can not have a serializer generated for it.
+     */
+    private static final class InvalidClassException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final Element element;
+
+        InvalidClassException(String message, Element element){
+            super(message);
+            this.element = element;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion(){
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round){
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement("ca.awoo.jabert.GenerateSerializer");
+        if(annotation == null){
+            return false;
+        }
+        for(Element element : round.getElementsAnnotatedWith(annotation)){
+            try{
+                if(element.getKind() != ElementKind.CLASS){
+                    throw new InvalidClassException("@GenerateSerializer can only be used on classes", element);
+                }
+                TypeElement type = (TypeElement)element;
+                String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+                String source = new SerializerWriter(packageOf(type).getQualifiedName().toString(), GeneratedSerializer.nameFor(binaryName),
+                    erasure(type.asType()), fields(type)).write();
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(GeneratedSerializer.nameFor(binaryName), type);
+                Writer writer = file.openWriter();
+                try{
+                    writer.write(source);
+                }finally{
+                    writer.close();
+                }
+            }catch(InvalidClassException e){
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            }catch(IOException e){
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write serializer: " + e.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the class can be created by the generated code and works out its fields.
+     */
+    private List<FieldModel> fields(TypeElement type) throws InvalidClassException {
+        if(type.getModifiers().contains(Modifier.ABSTRACT)){
+            throw new InvalidClassException("Can not generate a serializer for an abstract class", type);
+        }
+        if(type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS){
+            throw new InvalidClassException("Can not generate a serializer for a local class", type);
+        }
+        for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()){
+            if(e.getModifiers().contains(Modifier.PRIVATE)){
+                throw new InvalidClassException("Can not generate a serializer for a private class", type);
+            }
+            if(((TypeElement)e).getNestingKind() == NestingKind.MEMBER && !e.getModifiers().contains(Modifier.STATIC)){
+                throw new InvalidClassException("Can not generate a serializer for an inner class, it must be static", type);
+            }
+        }
+        boolean constructor = false;
+        for(ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())){
+            if(c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)){
+                constructor = true;
+            }
+        }
+        if(!constructor){
+            throw new InvalidClassException("Generated serializers need a constructor with no arguments that is not private", type);
+        }
+        PackageElement pkg = packageOf(type);
+        List<FieldModel> fields = new ArrayList<FieldModel>();
+        for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())){
+            Set<Modifier> modifiers = field.getModifiers();
+            if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)){
+                continue;
+            }
+            fields.add(field(field, fields.size(), pkg));
+        }
+        return fields;
+    }
+
+    private FieldModel field(VariableElement field, int index, PackageElement pkg) throws InvalidClassException {
+        Types types = processingEnv.getTypeUtils();
+        Elements elements = processingEnv.getElementUtils();
+        String name = field.getSimpleName().toString();
+        TypeMirror type = field.asType();
+        checkVisible(types.erasure(type), pkg, field);
+        boolean reflective = field.getModifiers().contains(Modifier.PRIVATE) || field.getModifiers().contains(Modifier.FINAL);
+        boolean serializeAsNull = field.getAnnotation(SerializeAsNull.class) != null;
+        if(type.getKind().isPrimitive()){
+            return new FieldModel(name, index, FieldModel.Kind.PLAIN, type.getKind(), type.toString(), reflective, serializeAsNull, null, false, null);
+        }
+        List<? extends TypeMirror> arguments = type.getKind() == TypeKind.DECLARED ? ((DeclaredType)type).getTypeArguments() : new ArrayList<TypeMirror>();
+        FieldModel.Kind kind = FieldModel.Kind.PLAIN;
+        String elementType = null;
+        boolean stringKeys = false;
+        String newContainer = null;
+        if(isA(type, "ca.awoo.fwoabl.Optional")){
+            kind = FieldModel.Kind.OPTIONAL;
+            elementType = argument(arguments, 0, pkg, field);
+        }else if(isA(type, "java.util.Map")){
+            kind = FieldModel.Kind.MAP;
+            elementType = argument(arguments, 1, pkg, field);
+            stringKeys = "java.lang.String".equals(argument(arguments, 0, pkg, field));
+            newContainer = newContainer(type, "java.util.Map", "java.util.HashMap<String, Object>");
+        }else if(isA(type, "java.util.Collection")){
+            kind = FieldModel.Kind.COLLECTION;
+            elementType = argument(arguments, 0, pkg, field);
+            newContainer = newContainer(type, "java.util.Collection", "java.util.ArrayList<Object>");
+            if(newContainer == null){
+                newContainer = newContainer(type, "java.util.List", "java.util.ArrayList<Object>");
+            }
+            if(newContainer == null){
+                newContainer = newContainer(type, "java.util.Set", "java.util.HashSet<Object>");
+            }
+        }
+        if((kind == FieldModel.Kind.MAP || kind == FieldModel.Kind.COLLECTION) && newContainer == null){
+            TypeElement container = (TypeElement)types.asElement(type);
+            if(!container.getModifiers().contains(Modifier.ABSTRACT) && container.getModifiers().contains(Modifier.PUBLIC) && hasPublicConstructor(container)){
+                newContainer = "new " + erasure(type) + "()";
+            }else{
+                //Fails at runtime the same way reflection does
+                newContainer = "instantiate(" + erasure(type) + ".class)";
+            }
+        }
+        return new FieldModel(name, index, kind, null, erasure(type), reflective, serializeAsNull, elementType, stringKeys, newContainer);
+    }
+
+    private boolean isA(TypeMirror type, String className){
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        if(element == null || type.getKind() != TypeKind.DECLARED){
+            return false;
+        }
+        Types types = processingEnv.getTypeUtils();
+        return types.isAssignable(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    /**
+     * Gets the expression for a default container if the field is declared as exactly that interface.
+     */
+    private String newContainer(TypeMirror type, String declared, String implementation){
+        return declared.equals(erasure(type)) ? "new " + implementation + "()" : null;
+    }
+
+    private static boolean hasPublicConstructor(TypeElement type){
+        for(ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())){
+            if(c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets a type argument of a field the way ReflectionPlan does, or null if it is not a class.
+     */
+    private String argument(List<? extends TypeMirror> arguments, int i, PackageElement pkg, Element field) throws InvalidClassException {
+        if(i >= arguments.size()){
+            return null;
+        }
+        TypeMirror argument = arguments.get(i);
+        if(argument.getKind() != TypeKind.DECLARED && argument.getKind() != TypeKind.ARRAY){
+            return null;
+        }
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(argument);
+        checkVisible(erased, pkg, field);
+        return erased.toString();
+    }
+
+    private String erasure(TypeMirror type){
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    /**
+     * Checks a type can be named from the package of the generated serializer.
+     */
+    private void checkVisible(TypeMirror type, PackageElement pkg, Element field) throws InvalidClassException {
+        while(type.getKind() == TypeKind.ARRAY){
+            type = ((ArrayType)type).getComponentType();
+        }
+        if(type.getKind() != TypeKind.DECLARED){
+            return;
+        }
+        for(Element e = processingEnv.getTypeUtils().asElement(type); e instanceof TypeElement; e = e.getEnclosingElement()){
+            Set<Modifier> modifiers = e.getModifiers();
+            if(modifiers.contains(Modifier.PRIVATE) || (!modifiers.contains(Modifier.PUBLIC) && !packageOf(e).equals(pkg))){
+                throw new InvalidClassException("The type " + type + " of field " + field.getSimpleName() + " can not be used from the generated serializer", field);
+            }
+        }
+    }
+
+    private static PackageElement packageOf(Element e){
+        while(!(e instanceof PackageElement)){
+            e = e.getEnclosingElement();
+        }
+        return (PackageElement)e;
+    }
+}
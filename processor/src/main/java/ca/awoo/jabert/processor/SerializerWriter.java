@@ -0,0 +1,494 @@
+package ca.awoo.jabert.processor;
+
+import java.util.List;
+
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Writes the source of a generated serializer.
+ * <p>
+ * The code follows ReflectionSerializer step by step, so the two give the same output and fail on the same input.
+ * Every name outside the serializer is written in full so nothing in the package of the class can shadow it, and the code sticks to Java 5.
+ * </p>
+ */
+final class SerializerWriter {
+    private final String packageName;
+    private final String simpleName;
+    private final String className;
+    private final List<FieldModel> fields;
+    private final StringBuilder sb = new StringBuilder();
+    private int indent;
+
+    /**
+     * @param packageName The package of the class, empty for the default package
+     * @param binaryName The binary name of the serializer
+     * @param className The name of the class as it is written in source
+     * @param fields The fields of the class
+     */
+    SerializerWriter(String packageName, String binaryName, String className, List<FieldModel> fields){
+        this.packageName = packageName;
+        this.simpleName = binaryName.substring(binaryName.lastIndexOf('.') + 1);
+        this.className = className;
+        this.fields = fields;
+    }
+
+    String write(){
+        if(packageName.length() > 0){
+            line("package " + packageName + ";");
+            line("");
+        }
+        line("import ca.awoo.fwoabl.Optional;");
+        line("import ca.awoo.jabert.FormatException;");
+        line("import ca.awoo.jabert.GeneratedSerializer;");
+        line("import ca.awoo.jabert.SValue;");
+        line("import ca.awoo.jabert.SValue.SList;");
+        line("import ca.awoo.jabert.SValue.SNull;");
+        line("import ca.awoo.jabert.SValue.SObject;");
+        line("import ca.awoo.jabert.SValueReader;");
+        line("import ca.awoo.jabert.SValueWriter;");
+        line("import ca.awoo.jabert.SerializationException;");
+        line("import ca.awoo.jabert.Serializer;");
+        line("import ca.awoo.jabert.Serializers;");
+        line("");
+        line("/**");
+        line(" * The serializer of {@link " + className + "}, generated by jabert-processor. Do not edit.");
+        line(" */");
+        line("@SuppressWarnings(\"unchecked\")");
+        line("public class " + simpleName + " extends GeneratedSerializer {");
+        boolean reflective = false;
+        for(FieldModel f : fields){
+            if(f.reflective){
+                line("private static final java.lang.reflect.Field F_" + f.name + " = field(" + className + ".class, \"" + f.name + "\");");
+                reflective = true;
+            }
+        }
+        if(!fields.isEmpty()){
+            line("private static final java.util.Map<String, Integer> INDEXES = new java.util.HashMap<String, Integer>();");
+            line("static{");
+            for(FieldModel f : fields){
+                line("INDEXES.put(\"" + f.name + "\", " + f.index + ");");
+            }
+            line("}");
+        }
+        if(reflective || !fields.isEmpty()){
+            line("");
+        }
+        line("public " + simpleName + "(Serializer base){");
+        line("super(base);");
+        line("}");
+        line("");
+        serializeTree();
+        line("");
+        serializeStream();
+        line("");
+        deserializeTree();
+        line("");
+        deserializeStream();
+        line("}");
+        return escape(sb.toString());
+    }
+
+    private void serializeTree(){
+        line("public SValue serialize(Object o) throws SerializationException {");
+        line("if(o == null){");
+        line("return new SNull();");
+        line("}");
+        line(className + " t = (" + className + ")o;");
+        line("SObject so = new SObject();");
+        beginFields();
+        for(FieldModel f : fields){
+            line("field = \"" + f.name + "\";");
+            String key = "\"" + f.name + "\"";
+            if(f.primitive != null){
+                line("so.put(" + key + ", base.serialize(" + (f.reflective ? get(f) : "t." + f.name) + "));");
+                continue;
+            }
+            beginValue(f);
+            line("so.put(" + key + ", new SNull());");
+            elseValue();
+            switch(f.kind){
+                case OPTIONAL:
+                    line("Optional<?> opt = (Optional<?>)value;");
+                    line("if(opt.isSome()){");
+                    line("so.put(" + key + ", base.serialize(some(opt)));");
+                    if(f.serializeAsNull){
+                        line("}else{");
+                        line("so.put(" + key + ", new SNull());");
+                    }
+                    line("}");
+                    break;
+                case MAP:
+                    if(!f.stringKeys){
+                        line("noStringKeys();");
+                        break;
+                    }
+                    line("SObject map = new SObject();");
+                    line("for(java.util.Map.Entry<?, ?> entry : ((java.util.Map<?, ?>)value).entrySet()){");
+                    line("map.put(entry.getKey().toString(), base.serialize(entry.getValue()));");
+                    line("}");
+                    line("so.put(" + key + ", map);");
+                    break;
+                case COLLECTION:
+                    line("SList list = new SList();");
+                    line("for(Object element : (java.util.Collection<?>)value){");
+                    line("list.add(base.serialize(element));");
+                    line("}");
+                    line("so.put(" + key + ", list);");
+                    break;
+                default:
+                    line("so.put(" + key + ", base.serialize(value));");
+            }
+            endValue();
+        }
+        endFields("serialize", "t.getClass()");
+        line("return so;");
+        line("}");
+    }
+
+    private void serializeStream(){
+        line("public void serialize(Object o, SValueWriter out) throws SerializationException, FormatException {");
+        line("if(o == null){");
+        line("out.nullValue();");
+        line("return;");
+        line("}");
+        line(className + " t = (" + className + ")o;");
+        line("out.beginObject();");
+        beginFields();
+        for(FieldModel f : fields){
+            line("field = \"" + f.name + "\";");
+            String name = "out.name(\"" + f.name + "\");";
+            if(f.primitive != null){
+                line(name);
+                line("writePrimitive(" + (f.reflective ? unboxed(f, get(f)) : "t." + f.name) + ", out);");
+                continue;
+            }
+            beginValue(f);
+            line(name);
+            line("out.nullValue();");
+            elseValue();
+            switch(f.kind){
+                case OPTIONAL:
+                    line("Optional<?> opt = (Optional<?>)value;");
+                    line("if(opt.isSome()){");
+                    line(name);
+                    line("Serializers.serialize(base, some(opt), out);");
+                    if(f.serializeAsNull){
+                        line("}else{");
+                        line(name);
+                        line("out.nullValue();");
+                    }
+                    line("}");
+                    break;
+                case MAP:
+                    if(!f.stringKeys){
+                        line("noStringKeys();");
+                        break;
+                    }
+                    line(name);
+                    line("out.beginObject();");
+                    line("for(java.util.Map.Entry<?, ?> entry : ((java.util.Map<?, ?>)value).entrySet()){");
+                    line("out.name(entry.getKey().toString());");
+                    line("Serializers.serialize(base, entry.getValue(), out);");
+                    line("}");
+                    line("out.endObject();");
+                    break;
+                case COLLECTION:
+                    line(name);
+                    line("out.beginList();");
+                    line("for(Object element : (java.util.Collection<?>)value){");
+                    line("Serializers.serialize(base, element, out);");
+                    line("}");
+                    line("out.endList();");
+                    break;
+                default:
+                    line(name);
+                    line("Serializers.serialize(base, value, out);");
+            }
+            endValue();
+        }
+        endFields("serialize", "t.getClass()");
+        line("out.endObject();");
+        line("}");
+    }
+
+    private void deserializeTree(){
+        line("public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {");
+        line("if(sv instanceof SNull){");
+        line("return null;");
+        line("}");
+        line("if(!(sv instanceof SObject)){");
+        line("throw new SerializationException(\"Cannot deserialize non-object value into object\");");
+        line("}");
+        line("SObject so = (SObject)sv;");
+        line(className + " t = new " + className + "();");
+        beginFields();
+        for(FieldModel f : fields){
+            line("field = \"" + f.name + "\";");
+            String key = "\"" + f.name + "\"";
+            switch(f.kind){
+                case OPTIONAL:
+                    line("if(so.has(" + key + ") && !(so.get(" + key + ") instanceof SNull)){");
+                    set(f, "new Optional.Some<Object>(base.deserialize(so.get(" + key + "), " + elementType(f) + "))");
+                    line("}else{");
+                    set(f, "new Optional.None<Object>()");
+                    line("}");
+                    break;
+                case MAP:
+                    if(!f.stringKeys){
+                        line("noStringKeys();");
+                        break;
+                    }
+                    line("{");
+                    line("SValue value = so.get(" + key + ");");
+                    line("if(!(value instanceof SObject)){");
+                    line("throw new SerializationException(\"Expected an object for map field " + f.name + "\");");
+                    line("}");
+                    line("Class<?> valueType = " + elementType(f) + ";");
+                    line("java.util.Map<String, Object> map = " + f.newContainer + ";");
+                    line("for(java.util.Map.Entry<String, SValue> entry : ((SObject)value).entrySet()){");
+                    line("map.put(entry.getKey(), base.deserialize(entry.getValue(), valueType));");
+                    line("}");
+                    set(f, "map");
+                    line("}");
+                    break;
+                case COLLECTION:
+                    line("{");
+                    line("SValue value = so.get(" + key + ");");
+                    line("if(!(value instanceof SList)){");
+                    line("throw new SerializationException(\"Expected a list for collection field " + f.name + "\");");
+                    line("}");
+                    line("Class<?> elementType = " + elementType(f) + ";");
+                    line("java.util.Collection<Object> collection = " + f.newContainer + ";");
+                    line("for(SValue element : (SList)value){");
+                    line("collection.add(base.deserialize(element, elementType));");
+                    line("}");
+                    set(f, "collection");
+                    line("}");
+                    break;
+                default:
+                    line("if(!so.has(" + key + ")){");
+                    line("throw new SerializationException(\"Missing field " + f.name + " in object \" + clazz.getName());");
+                    line("}");
+                    if(f.primitive != null){
+                        set(f, "read" + primitiveName(f.primitive) + "(so.get(" + key + "))");
+                    }else{
+                        set(f, "base.deserialize(so.get(" + key + "), " + f.type + ".class)");
+                    }
+            }
+        }
+        endFields("deserialize", "clazz");
+        line("return t;");
+        line("}");
+    }
+
+    private void deserializeStream(){
+        line("public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {");
+        line("SValueReader.Token token = in.peek();");
+        line("if(token == SValueReader.Token.NULL){");
+        line("in.nextNull();");
+        line("return null;");
+        line("}");
+        line("if(token != SValueReader.Token.BEGIN_OBJECT){");
+        line("throw new SerializationException(\"Cannot deserialize non-object value into object\");");
+        line("}");
+        line(className + " t = new " + className + "();");
+        if(fields.isEmpty()){
+            line("in.beginObject();");
+            line("while(in.hasNext()){");
+            line("in.nextName();");
+            line("in.skipValue();");
+            line("}");
+            line("in.endObject();");
+            line("return t;");
+            line("}");
+            return;
+        }
+        line("boolean[] seen = new boolean[" + fields.size() + "];");
+        beginFields();
+        line("in.beginObject();");
+        line("while(in.hasNext()){");
+        line("String name = in.nextName();");
+        line("Integer index = INDEXES.get(name);");
+        line("if(index == null){");
+        line("in.skipValue();");
+        line("continue;");
+        line("}");
+        line("field = name;");
+        line("seen[index.intValue()] = true;");
+        line("switch(index.intValue()){");
+        for(FieldModel f : fields){
+            line("case " + f.index + ": {");
+            switch(f.kind){
+                case OPTIONAL:
+                    line("if(in.peek() == SValueReader.Token.NULL){");
+                    line("in.nextNull();");
+                    set(f, "new Optional.None<Object>()");
+                    line("}else{");
+                    set(f, "new Optional.Some<Object>(Serializers.deserialize(base, in, " + elementType(f) + "))");
+                    line("}");
+                    break;
+                case MAP:
+                    if(!f.stringKeys){
+                        line("noStringKeys();");
+                        break;
+                    }
+                    line("Class<?> valueType = " + elementType(f) + ";");
+                    line("java.util.Map<String, Object> map = " + f.newContainer + ";");
+                    line("if(in.peek() != SValueReader.Token.BEGIN_OBJECT){");
+                    line("throw new SerializationException(\"Expected an object for map field " + f.name + "\");");
+                    line("}");
+                    line("in.beginObject();");
+                    line("while(in.hasNext()){");
+                    line("String key = in.nextName();");
+                    line("map.put(key, Serializers.deserialize(base, in, valueType));");
+                    line("}");
+                    line("in.endObject();");
+                    set(f, "map");
+                    break;
+                case COLLECTION:
+                    line("Class<?> elementType = " + elementType(f) + ";");
+                    line("java.util.Collection<Object> collection = " + f.newContainer + ";");
+                    line("if(in.peek() != SValueReader.Token.BEGIN_LIST){");
+                    line("throw new SerializationException(\"Expected a list for collection field " + f.name + "\");");
+                    line("}");
+                    line("in.beginList();");
+                    line("while(in.hasNext()){");
+                    line("collection.add(Serializers.deserialize(base, in, elementType));");
+                    line("}");
+                    line("in.endList();");
+                    set(f, "collection");
+                    break;
+                default:
+                    if(f.primitive != null){
+                        set(f, "read" + primitiveName(f.primitive) + "(in)");
+                    }else{
+                        set(f, "Serializers.deserialize(base, in, " + f.type + ".class)");
+                    }
+            }
+            line("break;");
+            line("}");
+        }
+        line("}");
+        line("}");
+        line("in.endObject();");
+        for(FieldModel f : fields){
+            line("if(!seen[" + f.index + "]){");
+            line("field = \"" + f.name + "\";");
+            if(f.kind == FieldModel.Kind.OPTIONAL){
+                set(f, "new Optional.None<Object>()");
+            }else{
+                line("throw new SerializationException(\"Missing field " + f.name + " in object \" + clazz.getName());");
+            }
+            line("}");
+        }
+        endFields("deserialize", "clazz");
+        line("return t;");
+        line("}");
+    }
+
+    /**
+     * Starts the block that wraps errors with the name of the field they happened in. Without fields nothing in it could throw, so it is left out.
+     */
+    private void beginFields(){
+        if(!fields.isEmpty()){
+            line("String field = null;");
+            line("try{");
+        }
+    }
+
+    private void endFields(String verb, String clazz){
+        if(!fields.isEmpty()){
+            line("}catch(SerializationException e){");
+            line("throw new SerializationException(\"Could not " + verb + " field \" + field + \" of object \" + " + clazz + ".getName(), e);");
+            line("}");
+        }
+    }
+
+    /**
+     * Starts handling the value of a field that is not primitive, with the branch for when it is null.
+     */
+    private void beginValue(FieldModel f){
+        line("{");
+        line("Object value = " + (f.reflective ? get(f) : "t." + f.name) + ";");
+        line("if(value == null){");
+    }
+
+    private void elseValue(){
+        line("}else if(value.equals(t)){");
+        line("throw new SerializationException(\"Cannot serialize object that contains itself: \" + t);");
+        line("}else{");
+    }
+
+    private void endValue(){
+        line("}");
+        line("}");
+    }
+
+    private static String get(FieldModel f){
+        return "get(F_" + f.name + ", t)";
+    }
+
+    private static String unboxed(FieldModel f, String boxed){
+        String box = boxName(f.primitive);
+        return "((" + box + ")" + boxed + ")." + f.primitive.name().toLowerCase() + "Value()";
+    }
+
+    private void set(FieldModel f, String value){
+        if(f.reflective){
+            line("set(F_" + f.name + ", t, " + value + ");");
+        }else if(f.primitive != null){
+            line("t." + f.name + " = " + value + ";");
+        }else{
+            line("t." + f.name + " = (" + f.type + ")" + value + ";");
+        }
+    }
+
+    private static String elementType(FieldModel f){
+        return f.elementType == null ? "unknownElementType(\"" + f.name + "\")" : f.elementType + ".class";
+    }
+
+    private static String primitiveName(TypeKind kind){
+        String name = kind.name().toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String boxName(TypeKind kind){
+        switch(kind){
+            case INT:
+                return "Integer";
+            case CHAR:
+                return "Character";
+            default:
+                return primitiveName(kind);
+        }
+    }
+
+    private void line(String line){
+        if(line.startsWith("}")){
+            indent--;
+        }
+        for(int i = 0; i < indent && line.length() > 0; i++){
+            sb.append("    ");
+        }
+        sb.append(line).append('\n');
+        if(line.endsWith("{")){
+            indent++;
+        }
+    }
+
+    /**
+     * Escapes everything outside of ASCII, so the source does not depend on the encoding the compiler reads it with.
+     */
+    private static String escape(String source){
+        StringBuilder sb = new StringBuilder(source.length());
+        for(int i = 0; i < source.length(); i++){
+            char c = source.charAt(i);
+            if(c < 0x80){
+                sb.append(c);
+            }else{
+                sb.append(String.format("\\u%04x", (int)c));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package ca.awoo.jabert.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.awoo.jabert.FastJsonFormat;
+import ca.awoo.jabert.Format;
+import ca.awoo.jabert.GeneratedSerializer;
+import ca.awoo.jabert.ReflectionSerializer;
+import ca.awoo.jabert.SValue;
+import ca.awoo.jabert.Serializer;
+import ca.awoo.jabert.Serializers;
+
+public class SerializerProcessorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String MESSAGE =
+        "package test;\n" +
+        "import java.util.*;\n" +
+        "import ca.awoo.fwoabl.Optional;\n" +
+        "import ca.awoo.jabert.GenerateSerializer;\n" +
+        "import ca.awoo.jabert.SerializeAsNull;\n" +
+        "@GenerateSerializer\n" +
+        "public class Message {\n" +
+        "    int id;\n" +
+        "    private String text;\n" +
+        "    protected long time;\n" +
+        "    boolean pinned;\n" +
+        "    private float weight;\n" +
+        "    final char grade;\n" +
+        "    Optional<String> nick;\n" +
+        "    @SerializeAsNull Optional<Integer> score;\n" +
+        "    Map<String, Integer> counts;\n" +
+        "    private TreeMap<String, Reply> replies;\n" +
+        "    List<String> tags;\n" +
+        "    Set<Long> ids;\n" +
+        "    LinkedList<Reply> thread;\n" +
+        "    Reply pinnedReply;\n" +
+        "    int[] scores;\n" +
+        "    transient int cached;\n" +
+        "    static int instances;\n" +
+        "    Message(){ grade = 'a'; }\n" +
+        "    @GenerateSerializer\n" +
+        "    public static class Reply {\n" +
+        "        String caf\u00e9;\n" +
+        "        Optional<Reply> parent;\n" +
+        "    }\n" +
+        "    public static Message sample(){\n" +
+        "        Message m = new Message();\n" +
+        "        m.id = 7; m.text = \"hi \\u263a\"; m.time = 1L << 40; m.pinned = true; m.weight = 0.1f;\n" +
+        "        m.nick = new Optional.None<String>(); m.score = new Optional.None<Integer>();\n" +
+        "        m.counts = new HashMap<String, Integer>(); m.counts.put(\"a\", 1); m.counts.put(\"b\", 2);\n" +
+        "        m.replies = new TreeMap<String, Reply>(); Reply r = new Reply(); r.caf\u00e9 = \"latte\"; r.parent = new Optional.None<Reply>();\n" +
+        "        m.replies.put(\"first\", r);\n" +
+        "        m.tags = Arrays.asList(\"x\", \"y\"); m.ids = new HashSet<Long>(Arrays.asList(5L));\n" +
+        "        m.thread = new LinkedList<Reply>(); Reply s = new Reply(); s.caf\u00e9 = \"mocha\"; s.parent = new Optional.Some<Reply>(r); m.thread.add(s);\n" +
+        "        m.pinnedReply = null; m.scores = new int[]{1, 2};\n" +
+        "        return m;\n" +
+        "    }\n" +
+        "}\n";
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String name, String code){
+            super(URI.create("string:///" + name.replace('.', '/') + ".java"), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors){
+            return code;
+        }
+    }
+
+    /**
+     * Compiles the sources with the processor, returning the errors.
+     */
+    private List<Diagnostic<? extends JavaFileObject>> compile(File out, Source... sources){
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", out.getPath(), "-s", out.getPath(),
+            "-processor", SerializerProcessor.class.getName(), "-encoding", "UTF-8");
+        compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources)).call();
+        return diagnostics.getDiagnostics();
+    }
+
+    private static boolean hasErrors(List<Diagnostic<? extends JavaFileObject>> diagnostics){
+        for(Diagnostic<? extends JavaFileObject> d : diagnostics){
+            if(d.getKind() == Diagnostic.Kind.ERROR){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void generatedSerializerMatchesReflection() throws Exception {
+        File out = folder.newFolder();
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(out, new Source("test.Message", MESSAGE));
+        assertFalse(diagnostics.toString(), hasErrors(diagnostics));
+        ClassLoader loader = new URLClassLoader(new URL[]{ out.toURI().toURL() }, getClass().getClassLoader());
+        Class<?> message = loader.loadClass("test.Message");
+        Object sample = message.getMethod("sample").invoke(null);
+
+        Serializer base = Serializers.defaultSerializer();
+        Serializer generated = (Serializer)loader.loadClass("test.Message_JabertSerializer").getConstructor(Serializer.class).newInstance(base);
+        assertTrue(generated instanceof GeneratedSerializer);
+        assertEquals(GeneratedSerializer.class, loader.loadClass("test.Message_Reply_JabertSerializer").getSuperclass());
+        Serializer reflection = new ReflectionSerializer(base);
+
+        SValue expected = reflection.serialize(sample);
+        assertEquals(expected, generated.serialize(sample));
+        assertEquals(expected, base.serialize(sample));
+        assertEquals(expected, reflection.serialize(generated.deserialize(expected, message)));
+
+        Format format = new FastJsonFormat("UTF-8");
+        String json = emit(reflection, sample, format);
+        assertEquals(json, emit(base, sample, format));
+        Object read = Serializers.parse(base, message, format, new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(json, emit(reflection, read, format));
+    }
+
+    private static String emit(Serializer serializer, Object t, Format format) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Serializers.emit(serializer, t, format, os);
+        return new String(os.toByteArray(), "UTF-8");
+    }
+
+    @Test
+    public void classesThatCanNotBeCreatedAreErrors() throws Exception {
+        String[] invalid = {
+            "package test; @ca.awoo.jabert.GenerateSerializer public class Hidden { private Hidden(){} }",
+            "package test; public class Outer { @ca.awoo.jabert.GenerateSerializer public class Inner { } }",
+            "package test; @ca.awoo.jabert.GenerateSerializer public abstract class Hidden { }",
+            "package test; @ca.awoo.jabert.GenerateSerializer public class Hidden { private static class Secret { } Secret secret; }",
+        };
+        for(String code : invalid){
+            String name = code.contains("class Outer") ? "test.Outer" : "test.Hidden";
+            List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(folder.newFolder(), new Source(name, code));
+            assertTrue(code, hasErrors(diagnostics));
+        }
+    }
+}
@@ -1,19 +1,44 @@
 package ca.awoo.jabert;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 import ca.awoo.jabert.SValue.SList;
 
-public class ArraySerializer implements Serializer {
+public class ArraySerializer implements StreamingSerializer {
     private final Serializer baseSerializer;
+    private final ExecutorService executor;
+    private final int parallelThreshold;
 
     public ArraySerializer(Serializer baseSerializer) {
+        this(baseSerializer, null, 0);
+    }
+
+    /**
+     * Creates an ArraySerializer that serializes the elements of large arrays in parallel.
+     * <p>
+     * Arrays with at least parallelThreshold elements are cut into chunks that are serialized on the executor and joined in order,
+     * so the output is the same as serializing them one at a time. The base serializer must be thread safe.
+     * </p>
+     * @param baseSerializer The serializer for the elements
+     * @param executor The executor to serialize on, or null to always serialize on the calling thread
+     * @param parallelThreshold The fewest elements an array needs to be serialized in parallel
+     */
+    public ArraySerializer(Serializer baseSerializer, ExecutorService executor, int parallelThreshold) {
         this.baseSerializer = baseSerializer;
+        this.executor = executor;
+        this.parallelThreshold = parallelThreshold;
     }
 
     public SValue serialize(Object t) throws SerializationException {
         if(!t.getClass().isArray()){
             throw new SerializationException("Attempting to serialize non-array type with ArraySerializer");
         }
+        if(ParallelLists.shouldSplit(executor, parallelThreshold, Array.getLength(t))){
+            return new SList(ParallelLists.serialize(baseSerializer, ParallelLists.elements(t), executor));
+        }
         SList list = new SList();
         for(int i = 0; i < Array.getLength(t); i++){
             list.value.add(baseSerializer.serialize(Array.get(t, i)));
@@ -21,6 +46,25 @@ public class ArraySerializer implements Serializer {
         return list;
     }
 
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(!t.getClass().isArray()){
+            throw new SerializationException("Attempting to serialize non-array type with ArraySerializer");
+        }
+        out.beginList();
+        int length = Array.getLength(t);
+        if(ParallelLists.shouldSplit(executor, parallelThreshold, length)){
+            for(SValue sv : ParallelLists.serialize(baseSerializer, ParallelLists.elements(t), executor)){
+                out.value(sv);
+            }
+            out.endList();
+            return;
+        }
+        for(int i = 0; i < length; i++){
+            Serializers.serialize(baseSerializer, Array.get(t, i), out);
+        }
+        out.endList();
+    }
+
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
         if(!clazz.isArray()){
             throw new SerializationException("Attempting to deserialize to non-array type with ArraySerializer");
@@ -35,5 +79,25 @@ public class ArraySerializer implements Serializer {
         }
         return array;
     }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        if(!clazz.isArray()){
+            throw new SerializationException("Attempting to deserialize to non-array type with ArraySerializer");
+        }
+        if(in.peek() != SValueReader.Token.BEGIN_LIST){
+            throw new SerializationException("Attempting to deserialize non-list type with ArraySerializer");
+        }
+        List<Object> elements = new ArrayList<Object>();
+        in.beginList();
+        while(in.hasNext()){
+            elements.add(Serializers.deserialize(baseSerializer, in, clazz.getComponentType()));
+        }
+        in.endList();
+        Object array = Array.newInstance(clazz.getComponentType(), elements.size());
+        for(int i = 0; i < elements.size(); i++){
+            Array.set(array, i, elements.get(i));
+        }
+        return array;
+    }
     
 }
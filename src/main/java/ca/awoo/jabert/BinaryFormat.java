@@ -0,0 +1,460 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * A compact, self describing binary format with the same data model as json.
+ * <p>
+ * Every value starts with a one byte tag:
+ * </p>
+ * <ul>
+ * <li>{@code 0x00} null, {@code 0x01} false, {@code 0x02} true</li>
+ * <li>{@code 0x03} integer, followed by a zigzag encoded varint</li>
+ * <li>{@code 0x04} double, followed by the 8 bytes of the IEEE 754 value, big endian</li>
+ * <li>{@code 0x05} decimal, followed by a string holding the number in {@link BigDecimal#toString()} form, for numbers that fit neither of the above</li>
+ * <li>{@code 0x06} string, followed by the varint length in bytes and then the UTF-8 bytes</li>
+ * <li>{@code 0x07} list, followed by the varint number of elements and then the elements</li>
+ * <li>{@code 0x08} object, followed by the varint number of members and then each name as an untagged string followed by its value</li>
+ * </ul>
+ * <p>
+ * Since every length is known up front, strings are copied in one block and nothing has to be escaped or scanned for.
+ * {@link #writer(OutputStream)} builds the whole value before emitting it, because lists and objects must be counted first.
+ * </p>
+ */
+public class BinaryFormat implements Format {
+    static final int NULL = 0x00;
+    static final int FALSE = 0x01;
+    static final int TRUE = 0x02;
+    static final int INTEGER = 0x03;
+    static final int DOUBLE = 0x04;
+    static final int DECIMAL = 0x05;
+    static final int STRING = 0x06;
+    static final int LIST = 0x07;
+    static final int OBJECT = 0x08;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static final ThreadLocal<Output> outputs = new ThreadLocal<Output>() {
+        @Override
+        protected Output initialValue() {
+            return new Output();
+        }
+    };
+
+    private static final ThreadLocal<Input> inputs = new ThreadLocal<Input>() {
+        @Override
+        protected Input initialValue() {
+            return new Input();
+        }
+    };
+
+    public void emit(SValue sv, OutputStream os) throws FormatException {
+        Output out = outputs.get();
+        if(out.os != null){
+            out = new Output();
+        }
+        out.os = os;
+        out.pos = 0;
+        try {
+            out.writeValue(sv);
+            out.drain();
+            os.flush();
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            out.os = null;
+        }
+    }
+
+    public SValue parse(InputStream is) throws FormatException {
+        Input in = inputs.get();
+        if(in.is != null){
+            in = new Input();
+        }
+        in.is = is;
+        in.pos = 0;
+        in.limit = 0;
+        in.base = 0;
+        try {
+            return in.readValue();
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            in.is = null;
+            if(in.buf.length > BUFFER_SIZE){
+                in.buf = new byte[BUFFER_SIZE];
+            }
+        }
+    }
+
+    /**
+     * Parses one value from the buffer and moves its position just past it, so consecutive values can be read from the same buffer.
+     * <p>
+     * Heap buffers are parsed straight from their backing array and direct or mapped buffers are read in small chunks.
+     * </p>
+     */
+    public SValue parse(ByteBuffer buffer) throws FormatException {
+        int start = buffer.position();
+        if(!buffer.hasArray()){
+            Input in = inputs.get();
+            if(in.is != null){
+                in = new Input();
+            }
+            in.is = new ByteBufferInputStream(buffer);
+            in.pos = 0;
+            in.limit = 0;
+            in.base = 0;
+            try {
+                SValue value = in.readValue();
+                buffer.position(start + (int)in.offset());
+                return value;
+            } catch (IOException e) {
+                throw new FormatException("IOException", e);
+            } finally {
+                in.is = null;
+                if(in.buf.length > BUFFER_SIZE){
+                    in.buf = new byte[BUFFER_SIZE];
+                }
+            }
+        }
+        //A separate input over the array, since require() never has anything more to read
+        Input in = new Input(buffer.array());
+        in.pos = buffer.arrayOffset() + start;
+        in.limit = in.pos + buffer.remaining();
+        in.base = -in.pos;
+        try {
+            SValue value = in.readValue();
+            buffer.position(start + (int)in.offset());
+            return value;
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public boolean emit(SValue sv, ByteBuffer buffer) throws FormatException {
+        return ByteBufferOutputStream.emit(this, sv, buffer);
+    }
+
+    public SValueReader reader(InputStream is) throws FormatException {
+        return new SValueTreeReader(parse(is));
+    }
+
+    public SValue[] extract(InputStream is, String... paths) throws FormatException {
+        PathTree tree = PathTree.compile(paths);
+        SValue[] results = new SValue[paths.length];
+        tree.fill(parse(is), results);
+        return results;
+    }
+
+    public SValueWriter writer(OutputStream os) throws FormatException {
+        return new SValueTreeWriter(this, os);
+    }
+
+    private static final class Output {
+        private OutputStream os;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos;
+
+        private void drain() throws IOException {
+            if(pos > 0){
+                os.write(buf, 0, pos);
+                pos = 0;
+            }
+        }
+
+        private void ensure(int n) throws IOException {
+            if(pos + n > buf.length){
+                drain();
+            }
+        }
+
+        private void writeByte(int b) throws IOException {
+            ensure(1);
+            buf[pos++] = (byte)b;
+        }
+
+        private void writeVarint(long v) throws IOException {
+            ensure(10);
+            while((v & ~0x7FL) != 0){
+                buf[pos++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte)v;
+        }
+
+        private void writeDouble(double d) throws IOException {
+            ensure(9);
+            long bits = Double.doubleToRawLongBits(d);
+            buf[pos++] = DOUBLE;
+            for(int shift = 56; shift >= 0; shift -= 8){
+                buf[pos++] = (byte)(bits >>> shift);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            int len = s.length();
+            boolean ascii = true;
+            for(int i = 0; i < len; i++){
+                if(s.charAt(i) >= 0x80){
+                    ascii = false;
+                    break;
+                }
+            }
+            if(!ascii){
+                byte[] bytes = s.getBytes("UTF-8");
+                writeVarint(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+                return;
+            }
+            writeVarint(len);
+            int i = 0;
+            while(i < len){
+                if(pos == buf.length){
+                    drain();
+                }
+                int n = Math.min(len - i, buf.length - pos);
+                for(int j = 0; j < n; j++){
+                    buf[pos++] = (byte)s.charAt(i++);
+                }
+            }
+        }
+
+        private void writeBytes(byte[] b, int off, int len) throws IOException {
+            if(len > buf.length - pos){
+                drain();
+                if(len > buf.length){
+                    os.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buf, pos, len);
+            pos += len;
+        }
+
+        private void writeNumber(Number n) throws IOException {
+            if(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte
+                    || n instanceof AtomicInteger || n instanceof AtomicLong){
+                writeByte(INTEGER);
+                long l = n.longValue();
+                writeVarint((l << 1) ^ (l >> 63));
+            }else if(n instanceof LazyNumber && ((LazyNumber)n).isLong()){
+                writeNumber(Long.valueOf(n.longValue()));
+            }else if(n instanceof Double || n instanceof Float){
+                writeDouble(n.doubleValue());
+            }else if(n instanceof BigInteger && ((BigInteger)n).compareTo(MIN_LONG) >= 0 && ((BigInteger)n).compareTo(MAX_LONG) <= 0){
+                writeNumber(Long.valueOf(n.longValue()));
+            }else if(n instanceof BigInteger || n instanceof BigDecimal){
+                writeByte(DECIMAL);
+                writeString(n instanceof BigDecimal ? n.toString() : new BigDecimal((BigInteger)n).toString());
+            }else{
+                writeDouble(n.doubleValue());
+            }
+        }
+
+        private void writeValue(SValue sv) throws IOException, FormatException {
+            if(sv instanceof SString){
+                writeByte(STRING);
+                writeString(((SString)sv).value);
+            }else if(sv instanceof SNumber){
+                writeNumber(((SNumber)sv).value);
+            }else if(sv instanceof SBool){
+                writeByte(((SBool)sv).value ? TRUE : FALSE);
+            }else if(sv instanceof SNull){
+                writeByte(NULL);
+            }else if(sv instanceof SList){
+                List<SValue> list = ((SList)sv).value;
+                writeByte(LIST);
+                writeVarint(list.size());
+                for(SValue element : list){
+                    writeValue(element);
+                }
+            }else if(sv instanceof SObject){
+                Map<String, SValue> object = ((SObject)sv).value;
+                writeByte(OBJECT);
+                writeVarint(object.size());
+                for(Map.Entry<String, SValue> entry : object.entrySet()){
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            }else{
+                throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+            }
+        }
+    }
+
+    private static final class Input {
+        private InputStream is;
+        private byte[] buf;
+        private int pos;
+        private int limit;
+        private long base;
+
+        private Input(){
+            this(new byte[BUFFER_SIZE]);
+        }
+
+        private Input(byte[] buf){
+            this.buf = buf;
+        }
+
+        private long offset(){
+            return base + pos;
+        }
+
+        /**
+         * Makes sure at least n bytes are buffered. The buffer only grows as data actually arrives,
+         * so a corrupt length can not make it allocate much more than the stream really holds.
+         */
+        private void require(int n) throws IOException, FormatException {
+            if(limit - pos >= n){
+                return;
+            }
+            if(is == null){
+                throw new FormatException("Unexpected end of input at offset " + (base + limit));
+            }
+            if(pos > 0){
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                base += pos;
+                limit -= pos;
+                pos = 0;
+            }
+            while(limit < n){
+                if(limit == buf.length){
+                    byte[] bigger = new byte[(int)Math.min(Math.max((long)buf.length * 2, BUFFER_SIZE), Integer.MAX_VALUE - 8)];
+                    System.arraycopy(buf, 0, bigger, 0, limit);
+                    buf = bigger;
+                }
+                int read = is.read(buf, limit, buf.length - limit);
+                if(read < 0){
+                    throw new FormatException("Unexpected end of input at offset " + (base + limit));
+                }
+                limit += read;
+            }
+        }
+
+        private int readByte() throws IOException, FormatException {
+            if(pos == limit){
+                require(1);
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private long readVarint() throws IOException, FormatException {
+            long result = 0;
+            for(int shift = 0; shift < 64; shift += 7){
+                int b = readByte();
+                result |= (long)(b & 0x7F) << shift;
+                if((b & 0x80) == 0){
+                    return result;
+                }
+            }
+            throw new FormatException("Malformed varint at offset " + offset());
+        }
+
+        private int readLength() throws IOException, FormatException {
+            long start = offset();
+            long len = readVarint();
+            if(len < 0 || len > Integer.MAX_VALUE - 8){
+                throw new FormatException("Invalid length " + len + " at offset " + start);
+            }
+            return (int)len;
+        }
+
+        private String readString() throws IOException, FormatException {
+            int len = readLength();
+            require(len);
+            byte[] b = buf;
+            int start = pos;
+            int end = start + len;
+            pos = end;
+            for(int i = start; i < end; i++){
+                if(b[i] < 0){
+                    return new String(b, start, len, "UTF-8");
+                }
+            }
+            char[] chars = new char[len];
+            for(int i = 0; i < len; i++){
+                chars[i] = (char)b[start + i];
+            }
+            return new String(chars);
+        }
+
+        private SValue readValue() throws IOException, FormatException {
+            long start = offset();
+            int tag = readByte();
+            switch(tag){
+                case NULL:
+                    return new SNull();
+                case FALSE:
+                    return new SBool(false);
+                case TRUE:
+                    return new SBool(true);
+                case INTEGER: {
+                    long zigzag = readVarint();
+                    long l = (zigzag >>> 1) ^ -(zigzag & 1);
+                    if(l == (int)l){
+                        return new SNumber((int)l);
+                    }
+                    return new SNumber(l);
+                }
+                case DOUBLE: {
+                    require(8);
+                    long bits = 0;
+                    for(int i = 0; i < 8; i++){
+                        bits = (bits << 8) | (buf[pos++] & 0xFF);
+                    }
+                    return new SNumber(Double.longBitsToDouble(bits));
+                }
+                case DECIMAL: {
+                    String number = readString();
+                    try {
+                        return new SNumber(new BigDecimal(number));
+                    } catch (NumberFormatException e) {
+                        throw new FormatException("Invalid decimal " + number + " at offset " + start, e);
+                    }
+                }
+                case STRING:
+                    return new SString(readString());
+                case LIST: {
+                    int count = readLength();
+                    List<SValue> list = new ArrayList<SValue>(Math.min(count, 64));
+                    for(int i = 0; i < count; i++){
+                        list.add(readValue());
+                    }
+                    return new SList(list);
+                }
+                case OBJECT: {
+                    int count = readLength();
+                    SObject object = new SObject();
+                    for(int i = 0; i < count; i++){
+                        String name = readString();
+                        object.put(name, readValue());
+                    }
+                    return object;
+                }
+                default:
+                    throw new FormatException("Unknown tag 0x" + Integer.toHexString(tag) + " at offset " + start);
+            }
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "BinaryFormat";
+    }
+}
@@ -0,0 +1,44 @@
+package ca.awoo.jabert;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads the remaining bytes of a ByteBuffer, moving its position as it goes.
+ * <p>
+ * Bytes are copied out in bulk, so direct and memory mapped buffers are read without going through a byte at a time.
+ * </p>
+ */
+final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer){
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(){
+        if(!buffer.hasRemaining()){
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len){
+        if(len == 0){
+            return 0;
+        }
+        int n = Math.min(len, buffer.remaining());
+        if(n == 0){
+            return -1;
+        }
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available(){
+        return buffer.remaining();
+    }
+}
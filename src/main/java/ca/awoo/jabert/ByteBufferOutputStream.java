@@ -0,0 +1,44 @@
+package ca.awoo.jabert;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream that writes into the remaining space of a ByteBuffer.
+ * <p>
+ * Writing more than fits throws a {@link BufferOverflowException}, which {@link #emit(Format, SValue, ByteBuffer)} turns into its result.
+ * </p>
+ */
+final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer){
+        this.buffer = buffer;
+    }
+
+    /**
+     * Emits a value into a buffer through a stream, for formats that do not write to buffers themselves.
+     * @return true if the value fit, false if it did not, in which case the position of the buffer is left where it was
+     */
+    static boolean emit(Format format, SValue sv, ByteBuffer buffer) throws FormatException {
+        int start = buffer.position();
+        try{
+            format.emit(sv, new ByteBufferOutputStream(buffer));
+            return true;
+        }catch(BufferOverflowException e){
+            buffer.position(start);
+            return false;
+        }
+    }
+
+    @Override
+    public void write(int b){
+        buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len){
+        buffer.put(b, off, len);
+    }
+}
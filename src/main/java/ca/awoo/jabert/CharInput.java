@@ -0,0 +1,149 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Buffered, decoded char input used by {@link FastJsonFormat} for encodings other than UTF-8, and by the {@link JsonFormat} lexer.
+ * <p>
+ * It does the work of an InputStreamReader wrapped in a BufferedReader, including replacing malformed input with U+FFFD,
+ * but keeps its buffers, decoder and scratch space between parses instead of allocating them for every stream.
+ * It also counts the chars read, for error messages.
+ * </p>
+ * <p>
+ * Inputs are pooled per thread, so {@link #open(InputStream, Charset)} must always be paired with {@link #close()}.
+ * </p>
+ */
+final class CharInput {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int NONE = -2;
+
+    private static final ThreadLocal<CharInput> pool = new ThreadLocal<CharInput>() {
+        @Override
+        protected CharInput initialValue() {
+            return new CharInput();
+        }
+    };
+
+    private InputStream is;
+    private CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean eof;
+    private boolean done;
+    private int last = NONE;
+    private int pushed = NONE;
+    /**
+     * The number of chars read so far, less any that were unread.
+     */
+    int offset;
+    /**
+     * Space for building strings and numbers. Only one can be built at a time.
+     */
+    StringBuilder scratch = new StringBuilder();
+    /**
+     * The keys seen by this thread, kept apart from other threads so parsing on many cores does not fight over one table.
+     */
+    final KeyTable keys = new KeyTable();
+    private boolean inUse;
+
+    private CharInput(){}
+
+    /**
+     * Gets an input decoding the given stream, reusing this thread's buffers if they are free.
+     * @param is The stream to read from
+     * @param charset The encoding of the stream
+     * @return The input, which must be closed when parsing is done
+     */
+    static CharInput open(InputStream is, Charset charset){
+        CharInput input = pool.get();
+        if(input.inUse){
+            input = new CharInput();
+        }
+        if(input.decoder == null || !input.decoder.charset().equals(charset)){
+            input.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }else{
+            input.decoder.reset();
+        }
+        input.is = is;
+        input.bytes.clear();
+        input.chars.clear();
+        input.chars.flip();
+        input.eof = false;
+        input.done = false;
+        input.last = NONE;
+        input.pushed = NONE;
+        input.offset = 0;
+        input.inUse = true;
+        return input;
+    }
+
+    /**
+     * Releases this input back to the pool. The underlying stream is not closed.
+     */
+    void close(){
+        is = null;
+        if(scratch.capacity() > BUFFER_SIZE){
+            //Do not hold on to the space a huge string needed
+            scratch = new StringBuilder();
+        }
+        inUse = false;
+    }
+
+    /**
+     * Reads the next char.
+     * @return The char, or -1 at the end of the stream
+     */
+    int read() throws IOException {
+        offset++;
+        if(pushed != NONE){
+            last = pushed;
+            pushed = NONE;
+            return last;
+        }
+        if(!chars.hasRemaining() && !fill()){
+            last = -1;
+            return -1;
+        }
+        last = chars.get();
+        return last;
+    }
+
+    /**
+     * Steps back over the last char read, so the next {@link #read()} returns it again. Only one char can be stepped back over.
+     */
+    void unread(){
+        offset--;
+        pushed = last;
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+        while(chars.position() == 0 && !done){
+            if(!eof){
+                int n = is.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                if(n < 0){
+                    eof = true;
+                }else{
+                    bytes.position(bytes.position() + n);
+                }
+            }
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            if(eof && result.isUnderflow() && decoder.flush(chars).isUnderflow()){
+                done = true;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+}
@@ -1,11 +1,18 @@
 package ca.awoo.jabert;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ca.awoo.fwoabl.function.Predicate;
 
-public class CompoundSerializer implements Serializer{
+/**
+ * A serializer that hands each class to the first of its options whose predicate matches, or to the default serializer if none do.
+ * <p>
+ * Options are tried in the order they were added. Which serializer a class gets is remembered, so the predicates run once per class
+ * and must give the same answer for a class every time. Adding an option or changing the default forgets what was remembered,
+ * and can be done while other threads are serializing. The classes seen are held for as long as the serializer is.
+ * </p>
+ */
+public class CompoundSerializer implements StreamingSerializer, InPlaceDeserializer{
     private static class SerializationOption{
         private final Predicate<Class<?>> predicate;
         private final Serializer serializer;
@@ -55,15 +62,39 @@ public class CompoundSerializer implements Serializer{
         }
     }
 
-    private final Set<SerializationOption> options = new HashSet<SerializationOption>();
-    private Serializer defaultSerializer;
+    /**
+     * The options, the default and the serializers already found for them. It is replaced as a whole when an option is added,
+     * so a lookup that raced with the change can only ever fill in the cache that is being thrown away.
+     */
+    private static final class Dispatch {
+        final SerializationOption[] options;
+        final Serializer defaultSerializer;
+        final ConcurrentHashMap<Class<?>, Serializer> cache = new ConcurrentHashMap<Class<?>, Serializer>();
+
+        Dispatch(SerializationOption[] options, Serializer defaultSerializer){
+            this.options = options;
+            this.defaultSerializer = defaultSerializer;
+        }
+    }
+
+    private volatile Dispatch dispatch = new Dispatch(new SerializationOption[0], null);
 
-    public void addOption(Predicate<Class<?>> predicate, Serializer serializer){
-        options.add(new SerializationOption(predicate, serializer));
+    public synchronized void addOption(Predicate<Class<?>> predicate, Serializer serializer){
+        SerializationOption option = new SerializationOption(predicate, serializer);
+        SerializationOption[] options = dispatch.options;
+        for(SerializationOption o : options){
+            if(o.equals(option)){
+                return;
+            }
+        }
+        SerializationOption[] added = new SerializationOption[options.length + 1];
+        System.arraycopy(options, 0, added, 0, options.length);
+        added[options.length] = option;
+        dispatch = new Dispatch(added, dispatch.defaultSerializer);
     }
 
-    public void setDefaultSerializer(Serializer serializer){
-        defaultSerializer = serializer;
+    public synchronized void setDefaultSerializer(Serializer serializer){
+        dispatch = new Dispatch(dispatch.options, serializer);
     }
 
     /**
@@ -94,25 +125,79 @@ public class CompoundSerializer implements Serializer{
     }
 
     private Serializer getSerializer(Class<?> clazz) throws SerializationException{
-        for(SerializationOption option : options){
+        Dispatch d = dispatch;
+        Serializer serializer = d.cache.get(clazz);
+        if(serializer != null){
+            return serializer;
+        }
+        for(SerializationOption option : d.options){
             if(option.matches(clazz)){
-                return option.getSerializer();
+                serializer = option.getSerializer();
+                break;
             }
         }
-        if(defaultSerializer != null){
-            return defaultSerializer;
+        if(serializer == null){
+            serializer = d.defaultSerializer;
+        }
+        if(serializer == null){
+            throw new SerializationException("No serializer found for class " + clazz.getName());
+        }
+        d.cache.put(clazz, serializer);
+        return serializer;
+    }
+
+    /**
+     * Finds the serializer that would be used for a class, boxing primitives first.
+     * @param clazz The class
+     * @return The serializer, or null if there is none
+     */
+    Serializer serializerFor(Class<?> clazz){
+        try{
+            return getSerializer(mikeTyson(clazz));
+        }catch(SerializationException e){
+            return null;
         }
-        throw new SerializationException("No serializer found for class " + clazz.getName());
     }
 
     public SValue serialize(Object t) throws SerializationException {
+        if(t == null){
+            return new SValue.SNull();
+        }
         Class<?> clazz = mikeTyson(t.getClass());
         return getSerializer(clazz).serialize(t);
     }
 
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(t == null){
+            out.nullValue();
+            return;
+        }
+        Class<?> clazz = mikeTyson(t.getClass());
+        Serializers.serialize(getSerializer(clazz), t, out);
+    }
+
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
         clazz = mikeTyson(clazz);
         return getSerializer(clazz).deserialize(sv, clazz);
     }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        clazz = mikeTyson(clazz);
+        return Serializers.deserialize(getSerializer(clazz), in, clazz);
+    }
+
+    public Object deserializeInto(SValue sv, Object target) throws SerializationException {
+        if(target == null){
+            throw new SerializationException("Cannot deserialize into null");
+        }
+        return Serializers.deserializeInto(getSerializer(target.getClass()), sv, target);
+    }
+
+    public Object deserializeInto(SValueReader in, Object target) throws SerializationException, FormatException {
+        if(target == null){
+            throw new SerializationException("Cannot deserialize into null");
+        }
+        return Serializers.deserializeInto(getSerializer(target.getClass()), in, target);
+    }
     
 }
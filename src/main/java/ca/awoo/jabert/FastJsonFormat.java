@@ -1,31 +1,67 @@
 package ca.awoo.jabert;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
 
 import ca.awoo.jabert.SValue.*;
 
+/**
+ * A hand written JSON format, much faster than {@link JsonFormat}.
+ * <p>
+ * UTF-8 is read and written straight from and to bytes. Other encodings are decoded to chars first.
+ * </p>
+ * <p>
+ * Like every format, one instance can be shared by any number of threads. All of the state of a parse or emit lives in buffers
+ * that are pooled per thread, so sharing one format does not make threads wait on each other, and a call does not allocate any setup.
+ * </p>
+ */
 public class FastJsonFormat implements Format{
     private final String encoding;
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean asciiOutput;
 
     public FastJsonFormat(String encoding){
         this.encoding = encoding;
+        this.charset = charsetFor(encoding);
+        this.utf8 = Utf8JsonInput.isUtf8(encoding);
+        this.asciiOutput = JsonOutput.isAsciiCompatible(encoding);
+    }
+
+    /**
+     * @return The charset, or null if the encoding is not supported, which is reported when parsing
+     */
+    private static Charset charsetFor(String encoding){
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     public void emit(SValue sv, OutputStream os) throws FormatException {
+        JsonOutput out;
         try {
-            emit(sv, new PrintStream(os, true, encoding));
+            out = JsonOutput.open(os, encoding, asciiOutput);
         } catch (UnsupportedEncodingException e) {
             throw new FormatException("Unsupported encoding: " + encoding, e);
         }
+        try {
+            emit(sv, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            out.close();
+        }
     }
 
-    private void emit(SValue sv, PrintStream os){
+    private void emit(SValue sv, JsonOutput os) throws IOException {
         if(sv instanceof SString){
             emitString((SString)sv, os);
         }else if(sv instanceof SNumber){
@@ -43,60 +79,144 @@ public class FastJsonFormat implements Format{
         }
     }
 
-    private void emitString(SString s, PrintStream os) {
-        os.print("\"");
-        os.print(escape(s.value));
-        os.print("\"");
+    private void emitString(SString s, JsonOutput os) throws IOException {
+        os.writeString(s.value);
     }
 
-    private void emitNumber(SNumber n, PrintStream os) {
-        os.print(n.value);
+    private void emitNumber(SNumber n, JsonOutput os) throws IOException {
+        os.writeNumber(n.value);
     }
 
-    private void emitBool(SBool b, PrintStream os) {
-        os.print(b.value);
+    private void emitBool(SBool b, JsonOutput os) throws IOException {
+        os.writeBoolean(b.value);
     }
 
-    private void emitNull(SNull n, PrintStream os) {
-        os.print("null");
+    private void emitNull(SNull n, JsonOutput os) throws IOException {
+        os.writeAscii("null");
     }
 
-    private void emitList(SList l, PrintStream os) {
-        os.print("[");
+    private void emitList(SList l, JsonOutput os) throws IOException {
+        os.writeByte('[');
         boolean first = true;
         for(SValue sv : l.value){
             if(first){
                 first = false;
             }else{
-                os.print(",");
+                os.writeByte(',');
             }
             emit(sv, os);
         }
-        os.print("]");
+        os.writeByte(']');
     }
 
-    private void emitObject(SObject o, PrintStream os) {
-        os.print("{");
+    private void emitObject(SObject o, JsonOutput os) throws IOException {
+        os.writeByte('{');
         boolean first = true;
-        for(String key : o.value.keySet()){
+        for(Map.Entry<String, SValue> entry : o.value.entrySet()){
             if(first){
                 first = false;
             }else{
-                os.print(",");
+                os.writeByte(',');
             }
-            emitString(new SString(key), os);
-            os.print(":");
-            emit(o.value.get(key), os);
+            os.writeString(entry.getKey());
+            os.writeByte(':');
+            emit(entry.getValue(), os);
         }
-        os.print("}");
+        os.writeByte('}');
     }
 
-    private int offset = 0;
-
     public SValue parse(InputStream is) throws FormatException {
+        if(utf8){
+            Utf8JsonInput in = Utf8JsonInput.open(is);
+            try {
+                return parse(in);
+            } catch (IOException e) {
+                throw new FormatException("IOException", e);
+            } finally {
+                in.close();
+            }
+        }
+        if(charset == null){
+            throw new FormatException("Unsupported encoding: " + encoding);
+        }
+        CharInput in = CharInput.open(is, charset);
+        try {
+            return parse(in);
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses one value from the buffer and moves its position just past it, so consecutive values can be read from the same buffer.
+     * <p>
+     * For UTF-8, heap buffers are parsed straight from their backing array and direct or mapped buffers are read in small chunks,
+     * so the buffer is never copied as a whole. Other encodings consume the rest of the buffer.
+     * </p>
+     */
+    public SValue parse(ByteBuffer buffer) throws FormatException {
+        if(!utf8){
+            return parse(new ByteBufferInputStream(buffer));
+        }
+        int start = buffer.position();
+        Utf8JsonInput in;
+        if(buffer.hasArray()){
+            in = Utf8JsonInput.open(buffer.array(), buffer.arrayOffset() + start, buffer.remaining());
+        }else{
+            in = Utf8JsonInput.open(new ByteBufferInputStream(buffer));
+        }
         try {
-            offset = 0;
-            return parse(new BufferedReader(new InputStreamReader(is, encoding)));
+            SValue value = parse(in);
+            buffer.position(start + (int)in.offset());
+            return value;
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    public boolean emit(SValue sv, ByteBuffer buffer) throws FormatException {
+        return ByteBufferOutputStream.emit(this, sv, buffer);
+    }
+
+    /**
+     * Parses the rest of the stream as one value, but only decodes objects and lists when they are used.
+     * <p>
+     * The whole stream is read and checked in one fast pass that records where every value starts.
+     * The SObjects and SLists returned then decode their members the first time they are accessed,
+     * which makes parsing much cheaper when only a few fields of a large message are read.
+     * Otherwise they behave the same as the values returned by {@link #parse(InputStream)}.
+     * </p>
+     * <p>
+     * The returned values keep the bytes of the whole document in memory for as long as any of them is reachable.
+     * </p>
+     * @param is The stream to read, all of which must be a single value
+     * @return The value
+     */
+    public SValue parseLazy(InputStream is) throws FormatException {
+        try {
+            byte[] bytes = new byte[8192];
+            int length = 0;
+            while(true){
+                if(length == bytes.length){
+                    byte[] bigger = new byte[bytes.length * 2];
+                    System.arraycopy(bytes, 0, bigger, 0, length);
+                    bytes = bigger;
+                }
+                int n = is.read(bytes, length, bytes.length - length);
+                if(n < 0){
+                    break;
+                }
+                length += n;
+            }
+            if(!utf8){
+                bytes = new String(bytes, 0, length, encoding).getBytes("UTF-8");
+                length = bytes.length;
+            }
+            return StructuralIndex.parse(bytes, length);
         } catch (UnsupportedEncodingException e) {
             throw new FormatException("Unsupported encoding: " + encoding, e);
         } catch (IOException e) {
@@ -104,90 +224,244 @@ public class FastJsonFormat implements Format{
         }
     }
 
-    private int readNotSpace(BufferedReader r) throws IOException {
-        r.mark(1);
-        int next = r.read();
-        offset++;
+    /**
+     * Reads only some values out of a value, found by their paths.
+     * <p>
+     * For UTF-8, anything the paths do not lead into is skipped by counting brackets and quotes, without decoding strings or building SValues,
+     * and nothing past the end of the value is read. Only the keys of the objects on the way to the paths are read.
+     * If a key appears more than once in an object the last one is used, the same as {@link #parse(InputStream)},
+     * so the rest of each object on the way is still skipped through after a path has been found.
+     * Other encodings parse the whole value first.
+     * </p>
+     */
+    public SValue[] extract(InputStream is, String... paths) throws FormatException {
+        PathTree tree = PathTree.compile(paths);
+        SValue[] results = new SValue[paths.length];
+        if(!utf8){
+            tree.fill(parse(is), results);
+            return results;
+        }
+        Utf8JsonInput in = Utf8JsonInput.open(is);
+        try {
+            extract(in, tree, results);
+            return results;
+        } catch (IOException e) {
+            throw new FormatException("IOException", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Extracts the paths below a node from the next value.
+     */
+    private void extract(Utf8JsonInput in, PathTree node, SValue[] results) throws IOException, FormatException {
+        if(node.targets != null){
+            SValue sv = parse(in);
+            node.fill(sv, results);
+            return;
+        }
+        int next = in.nextNonSpace();
+        if(next == '{' && node.names != null){
+            next = in.nextNonSpace();
+            if(next == '}'){
+                return;
+            }
+            while(true){
+                if(next != '\"'){
+                    throw new FormatException("Expected '\"', got " + (char)next + " at " + in.offset());
+                }
+                String key = in.readKey();
+                next = in.nextNonSpace();
+                if(next != ':'){
+                    throw new FormatException("Expected ':', got " + (char)next + " after \"" + escape(key) + "\" at " + in.offset());
+                }
+                PathTree child = node.names.get(key);
+                if(child != null){
+                    //A later value with the same key replaces everything found in an earlier one
+                    child.clear(results);
+                    extract(in, child, results);
+                }else{
+                    skip(in);
+                }
+                next = in.nextNonSpace();
+                if(next == '}'){
+                    return;
+                }else if(next != ','){
+                    throw new FormatException("Expected ',' or '}', got " + (char)next + " at " + in.offset());
+                }
+                next = in.nextNonSpace();
+            }
+        }else if(next == '[' && node.indexes != null){
+            next = in.nextNonSpace();
+            if(next == ']'){
+                return;
+            }
+            in.unread();
+            for(int i = 0; ; i++){
+                PathTree child = node.indexes.get(i);
+                if(child != null){
+                    extract(in, child, results);
+                }else{
+                    skip(in);
+                }
+                next = in.nextNonSpace();
+                if(next == ']'){
+                    return;
+                }else if(next != ','){
+                    throw new FormatException("Expected ',' or ']', got " + (char)next + " at " + in.offset());
+                }
+            }
+        }else if(next == -1){
+            throw new FormatException("Unexpected EOF");
+        }else{
+            in.unread();
+            skip(in);
+        }
+    }
+
+    /**
+     * Skips the next value without decoding it.
+     */
+    private void skip(Utf8JsonInput in) throws IOException, FormatException {
+        int next = in.nextNonSpace();
+        switch(next){
+            case -1:
+                throw new FormatException("Unexpected EOF");
+            case '\"':
+                in.skipString();
+                return;
+            case '[':
+            case '{':
+                in.skipContainer();
+                return;
+            case 't':
+                if(!in.readLiteral("true")){
+                    throw new FormatException("Invalid value: true at " + in.offset());
+                }
+                return;
+            case 'f':
+                if(!in.readLiteral("false")){
+                    throw new FormatException("Invalid value: false at " + in.offset());
+                }
+                return;
+            case 'n':
+                if(!in.readLiteral("null")){
+                    throw new FormatException("Invalid value: null at " + in.offset());
+                }
+                return;
+            default:
+                if((next >= '0' && next <= '9') || next == '-'){
+                    in.skipNumber();
+                    return;
+                }
+                throw new FormatException("Unexpected character: " + (char)next + " at " + in.offset());
+        }
+    }
+
+    /**
+     * Opens a pull parser over the stream.
+     * <p>
+     * For UTF-8 the reader works straight on the bytes of the stream, so only the values that are asked for are decoded.
+     * Other encodings parse the whole value first.
+     * </p>
+     */
+    public SValueReader reader(InputStream is) throws FormatException {
+        if(utf8){
+            return new Utf8JsonReader(is);
+        }
+        return new SValueTreeReader(parse(is));
+    }
+
+    public SValueWriter writer(OutputStream os) throws FormatException {
+        try {
+            return new JsonValueWriter(JsonOutput.open(os, encoding, asciiOutput));
+        } catch (UnsupportedEncodingException e) {
+            throw new FormatException("Unsupported encoding: " + encoding, e);
+        }
+    }
+
+    private int readNotSpace(CharInput in) throws IOException {
+        int next = in.read();
         while(Character.isWhitespace(next)){
-            r.mark(1);
-            next = r.read();
-            offset++;
+            next = in.read();
         }
         return next;
     }
 
-    private SValue parse(BufferedReader r) throws IOException, FormatException {
-        int next = readNotSpace(r);
+    private SValue parse(CharInput in) throws IOException, FormatException {
+        int next = readNotSpace(in);
         SValue value;
         switch(next){
             case -1:
                 throw new FormatException("Unexpected EOF");
             case '\"':
-                value = parseString(r);
+                value = new SString(readString(in).toString());
                 break;
             case 't':
-                value = parseTrue(r);
+                value = parseTrue(in);
                 break;
             case 'f':
-                value = parseFalse(r);
+                value = parseFalse(in);
                 break;
             case 'n':
-                value = parseNull(r);
+                value = parseNull(in);
                 break;
             case '[':
-                value = parseList(r);
+                value = parseList(in);
                 break;
             case '{':
-                value = parseObject(r);
+                value = parseObject(in);
                 break;
             default:
                 if(Character.isDigit(next) || next == '-'){
-                    StringBuilder sb = new StringBuilder();
+                    StringBuilder sb = in.scratch;
+                    sb.setLength(0);
                     sb.append((char)next);
-                    r.mark(1);
-                    next = r.read();
-                    offset++;
+                    next = in.read();
                     while(Character.isDigit(next) || next == '.' || next == 'e' || next == 'E' || next == '+' || next == '-'){
                         sb.append((char)next);
-                        r.mark(1);
-                        next = r.read();
-                        offset++;
+                        next = in.read();
+                    }
+                    in.unread();
+                    try {
+                        value = new SNumber(new LazyNumber(sb.toString()));
+                    } catch (NumberFormatException e) {
+                        throw new FormatException("Invalid number: " + sb.toString() + " at " + in.offset, e);
                     }
-                    r.reset();
-                    offset--;
-                    value = new SNumber(Double.parseDouble(sb.toString()));
                 }else{
-                    throw new FormatException("Unexpected character: " + (char)next + " at " + offset);
+                    throw new FormatException("Unexpected character: " + (char)next + " at " + in.offset);
                 }
         }
         return value;
     }
 
-    private SString parseString(BufferedReader r) throws IOException, FormatException {
-        int next = r.read();
-        offset++;
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Reads the rest of a string into the scratch space of the input, which is only good until the next string or number is read.
+     */
+    private StringBuilder readString(CharInput in) throws IOException, FormatException {
+        StringBuilder sb = in.scratch;
+        sb.setLength(0);
+        int next = in.read();
         while(next != '\"'){
             if(next == -1){
-                throw new FormatException("Unexpected EOF at " + offset);
+                throw new FormatException("Unexpected EOF at " + in.offset);
             }
             if(next == '\\'){
-                parseEscape(r, sb);
+                parseEscape(in, sb);
             }else{
                 sb.append((char)next);
             }
-            next = r.read();
-            offset++;
+            next = in.read();
         }
-        return new SString(sb.toString());
+        return sb;
     }
 
-    private void parseEscape(BufferedReader r, StringBuilder sb) throws IOException, FormatException {
-        int next = r.read();
-        offset++;
+    private void parseEscape(CharInput in, StringBuilder sb) throws IOException, FormatException {
+        int next = in.read();
         switch(next){
             case -1:
-                throw new FormatException("Unexpected EOF at " + offset);
+                throw new FormatException("Unexpected EOF at " + in.offset);
             case '\"':
                 sb.append('\"');
                 break;
@@ -213,97 +487,174 @@ public class FastJsonFormat implements Format{
                 sb.append('\t');
                 break;
             case 'u':
-                StringBuilder hex = new StringBuilder();
+                int c = 0;
                 for(int i = 0; i < 4; i++){
-                    next = r.read();
-                    offset++;
+                    next = in.read();
                     if(next == -1){
-                        throw new FormatException("Unexpected EOF at " + offset);
+                        throw new FormatException("Unexpected EOF at " + in.offset);
+                    }
+                    int digit = Character.digit((char)next, 16);
+                    if(digit < 0){
+                        throw new FormatException("Invalid unicode escape at " + in.offset);
                     }
-                    hex.append((char)next);
+                    c = c * 16 + digit;
                 }
-                sb.append((char)Integer.parseInt(hex.toString(), 16));
+                sb.append((char)c);
                 break;
             default:
-                throw new FormatException("Invalid escape sequence: \\" + (char)next + " at " + offset);
+                throw new FormatException("Invalid escape sequence: \\" + (char)next + " at " + in.offset);
         }
     }
 
-    private SBool parseTrue(BufferedReader r) throws IOException, FormatException {
-        if(r.read() != 'r' || r.read() != 'u' || r.read() != 'e'){
-            throw new FormatException("Invalid value: true at " + offset);
+    private SBool parseTrue(CharInput in) throws IOException, FormatException {
+        if(in.read() != 'r' || in.read() != 'u' || in.read() != 'e'){
+            throw new FormatException("Invalid value: true at " + in.offset);
         }
-        offset += 3;
         return new SBool(true);
     }
 
-    private SBool parseFalse(BufferedReader r) throws IOException, FormatException {
-        if(r.read() != 'a' || r.read() != 'l' || r.read() != 's' || r.read() != 'e'){
-            throw new FormatException("Invalid value: false at " + offset);
+    private SBool parseFalse(CharInput in) throws IOException, FormatException {
+        if(in.read() != 'a' || in.read() != 'l' || in.read() != 's' || in.read() != 'e'){
+            throw new FormatException("Invalid value: false at " + in.offset);
         }
-        offset += 4;
         return new SBool(false);
     }
 
-    private SNull parseNull(BufferedReader r) throws IOException, FormatException {
-        if(r.read() != 'u' || r.read() != 'l' || r.read() != 'l'){
-            throw new FormatException("Invalid value: null at " + offset);
+    private SNull parseNull(CharInput in) throws IOException, FormatException {
+        if(in.read() != 'u' || in.read() != 'l' || in.read() != 'l'){
+            throw new FormatException("Invalid value: null at " + in.offset);
         }
-        offset += 3;
         return new SNull();
     }
 
-    private SList parseList(BufferedReader r) throws IOException, FormatException {
+    private SList parseList(CharInput in) throws IOException, FormatException {
         SList l = new SList();
-        int next = readNotSpace(r);
+        int next = readNotSpace(in);
         if(next == ']'){
             return l;
         }
-        r.reset();
-        offset--;
+        in.unread();
         while(true){
-            l.value.add(parse(r));
-            next = readNotSpace(r);
+            l.value.add(parse(in));
+            next = readNotSpace(in);
             if(next == ']'){
                 return l;
             }else if(next != ','){
-                throw new FormatException("Expected ',' or ']', got " + (char)next + " at " + offset);
+                throw new FormatException("Expected ',' or ']', got " + (char)next + " at " + in.offset);
             }
         }
     }
 
-    private SObject parseObject(BufferedReader r) throws IOException, FormatException {
+    private SObject parseObject(CharInput in) throws IOException, FormatException {
         SObject o = new SObject();
-        r.mark(1);
-        int next = readNotSpace(r);
+        int next = readNotSpace(in);
         if(next == '}'){
             return o;
         }
-        r.reset();
-        offset--;
+        in.unread();
         while(true){
-            next = readNotSpace(r);
+            next = readNotSpace(in);
             if(next != '\"'){
-                throw new FormatException("Expected '\"', got " + (char)next + " at " + offset);
+                throw new FormatException("Expected '\"', got " + (char)next + " at " + in.offset);
             }
-            SString key = parseString(r);
-            next = readNotSpace(r);
+            String key = in.keys.intern(readString(in));
+            next = readNotSpace(in);
             if(next != ':'){
-                throw new FormatException("Expected ':', got " + (char)next + " after \"" + escape(key.value) + "\" at " + offset);
+                throw new FormatException("Expected ':', got " + (char)next + " after \"" + escape(key) + "\" at " + in.offset);
             }
-            SValue value = parse(r);
-            o.value.put(key.value, value);
-            next = readNotSpace(r);
+            SValue value = parse(in);
+            o.value.put(key, value);
+            next = readNotSpace(in);
             if(next == '}'){
                 return o;
             }else if(next != ','){
-                throw new FormatException("Expected ',' or '}', got " + (char)next + " at " + offset);
+                throw new FormatException("Expected ',' or '}', got " + (char)next + " at " + in.offset);
+            }
+        }
+    }
+
+    private SValue parse(Utf8JsonInput in) throws IOException, FormatException {
+        int next = in.nextNonSpace();
+        switch(next){
+            case -1:
+                throw new FormatException("Unexpected EOF");
+            case '\"':
+                return new SString(in.readString());
+            case 't':
+                if(!in.readLiteral("true")){
+                    throw new FormatException("Invalid value: true at " + in.offset());
+                }
+                return new SBool(true);
+            case 'f':
+                if(!in.readLiteral("false")){
+                    throw new FormatException("Invalid value: false at " + in.offset());
+                }
+                return new SBool(false);
+            case 'n':
+                if(!in.readLiteral("null")){
+                    throw new FormatException("Invalid value: null at " + in.offset());
+                }
+                return new SNull();
+            case '[':
+                return parseList(in);
+            case '{':
+                return parseObject(in);
+            default:
+                if((next >= '0' && next <= '9') || next == '-'){
+                    try{
+                        return new SNumber(in.readNumber(next));
+                    }catch(NumberFormatException e){
+                        throw new FormatException("Invalid number at " + in.offset(), e);
+                    }
+                }
+                throw new FormatException("Unexpected character: " + (char)next + " at " + in.offset());
+        }
+    }
+
+    private SList parseList(Utf8JsonInput in) throws IOException, FormatException {
+        SList l = new SList();
+        int next = in.nextNonSpace();
+        if(next == ']'){
+            return l;
+        }
+        in.unread();
+        while(true){
+            l.value.add(parse(in));
+            next = in.nextNonSpace();
+            if(next == ']'){
+                return l;
+            }else if(next != ','){
+                throw new FormatException("Expected ',' or ']', got " + (char)next + " at " + in.offset());
             }
         }
     }
 
+    private SObject parseObject(Utf8JsonInput in) throws IOException, FormatException {
+        SObject o = new SObject();
+        int next = in.nextNonSpace();
+        if(next == '}'){
+            return o;
+        }
+        while(true){
+            if(next != '\"'){
+                throw new FormatException("Expected '\"', got " + (char)next + " at " + in.offset());
+            }
+            String key = in.readKey();
+            next = in.nextNonSpace();
+            if(next != ':'){
+                throw new FormatException("Expected ':', got " + (char)next + " after \"" + escape(key) + "\" at " + in.offset());
+            }
+            o.value.put(key, parse(in));
+            next = in.nextNonSpace();
+            if(next == '}'){
+                return o;
+            }else if(next != ','){
+                throw new FormatException("Expected ',' or '}', got " + (char)next + " at " + in.offset());
+            }
+            next = in.nextNonSpace();
+        }
+    }
 
-    
     private String escape(String s){
         StringBuilder sb = new StringBuilder();
         for(int i = 0; i < s.length(); i++){
@@ -0,0 +1,197 @@
+package ca.awoo.jabert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses a stream of UTF-8 JSON values that arrives in chunks, without ever blocking.
+ * <p>
+ * Each call to {@link #feed(ByteBuffer)} takes whatever bytes are available, for example from a non-blocking socket channel,
+ * and returns the values that are now complete. Values may be split anywhere, including in the middle of a string, a number or a multibyte character,
+ * and a chunk may hold any number of values. Values are separated by optional whitespace, like newline delimited JSON.
+ * One thread can therefore keep a feed parser per connection and serve many connections from a selector.
+ * </p>
+ * <p>
+ * Incoming bytes are scanned once as they arrive, keeping only the nesting depth and whether the scan is inside a string,
+ * so a value that arrives in many small chunks is not rescanned. Once a value is complete it is parsed with the same grammar as {@link FastJsonFormat}.
+ * </p>
+ * <p>
+ * A number or literal at the top level only ends when something follows it, so the last value is returned by {@link #finish()} when the input ends.
+ * A feed parser is not thread safe, and after it throws a {@link FormatException} it should be discarded.
+ * </p>
+ */
+public class FeedParser {
+    /**
+     * The largest value accepted unless another limit is given, 64MiB.
+     */
+    public static final int DEFAULT_MAX_VALUE_SIZE = 64 * 1024 * 1024;
+
+    private static final FastJsonFormat format = new FastJsonFormat("UTF-8");
+
+    private static final int BETWEEN = 0;
+    private static final int CONTAINER = 1;
+    private static final int STRING = 2;
+    private static final int ESCAPE = 3;
+    private static final int SCALAR = 4;
+
+    private final int maxValueSize;
+    private byte[] buf = new byte[1024];
+    private int start;
+    private int scanned;
+    private int limit;
+    private int state = BETWEEN;
+    private int depth;
+
+    /**
+     * Creates a parser that accepts values up to {@link #DEFAULT_MAX_VALUE_SIZE}.
+     */
+    public FeedParser() {
+        this(DEFAULT_MAX_VALUE_SIZE);
+    }
+
+    /**
+     * Creates a parser.
+     * @param maxValueSize The largest value in bytes to accept
+     */
+    public FeedParser(int maxValueSize) {
+        this.maxValueSize = maxValueSize;
+    }
+
+    /**
+     * Takes the next chunk of input.
+     * @param chunk The bytes that have arrived, all of which are consumed
+     * @return The values completed by this chunk, in order, which may be none
+     */
+    public List<SValue> feed(ByteBuffer chunk) throws FormatException {
+        List<SValue> values = null;
+        while(chunk.hasRemaining()){
+            if(limit == buf.length){
+                makeRoom();
+            }
+            int n = Math.min(chunk.remaining(), buf.length - limit);
+            chunk.get(buf, limit, n);
+            limit += n;
+            values = scan(values);
+            if(limit - start > maxValueSize){
+                throw new FormatException("Value is larger than " + maxValueSize + " bytes");
+            }
+        }
+        if(values == null){
+            return Collections.emptyList();
+        }
+        return values;
+    }
+
+    /**
+     * Ends the input.
+     * @return The value that was still waiting for its end, if any
+     * @throws FormatException If the input ended in the middle of a value
+     */
+    public List<SValue> finish() throws FormatException {
+        if(state == BETWEEN){
+            return Collections.emptyList();
+        }
+        if(state != SCALAR){
+            throw new FormatException("Input ended in the middle of a value");
+        }
+        List<SValue> values = new ArrayList<SValue>(1);
+        complete(limit, values);
+        return values;
+    }
+
+    /**
+     * Moves the value in progress to the front of the buffer, growing it if the value already fills it.
+     */
+    private void makeRoom(){
+        if(start > 0){
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            scanned -= start;
+            limit -= start;
+            start = 0;
+        }else{
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+    }
+
+    private List<SValue> scan(List<SValue> values) throws FormatException {
+        byte[] buf = this.buf;
+        for(int i = scanned; i < limit; i++){
+            byte b = buf[i];
+            switch(state){
+                case BETWEEN:
+                    if(b == ' ' || b == '\t' || b == '\r' || b == '\n'){
+                        start = i + 1;
+                    }else if(b == '{' || b == '['){
+                        depth = 1;
+                        state = CONTAINER;
+                    }else if(b == '"'){
+                        state = STRING;
+                    }else{
+                        state = SCALAR;
+                    }
+                    break;
+                case CONTAINER:
+                    if(b == '"'){
+                        state = STRING;
+                    }else if(b == '{' || b == '['){
+                        depth++;
+                    }else if(b == '}' || b == ']'){
+                        depth--;
+                        if(depth == 0){
+                            values = complete(i + 1, values);
+                        }
+                    }
+                    break;
+                case STRING:
+                    if(b == '\\'){
+                        state = ESCAPE;
+                    }else if(b == '"'){
+                        if(depth == 0){
+                            values = complete(i + 1, values);
+                        }else{
+                            state = CONTAINER;
+                        }
+                    }
+                    break;
+                case ESCAPE:
+                    state = STRING;
+                    break;
+                default:
+                    if(b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '{' || b == '[' || b == '"'){
+                        values = complete(i, values);
+                        //The byte that ended the scalar may start the next value
+                        i--;
+                    }
+                    break;
+            }
+        }
+        scanned = limit;
+        if(state == BETWEEN){
+            start = limit;
+        }
+        return values;
+    }
+
+    /**
+     * Parses the value from the start of the buffer up to end.
+     */
+    private List<SValue> complete(int end, List<SValue> values) throws FormatException {
+        ByteBuffer value = ByteBuffer.wrap(buf, start, end - start);
+        SValue sv = format.parse(value);
+        if(value.hasRemaining()){
+            throw new FormatException("Unexpected character " + (char)(value.get() & 0xFF) + " after a value");
+        }
+        if(values == null){
+            values = new ArrayList<SValue>();
+        }
+        values.add(sv);
+        start = end;
+        state = BETWEEN;
+        depth = 0;
+        return values;
+    }
+}
@@ -0,0 +1,159 @@
+package ca.awoo.jabert;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes one field of objects, with typed methods for primitive fields that do not box.
+ * <p>
+ * Where {@code sun.misc.Unsafe} is available the field is accessed directly at its offset in the object,
+ * which skips the access checks {@link Field#get(Object)} and {@link Field#set(Object, Object)} make on every call.
+ * Otherwise, or if the system property {@code jabert.unsafe} is {@code false}, plain reflection is used.
+ * </p>
+ * <p>
+ * Accessors from {@link #of(Field)} do not check that the target is an instance of the class declaring the field, so callers must,
+ * as {@link ReflectionSerializer} does once for each object it reads or writes rather than on every access.
+ * </p>
+ * <p>
+ * Values set through {@link #set(Object, Object)} are checked the same way {@link Field#set(Object, Object)} checks them.
+ * The typed methods must only be used on fields of exactly that primitive type.
+ * </p>
+ */
+abstract class FieldAccessor {
+    private static final boolean unsafe = unsafeAvailable();
+
+    /**
+     * Gets an accessor for an instance field, which must already be accessible.
+     * @param field The field
+     * @return The fastest accessor available
+     */
+    static FieldAccessor of(Field field){
+        //Unsafe's plain reads and writes would lose the ordering guarantees of volatile fields
+        if(unsafe && !Modifier.isVolatile(field.getModifiers())){
+            return new UnsafeFieldAccessor(field);
+        }
+        return new ReflectionAccessor(field);
+    }
+
+    /**
+     * Gets an accessor that uses plain reflection.
+     * @param field The field, which must already be accessible
+     * @return The accessor
+     */
+    static FieldAccessor reflective(Field field){
+        return new ReflectionAccessor(field);
+    }
+
+    private static boolean unsafeAvailable(){
+        if("false".equals(System.getProperty("jabert.unsafe"))){
+            return false;
+        }
+        try{
+            return UnsafeFieldAccessor.available();
+        }catch(Throwable e){
+            //Not available on this JVM or not allowed, reflection will do
+            return false;
+        }
+    }
+
+    abstract Object get(Object target) throws IllegalAccessException;
+    abstract void set(Object target, Object value) throws IllegalAccessException;
+
+    abstract boolean getBoolean(Object target) throws IllegalAccessException;
+    abstract char getChar(Object target) throws IllegalAccessException;
+    abstract byte getByte(Object target) throws IllegalAccessException;
+    abstract short getShort(Object target) throws IllegalAccessException;
+    abstract int getInt(Object target) throws IllegalAccessException;
+    abstract long getLong(Object target) throws IllegalAccessException;
+    abstract float getFloat(Object target) throws IllegalAccessException;
+    abstract double getDouble(Object target) throws IllegalAccessException;
+
+    abstract void setBoolean(Object target, boolean value) throws IllegalAccessException;
+    abstract void setChar(Object target, char value) throws IllegalAccessException;
+    abstract void setByte(Object target, byte value) throws IllegalAccessException;
+    abstract void setShort(Object target, short value) throws IllegalAccessException;
+    abstract void setInt(Object target, int value) throws IllegalAccessException;
+    abstract void setLong(Object target, long value) throws IllegalAccessException;
+    abstract void setFloat(Object target, float value) throws IllegalAccessException;
+    abstract void setDouble(Object target, double value) throws IllegalAccessException;
+
+    private static final class ReflectionAccessor extends FieldAccessor {
+        private final Field field;
+
+        ReflectionAccessor(Field field){
+            this.field = field;
+        }
+
+        Object get(Object target) throws IllegalAccessException {
+            return field.get(target);
+        }
+
+        void set(Object target, Object value) throws IllegalAccessException {
+            field.set(target, value);
+        }
+
+        boolean getBoolean(Object target) throws IllegalAccessException {
+            return field.getBoolean(target);
+        }
+
+        char getChar(Object target) throws IllegalAccessException {
+            return field.getChar(target);
+        }
+
+        byte getByte(Object target) throws IllegalAccessException {
+            return field.getByte(target);
+        }
+
+        short getShort(Object target) throws IllegalAccessException {
+            return field.getShort(target);
+        }
+
+        int getInt(Object target) throws IllegalAccessException {
+            return field.getInt(target);
+        }
+
+        long getLong(Object target) throws IllegalAccessException {
+            return field.getLong(target);
+        }
+
+        float getFloat(Object target) throws IllegalAccessException {
+            return field.getFloat(target);
+        }
+
+        double getDouble(Object target) throws IllegalAccessException {
+            return field.getDouble(target);
+        }
+
+        void setBoolean(Object target, boolean value) throws IllegalAccessException {
+            field.setBoolean(target, value);
+        }
+
+        void setChar(Object target, char value) throws IllegalAccessException {
+            field.setChar(target, value);
+        }
+
+        void setByte(Object target, byte value) throws IllegalAccessException {
+            field.setByte(target, value);
+        }
+
+        void setShort(Object target, short value) throws IllegalAccessException {
+            field.setShort(target, value);
+        }
+
+        void setInt(Object target, int value) throws IllegalAccessException {
+            field.setInt(target, value);
+        }
+
+        void setLong(Object target, long value) throws IllegalAccessException {
+            field.setLong(target, value);
+        }
+
+        void setFloat(Object target, float value) throws IllegalAccessException {
+            field.setFloat(target, value);
+        }
+
+        void setDouble(Object target, double value) throws IllegalAccessException {
+            field.setDouble(target, value);
+        }
+    }
+}
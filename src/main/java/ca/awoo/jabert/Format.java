@@ -2,8 +2,73 @@ package ca.awoo.jabert;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
+/**
+ * A way of writing SValues to bytes and reading them back.
+ * <p>
+ * Formats are thread safe. One instance can be shared by every thread, and should be, since the state of each call is kept per call or per thread.
+ * The readers and writers a format opens are not thread safe, each one belongs to the thread using it.
+ * </p>
+ */
 public interface Format {
     public void emit(SValue sv, OutputStream os) throws FormatException;
     public SValue parse(InputStream is) throws FormatException;
+
+    /**
+     * Opens a pull parser over a single value in the stream.
+     * <p>
+     * Formats that can read incrementally do so straight from the stream. Other formats may parse the whole value first.
+     * </p>
+     * @param is The stream to read from
+     * @return A reader which must be closed once it is no longer needed
+     */
+    public SValueReader reader(InputStream is) throws FormatException;
+
+    /**
+     * Opens a push writer that emits a single value to the stream.
+     * <p>
+     * Formats that can write incrementally do so straight to the stream. Other formats may build the whole value first.
+     * </p>
+     * @param os The stream to write to
+     * @return A writer which must be closed once the value is written
+     */
+    public SValueWriter writer(OutputStream os) throws FormatException;
+
+    /**
+     * Parses a single value from a buffer, starting at its position.
+     * <p>
+     * This works on any ByteBuffer, including a {@link java.nio.MappedByteBuffer} from {@link java.nio.channels.FileChannel#map},
+     * and reads the bytes without copying the buffer first.
+     * Formats that know where the value ends move the position just past it, so several values can be read from one buffer.
+     * Other formats may consume the rest of the buffer.
+     * </p>
+     * @param buffer The buffer to read from
+     * @return The value
+     */
+    public SValue parse(ByteBuffer buffer) throws FormatException;
+
+    /**
+     * Emits a value into a buffer, starting at its position.
+     * @param sv The value to emit
+     * @param buffer The buffer to write to, which may be direct
+     * @return true if the value fit, in which case the position is moved past it.
+     * false if it did not, in which case the position is left where it was and the bytes after it are undefined
+     */
+    public boolean emit(SValue sv, ByteBuffer buffer) throws FormatException;
+
+    /**
+     * Reads only some values out of a value, found by their paths.
+     * <p>
+     * A path starts with {@code $} for the whole value, followed by any number of {@code .name}, {@code ['name']} and {@code [index]} steps,
+     * for example {@code $.room.id} or {@code $.members[0]['display name']}.
+     * Formats that can skip values without parsing them only parse what the paths lead to, so the rest of the value is not fully checked.
+     * If a key appears more than once in an object the last one is used, the same as {@link #parse(InputStream)}.
+     * </p>
+     * @param is The stream to read
+     * @param paths The paths of the values to read
+     * @return The value at each path, in the same order, or null where the input has no value at that path
+     * @throws IllegalArgumentException If a path is not valid
+     */
+    public SValue[] extract(InputStream is, String... paths) throws FormatException;
 }
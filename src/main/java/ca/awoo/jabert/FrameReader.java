@@ -0,0 +1,186 @@
+package ca.awoo.jabert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads consecutive messages from one long lived stream.
+ * <p>
+ * Formats read ahead of the value they parse, so calling {@link Format#parse(InputStream)} twice on the same stream loses data.
+ * A frame reader owns the buffering instead. It cuts the stream into messages using the {@link Framing},
+ * hands each message to the format on its own, and keeps anything it has read past the end of a message for the next one.
+ * This lets a persistent connection pipeline messages.
+ * </p>
+ * <p>
+ * Messages are read like an iterator, with {@link #hasNext()} and {@link #next()}.
+ * </p>
+ */
+public class FrameReader {
+    /**
+     * The largest message accepted unless another limit is given, 64MiB.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Format format;
+    private final InputStream is;
+    private final Framing framing;
+    private final int maxFrameSize;
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    /**
+     * Creates a reader that accepts messages up to {@link #DEFAULT_MAX_FRAME_SIZE}.
+     * @param format The format of each message
+     * @param is The stream to read from
+     * @param framing How messages are separated
+     */
+    public FrameReader(Format format, InputStream is, Framing framing) {
+        this(format, is, framing, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a reader.
+     * @param format The format of each message
+     * @param is The stream to read from
+     * @param framing How messages are separated
+     * @param maxFrameSize The largest message in bytes to accept
+     */
+    public FrameReader(Format format, InputStream is, Framing framing, int maxFrameSize) {
+        this.format = format;
+        this.is = is;
+        this.framing = framing;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Reads more of the stream into the buffer, moving the unread bytes to the front and growing it if it is full.
+     * @return false if the stream has ended
+     */
+    private boolean fill() throws IOException {
+        if(eof){
+            return false;
+        }
+        if(pos > 0){
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if(limit == buf.length){
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        int read = is.read(buf, limit, buf.length - limit);
+        if(read < 0){
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private static boolean isBlank(byte b){
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Checks if there is another message, blocking until one starts or the stream ends.
+     * @return true if {@link #next()} will return a message
+     */
+    public boolean hasNext() throws FormatException {
+        try{
+            while(true){
+                if(framing == Framing.NEWLINE){
+                    while(pos < limit && isBlank(buf[pos])){
+                        pos++;
+                    }
+                }
+                if(pos < limit){
+                    return true;
+                }
+                if(!fill()){
+                    return false;
+                }
+            }
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    /**
+     * Reads the next message.
+     * @return The message
+     * @throws NoSuchElementException If the stream has ended
+     */
+    public SValue next() throws FormatException {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        try{
+            if(framing == Framing.NEWLINE){
+                return nextLine();
+            }else{
+                return nextLengthPrefixed();
+            }
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    private SValue nextLine() throws IOException, FormatException {
+        int scanned = pos;
+        while(true){
+            while(scanned < limit && buf[scanned] != '\n'){
+                scanned++;
+            }
+            if(scanned < limit){
+                break;
+            }
+            if(scanned - pos > maxFrameSize){
+                throw new FormatException("Message is larger than " + maxFrameSize + " bytes");
+            }
+            int start = pos;
+            if(!fill()){
+                break;
+            }
+            scanned -= start - pos;
+        }
+        int end = scanned;
+        while(end > pos && isBlank(buf[end - 1])){
+            end--;
+        }
+        if(end - pos > maxFrameSize){
+            throw new FormatException("Message is larger than " + maxFrameSize + " bytes");
+        }
+        SValue sv = format.parse(new ByteArrayInputStream(buf, pos, end - pos));
+        pos = Math.min(scanned + 1, limit);
+        return sv;
+    }
+
+    private SValue nextLengthPrefixed() throws IOException, FormatException {
+        require(4);
+        int length = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+        if(length < 0 || length > maxFrameSize){
+            throw new FormatException("Invalid message length " + (length & 0xFFFFFFFFL) + ", the limit is " + maxFrameSize);
+        }
+        pos += 4;
+        require(length);
+        SValue sv = format.parse(new ByteArrayInputStream(buf, pos, length));
+        pos += length;
+        return sv;
+    }
+
+    private void require(int n) throws IOException, FormatException {
+        while(limit - pos < n){
+            if(!fill()){
+                throw new FormatException("Stream ended in the middle of a message");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ca.awoo.jabert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes consecutive messages to one long lived stream so that a {@link FrameReader} can read them back one at a time.
+ * <p>
+ * Each message is emitted into a reusable buffer and then written with its framing in one go, and the stream is flushed after every message.
+ * </p>
+ */
+public class FrameWriter {
+    private final Format format;
+    private final OutputStream os;
+    private final Framing framing;
+    private final Buffer buffer = new Buffer();
+
+    private static class Buffer extends ByteArrayOutputStream {
+        public Buffer() {
+            super(8192);
+        }
+
+        public byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * Creates a writer.
+     * @param format The format to emit each message with
+     * @param os The stream to write to
+     * @param framing How messages are separated
+     */
+    public FrameWriter(Format format, OutputStream os, Framing framing) {
+        this.format = format;
+        this.os = os;
+        this.framing = framing;
+    }
+
+    /**
+     * Writes one message and flushes the stream.
+     * @param sv The message
+     */
+    public void write(SValue sv) throws FormatException {
+        buffer.reset();
+        format.emit(sv, buffer);
+        byte[] bytes = buffer.bytes();
+        int length = buffer.size();
+        try{
+            if(framing == Framing.NEWLINE){
+                for(int i = 0; i < length; i++){
+                    if(bytes[i] == '\n'){
+                        throw new FormatException("Message contains a newline, it can only be sent with length prefixed framing");
+                    }
+                }
+                os.write(bytes, 0, length);
+                os.write('\n');
+            }else{
+                os.write(new byte[] { (byte)(length >>> 24), (byte)(length >>> 16), (byte)(length >>> 8), (byte)length });
+                os.write(bytes, 0, length);
+            }
+            os.flush();
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ca.awoo.jabert;
+
+/**
+ * How consecutive messages are separated on one stream.
+ * @see FrameReader
+ * @see FrameWriter
+ */
+public enum Framing {
+    /**
+     * Each message is followed by a newline, as in newline delimited json.
+     * Only usable with text formats whose output never contains a raw newline, like the json formats.
+     * Blank lines between messages are ignored.
+     */
+    NEWLINE,
+    /**
+     * Each message is preceded by its length in bytes as a 4 byte big endian integer. Works with any format.
+     */
+    LENGTH_PREFIXED
+}
@@ -0,0 +1,27 @@
+package ca.awoo.jabert;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class to have its serializer generated at compile time by the jabert-processor annotation processor.
+ * <p>
+ * The generated serializer reads and writes the same fields as {@link ReflectionSerializer}, the ones the class declares that are not static or transient,
+ * and handles Optional, Map, Collection and {@link SerializeAsNull} fields the same way. It is put in the same package and named by {@link GeneratedSerializer#nameFor(String)},
+ * so {@code com.example.Outer.Inner} gets {@code com.example.Outer_Inner_JabertSerializer}.
+ * {@link Serializers#defaultSerializer()} uses it when it is there and falls back to reflection when it is not, for example when the processor was not run.
+ * </p>
+ * <p>
+ * The generated code can not reach private or final fields, so those are still read and written through reflection. Hot classes should keep their fields package-private.
+ * The class must have a constructor with no arguments that is not private, and a nested class must be static.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateSerializer {
+
+}
@@ -0,0 +1,300 @@
+package ca.awoo.jabert;
+
+import java.lang.reflect.Field;
+
+import ca.awoo.fwoabl.Optional;
+import ca.awoo.fwoabl.OptionalNoneException;
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * The base of the serializers generated for classes marked with {@link GenerateSerializer}.
+ * <p>
+ * Generated serializers read and write fields directly, so they skip the reflection {@link ReflectionSerializer} does on every object.
+ * This class holds the parts they share, which are not meant to be called by anything else.
+ * Every generated serializer has a public constructor taking the base serializer, which is used for the values of its fields.
+ * </p>
+ */
+public abstract class GeneratedSerializer implements StreamingSerializer {
+    /**
+     * What is added to the name of a class to get the name of its generated serializer.
+     */
+    public static final String SUFFIX = "_JabertSerializer";
+
+    /**
+     * The serializer used for the values of the fields.
+     */
+    protected final Serializer base;
+
+    protected GeneratedSerializer(Serializer base){
+        this.base = base;
+    }
+
+    /**
+     * Gets the name of the serializer generated for a class. It is in the same package, with the nesting of the class flattened.
+     * @param binaryName The binary name of the class, as returned by {@link Class#getName()}
+     * @return The binary name of its generated serializer
+     */
+    public static String nameFor(String binaryName){
+        int dot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, dot + 1) + binaryName.substring(dot + 1).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * Looks up a field the generated code can not reach directly.
+     */
+    protected static Field field(Class<?> clazz, String name){
+        try{
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }catch(NoSuchFieldException e){
+            //The class has changed since its serializer was generated
+            throw new IllegalStateException("Field " + name + " of " + clazz.getName() + " is missing, its serializer needs to be generated again", e);
+        }
+    }
+
+    protected static Object get(Field field, Object t) throws SerializationException {
+        try{
+            return field.get(t);
+        }catch(IllegalAccessException e){
+            throw new SerializationException("Could not access field " + field.getName() + " of object " + t.getClass().getName(), e);
+        }
+    }
+
+    protected static void set(Field field, Object t, Object value) throws SerializationException {
+        try{
+            field.set(t, value);
+        }catch(IllegalAccessException e){
+            throw new SerializationException("Could not access field " + field.getName() + " of object " + t.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * Creates a map or collection for a field whose type has no constructor the generated code can call.
+     */
+    protected static <T> T instantiate(Class<T> clazz) throws SerializationException {
+        try{
+            return clazz.newInstance();
+        }catch(InstantiationException e){
+            throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
+        }catch(IllegalAccessException e){
+            throw new SerializationException("Could not access class " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Gets the value of an Optional that has already been checked to be Some.
+     */
+    protected static Object some(Optional<?> opt) throws SerializationException {
+        try{
+            return opt.get();
+        }catch(OptionalNoneException e){
+            throw new SerializationException("Unreachable");
+        }
+    }
+
+    /**
+     * Fails for a Map field whose keys are not declared as Strings.
+     */
+    protected static void noStringKeys() throws SerializationException {
+        throw new SerializationException("Can only serialize Maps with String keys");
+    }
+
+    /**
+     * Fails for a field whose element type could not be worked out when its serializer was generated.
+     */
+    protected static Class<?> unknownElementType(String name) throws SerializationException {
+        throw new SerializationException("Could not tell the element type of field " + name);
+    }
+
+    private boolean plain(Class<?> primitive){
+        return ReflectionSerializer.hasPrimitiveSerializer(base, primitive);
+    }
+
+    protected final void writePrimitive(boolean value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(boolean.class)){
+            out.value(value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(char value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(char.class)){
+            out.value(String.valueOf(value));
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(byte value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(byte.class)){
+            out.value((long)value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(short value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(short.class)){
+            out.value((long)value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(int value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(int.class)){
+            out.value((long)value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(long value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(long.class)){
+            out.value(value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(float value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(float.class)){
+            //Written as a Float, widening it to a double would change its shortest form
+            out.value((Number)value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    protected final void writePrimitive(double value, SValueWriter out) throws SerializationException, FormatException {
+        if(plain(double.class)){
+            out.value(value);
+        }else{
+            Serializers.serialize(base, value, out);
+        }
+    }
+
+    private Object boxed(SValue sv, Class<?> primitive) throws SerializationException {
+        Object value = base.deserialize(sv, primitive);
+        if(value == null){
+            throw new SerializationException("Cannot set a " + primitive.getName() + " field to null");
+        }
+        return value;
+    }
+
+    private Object boxed(SValueReader in, Class<?> primitive) throws SerializationException, FormatException {
+        Object value = Serializers.deserialize(base, in, primitive);
+        if(value == null){
+            throw new SerializationException("Cannot set a " + primitive.getName() + " field to null");
+        }
+        return value;
+    }
+
+    protected final boolean readBoolean(SValue sv) throws SerializationException {
+        if(sv instanceof SBool && plain(boolean.class)){
+            return ((SBool)sv).value;
+        }
+        return (Boolean)boxed(sv, boolean.class);
+    }
+
+    protected final char readChar(SValue sv) throws SerializationException {
+        return (Character)boxed(sv, char.class);
+    }
+
+    protected final byte readByte(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(byte.class)){
+            return ((SNumber)sv).byteValue();
+        }
+        return (Byte)boxed(sv, byte.class);
+    }
+
+    protected final short readShort(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(short.class)){
+            return ((SNumber)sv).shortValue();
+        }
+        return (Short)boxed(sv, short.class);
+    }
+
+    protected final int readInt(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(int.class)){
+            return ((SNumber)sv).intValue();
+        }
+        return (Integer)boxed(sv, int.class);
+    }
+
+    protected final long readLong(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(long.class)){
+            return ((SNumber)sv).longValue();
+        }
+        return (Long)boxed(sv, long.class);
+    }
+
+    protected final float readFloat(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(float.class)){
+            return ((SNumber)sv).floatValue();
+        }
+        return (Float)boxed(sv, float.class);
+    }
+
+    protected final double readDouble(SValue sv) throws SerializationException {
+        if(sv instanceof SNumber && plain(double.class)){
+            return ((SNumber)sv).doubleValue();
+        }
+        return (Double)boxed(sv, double.class);
+    }
+
+    protected final boolean readBoolean(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.BOOLEAN && plain(boolean.class)){
+            return in.nextBoolean();
+        }
+        return (Boolean)boxed(in, boolean.class);
+    }
+
+    protected final char readChar(SValueReader in) throws SerializationException, FormatException {
+        return (Character)boxed(in, char.class);
+    }
+
+    protected final byte readByte(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(byte.class)){
+            return in.nextNumber().byteValue();
+        }
+        return (Byte)boxed(in, byte.class);
+    }
+
+    protected final short readShort(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(short.class)){
+            return in.nextNumber().shortValue();
+        }
+        return (Short)boxed(in, short.class);
+    }
+
+    protected final int readInt(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(int.class)){
+            return in.nextInt();
+        }
+        return (Integer)boxed(in, int.class);
+    }
+
+    protected final long readLong(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(long.class)){
+            return in.nextLong();
+        }
+        return (Long)boxed(in, long.class);
+    }
+
+    protected final float readFloat(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(float.class)){
+            return in.nextNumber().floatValue();
+        }
+        return (Float)boxed(in, float.class);
+    }
+
+    protected final double readDouble(SValueReader in) throws SerializationException, FormatException {
+        if(in.peek() == SValueReader.Token.NUMBER && plain(double.class)){
+            return in.nextDouble();
+        }
+        return (Double)boxed(in, double.class);
+    }
+}
@@ -0,0 +1,93 @@
+package ca.awoo.jabert;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands classes marked with {@link GenerateSerializer} to their generated serializers, used by {@link Serializers#defaultSerializer()}.
+ * <p>
+ * A generated serializer is loaded the first time its class is seen, from the class loader of that class.
+ * Classes without one, because the annotation processor was not run, go to the fallback serializer instead.
+ * Generated serializers always create new objects, only classes handed to the fallback can be read in place.
+ * </p>
+ */
+class GeneratedSerializerLookup implements StreamingSerializer, InPlaceDeserializer {
+    private final Serializer baseSerializer;
+    private final Serializer fallback;
+    private final ConcurrentHashMap<Class<?>, Serializer> serializers = new ConcurrentHashMap<Class<?>, Serializer>();
+
+    /**
+     * @param baseSerializer The serializer the generated serializers use for the values of fields
+     * @param fallback The serializer to use for classes that have no generated serializer
+     */
+    GeneratedSerializerLookup(Serializer baseSerializer, Serializer fallback){
+        this.baseSerializer = baseSerializer;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Gets the serializer for a class, loading its generated serializer the first time.
+     * @param clazz The class
+     * @return The generated serializer, or the fallback if there is none
+     */
+    Serializer serializerFor(Class<?> clazz) throws SerializationException {
+        Serializer serializer = serializers.get(clazz);
+        if(serializer == null){
+            //Two threads may both load it, either one will do
+            serializer = load(clazz);
+            serializers.put(clazz, serializer);
+        }
+        return serializer;
+    }
+
+    private Serializer load(Class<?> clazz) throws SerializationException {
+        Class<?> generated;
+        try{
+            generated = Class.forName(GeneratedSerializer.nameFor(clazz.getName()), true, clazz.getClassLoader());
+        }catch(ClassNotFoundException e){
+            return fallback;
+        }
+        try{
+            return (Serializer)generated.getConstructor(Serializer.class).newInstance(baseSerializer);
+        }catch(NoSuchMethodException e){
+            throw new SerializationException("Generated serializer " + generated.getName() + " has no constructor taking a serializer", e);
+        }catch(InstantiationException e){
+            throw new SerializationException("Could not instantiate generated serializer " + generated.getName(), e);
+        }catch(IllegalAccessException e){
+            throw new SerializationException("Could not access generated serializer " + generated.getName(), e);
+        }catch(InvocationTargetException e){
+            throw new SerializationException("Could not create generated serializer " + generated.getName(), e.getCause());
+        }
+    }
+
+    public SValue serialize(Object t) throws SerializationException {
+        if(t == null){
+            return new SValue.SNull();
+        }
+        return serializerFor(t.getClass()).serialize(t);
+    }
+
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(t == null){
+            out.nullValue();
+            return;
+        }
+        Serializers.serialize(serializerFor(t.getClass()), t, out);
+    }
+
+    public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
+        return serializerFor(clazz).deserialize(sv, clazz);
+    }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        return Serializers.deserialize(serializerFor(clazz), in, clazz);
+    }
+
+    public Object deserializeInto(SValue sv, Object target) throws SerializationException {
+        return Serializers.deserializeInto(serializerFor(target.getClass()), sv, target);
+    }
+
+    public Object deserializeInto(SValueReader in, Object target) throws SerializationException, FormatException {
+        return Serializers.deserializeInto(serializerFor(target.getClass()), in, target);
+    }
+}
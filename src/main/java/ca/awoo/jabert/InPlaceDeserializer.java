@@ -0,0 +1,29 @@
+package ca.awoo.jabert;
+
+/**
+ * A serializer that can also read a value into an object that already exists, overwriting its state instead of creating a new object.
+ * <p>
+ * The target must end up the same as the object {@link #deserialize(SValue, Class)} would create for its class.
+ * Collections and maps the target already holds may be cleared and filled again rather than replaced,
+ * so anything else holding on to them will see them change.
+ * </p>
+ * @see Serializers#deserializeInto(Serializer, SValue, Object)
+ * @see Serializers#parseInto(Serializer, Object, Format, java.io.InputStream)
+ */
+public interface InPlaceDeserializer extends Serializer {
+    /**
+     * Reads a value into an existing object.
+     * @param sv The value to read
+     * @param target The object to overwrite, which must not be null
+     * @return The object read, which is the target unless the value could not be read into it, such as a null value
+     */
+    public Object deserializeInto(SValue sv, Object target) throws SerializationException;
+
+    /**
+     * Reads the next value of a reader into an existing object.
+     * @param in The reader to read from
+     * @param target The object to overwrite, which must not be null
+     * @return The object read, which is the target unless the value could not be read into it, such as a null value
+     */
+    public Object deserializeInto(SValueReader in, Object target) throws SerializationException, FormatException;
+}
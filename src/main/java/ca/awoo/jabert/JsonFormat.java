@@ -1,113 +1,105 @@
 package ca.awoo.jabert;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.List;
+import java.util.Map;
 
 import ca.awoo.fwoabl.Optional;
 import ca.awoo.fwoabl.OptionalNoneException;
-import ca.awoo.fwoabl.function.Functions;
-import ca.awoo.fwoabl.function.Predicate;
 import ca.awoo.jabert.SValue.*;
 import ca.awoo.praser.Context;
 import ca.awoo.praser.ParseException;
 import ca.awoo.praser.Parser;
 import ca.awoo.praser.StreamException;
-import ca.awoo.praser.FilterContext;
-import ca.awoo.praser.ParsedContext;
 
-import static ca.awoo.praser.Text.*;
-import static ca.awoo.praser.Combinators.*;
 
 public class JsonFormat implements Format {
     private final String encoding;
+    private final boolean asciiOutput;
+    //Kept per thread so a format shared by many threads does not have them all writing to one table
+    private static final ThreadLocal<KeyTable> keys = new ThreadLocal<KeyTable>() {
+        @Override
+        protected KeyTable initialValue() {
+            return new KeyTable();
+        }
+    };
     
-    @SuppressWarnings("unchecked")
     public JsonFormat(String encoding) {
         this.encoding = encoding;
-        jsonParser = or(jsonStringParser, jsonNumberParser, jsonBoolParser, jsonNullParser, jsonListParser, jsonObjectParser);
-    }
-    
-    private String escape(String s){
-        StringBuilder sb = new StringBuilder();
-        for(int i = 0; i < s.length(); i++){
-            char c = s.charAt(i);
-            if(c == '\\'){
-                sb.append("\\\\");
-            }else if(c == '\"'){
-                sb.append("\\\"");
-            }else if(c == '\n'){
-                sb.append("\\n");
-            }else if(c == '\r'){
-                sb.append("\\r");
-            }else if(c == '\t'){
-                sb.append("\\t");
-            }else if(c == '\b'){
-                sb.append("\\b");
-            }else if(c == '\f'){
-                sb.append("\\f");
-            }else if(c < 32 || c >= 127){
-                sb.append(String.format("\\u%04x", (int)c));
-            }else{
-                sb.append(c);
-            }
-        }
-        return sb.toString();
+        this.asciiOutput = JsonOutput.isAsciiCompatible(encoding);
     }
     
     public void emit(SValue sv, OutputStream os) throws FormatException {
+        JsonOutput out;
         try{
-            PrintStream ps = new PrintStream(os, true, encoding);
-            if(sv instanceof SNumber){
-                SNumber sn = (SNumber)sv;
-                ps.print(sn.value);
-            }else if(sv instanceof SString){
-                SString ss = (SString)sv;
-                ps.print("\"");
-                ps.print(escape(ss.value));
-                ps.print("\"");
-            }else if(sv instanceof SList){
-                SList sl = (SList)sv;
-                ps.print("[");
-                for(int i = 0; i < sl.value.size(); i++){
-                    if(i > 0){
-                        ps.print(",");
-                    }
-                    emit(sl.value.get(i), os);
+            out = JsonOutput.open(os, encoding, asciiOutput);
+        } catch(UnsupportedEncodingException e){
+            throw new FormatException("JsonFormat was created with an invalid encoding: " + encoding, e);
+        }
+        try{
+            emit(sv, out);
+            out.flush();
+        } catch(IOException e){
+            throw new FormatException("Failed to write json", e);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void emit(SValue sv, JsonOutput out) throws FormatException, IOException {
+        if(sv instanceof SNumber){
+            SNumber sn = (SNumber)sv;
+            out.writeNumber(sn.value);
+        }else if(sv instanceof SString){
+            SString ss = (SString)sv;
+            out.writeString(ss.value);
+        }else if(sv instanceof SList){
+            SList sl = (SList)sv;
+            out.writeByte('[');
+            for(int i = 0; i < sl.value.size(); i++){
+                if(i > 0){
+                    out.writeByte(',');
                 }
-                ps.print("]");
-            }else if(sv instanceof SObject){
-                SObject so = (SObject)sv;
-                ps.print("{");
-                boolean first = true;
-                for(String key : so.value.keySet()){
-                    if(!first){
-                        ps.print(",");
-                    }
-                    first = false;
-                    ps.print("\"");
-                    ps.print(escape(key));
-                    ps.print("\":");
-                    emit(so.value.get(key), os);
+                emit(sl.value.get(i), out);
+            }
+            out.writeByte(']');
+        }else if(sv instanceof SObject){
+            SObject so = (SObject)sv;
+            out.writeByte('{');
+            boolean first = true;
+            for(Map.Entry<String, SValue> entry : so.value.entrySet()){
+                if(!first){
+                    out.writeByte(',');
                 }
-                ps.print("}");
-            }else if(sv instanceof SBool){
-                SBool sb = (SBool)sv;
-                ps.print(sb.value ? "true" : "false");
-            }else if(sv instanceof SNull){
-                ps.print("null");
-            }else{
-                throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+                first = false;
+                out.writeString(entry.getKey());
+                out.writeByte(':');
+                emit(entry.getValue(), out);
             }
+            out.writeByte('}');
+        }else if(sv instanceof SBool){
+            SBool sb = (SBool)sv;
+            out.writeBoolean(sb.value);
+        }else if(sv instanceof SNull){
+            out.writeAscii("null");
+        }else{
+            throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+        }
+    }
+    
+    public SValueWriter writer(OutputStream os) throws FormatException {
+        try{
+            return new JsonValueWriter(JsonOutput.open(os, encoding, asciiOutput));
         } catch(UnsupportedEncodingException e){
             throw new FormatException("JsonFormat was created with an invalid encoding: " + encoding, e);
         }
     }
-    
+
     private static class JsonToken{
         public final String original;
         
@@ -127,12 +119,6 @@ public class JsonFormat implements Format {
             }
         }
         
-        public static class Whitespace extends JsonToken {
-            public Whitespace(String original){
-                super(original);
-            }
-        }
-        
         public static class OpenBracket extends JsonToken {
             public OpenBracket(String original){
                 super(original);
@@ -193,214 +179,249 @@ public class JsonFormat implements Format {
         
     }
     
-    private final Parser<Character, JsonToken.JsonString> stringParser = new Parser<Character, JsonToken.JsonString>() {
-        @SuppressWarnings("unchecked")
-        public JsonToken.JsonString parse(Context<Character> context) throws ParseException {
-            StringBuilder original = new StringBuilder();
+    private static final JsonToken.OpenBracket OPEN_BRACKET = new JsonToken.OpenBracket("[");
+    private static final JsonToken.CloseBracket CLOSE_BRACKET = new JsonToken.CloseBracket("]");
+    private static final JsonToken.OpenBrace OPEN_BRACE = new JsonToken.OpenBrace("{");
+    private static final JsonToken.CloseBrace CLOSE_BRACE = new JsonToken.CloseBrace("}");
+    private static final JsonToken.Colon COLON = new JsonToken.Colon(":");
+    private static final JsonToken.Comma COMMA = new JsonToken.Comma(",");
+    private static final JsonToken.JsonTrue TRUE = new JsonToken.JsonTrue("true");
+    private static final JsonToken.JsonFalse FALSE = new JsonToken.JsonFalse("false");
+    private static final JsonToken.JsonNull NULL = new JsonToken.JsonNull("null");
+
+    /**
+     * Splits the characters of a stream into tokens for the structural parsers, reading them from a {@link CharInput} buffer.
+     * <p>
+     * Characters are read as plain ints with one char of lookahead, so there is no boxed Character, Optional or cloned context per character.
+     * Whitespace is skipped between tokens rather than becoming tokens of its own, and tokens without a value are shared instances.
+     * </p>
+     * <p>
+     * The context owns the input until {@link #close()} is called, which hands the buffers back for the next parse on this thread.
+     * </p>
+     */
+    private static final class JsonTokenContext extends Context<JsonToken> {
+        private final CharInput in;
+
+        JsonTokenContext(InputStream is, Charset charset){
+            this.in = CharInput.open(is, charset);
+        }
+
+        void close(){
+            in.close();
+        }
+
+        protected Optional<JsonToken> produce() throws StreamException {
             try{
-                tag("\"").parse(context);
-                original.append("\"");
-                StringBuilder value = new StringBuilder();
-                Parser<Character, Character> normalChar = not(or(tag("\\"), tag("\"")));
-                Parser<Character, List<String>> escapeChar = seq(tag("\\"), or(tag("\""), tag("\\"), tag("/"), tag("b"), tag("f"), tag("n"), tag("r"), tag("t"), stringAppend(seq(tag("u"), stringFold(repN(4, hexDigit()))))));
-                
-                while(true){
-                    Context<Character> clone = context.clone();
-                    try{
-                        char c = normalChar.parse(clone);
-                        context.skip(clone.getOffset() - context.getOffset());
-                        original.append(c);
-                        value.append(c);
-                    } catch(ParseException e){
-                        try{
-                            clone = context.clone();
-                            List<String> escape = escapeChar.parse(clone);
-                            context.skip(clone.getOffset() - context.getOffset());
-                            original.append(escape.get(0));
-                            original.append(escape.get(1));
-                            String escapeValue = escape.get(1);
-                            if(escapeValue.equals("\"")){
-                                value.append("\"");
-                            }else if(escapeValue.equals("\\")){
-                                value.append("\\");
-                            }else if(escapeValue.equals("/")){
-                                value.append("/");
-                            }else if(escapeValue.equals("b")){
-                                value.append("\b");
-                            }else if(escapeValue.equals("f")){
-                                value.append("\f");
-                            }else if(escapeValue.equals("n")){
-                                value.append("\n");
-                            }else if(escapeValue.equals("r")){
-                                value.append("\r");
-                            }else if(escapeValue.equals("t")){
-                                value.append("\t");
-                            }else{
-                                value.append((char)Integer.parseInt(escapeValue.substring(1), 16));
-                            }
-                        } catch(ParseException e2){
-                            //Check if we're at the end of the string
-                            try{
-                                tag("\"").parse(context);
-                                original.append("\"");
-                                return new JsonToken.JsonString(original.toString(), value.toString());
-                            } catch(ParseException e3){
-                                throw new ParseException(context, "Invalid escape sequence in string: " + original.toString(), e2);
-                            }
+                int c = in.read();
+                while(c == ' ' || c == '\t' || c == '\n' || c == '\r'){
+                    c = in.read();
+                }
+                switch(c){
+                    case -1:
+                        return new Optional.None<JsonToken>();
+                    case '{':
+                        return new Optional.Some<JsonToken>(OPEN_BRACE);
+                    case '}':
+                        return new Optional.Some<JsonToken>(CLOSE_BRACE);
+                    case '[':
+                        return new Optional.Some<JsonToken>(OPEN_BRACKET);
+                    case ']':
+                        return new Optional.Some<JsonToken>(CLOSE_BRACKET);
+                    case ':':
+                        return new Optional.Some<JsonToken>(COLON);
+                    case ',':
+                        return new Optional.Some<JsonToken>(COMMA);
+                    case '"':
+                        return new Optional.Some<JsonToken>(string());
+                    case 't':
+                        literal("true");
+                        return new Optional.Some<JsonToken>(TRUE);
+                    case 'f':
+                        literal("false");
+                        return new Optional.Some<JsonToken>(FALSE);
+                    case 'n':
+                        literal("null");
+                        return new Optional.Some<JsonToken>(NULL);
+                    default:
+                        if(c == '-' || (c >= '0' && c <= '9')){
+                            return new Optional.Some<JsonToken>(number(c));
                         }
-                    }
+                        throw new StreamException("Unexpected character in json: " + (char)c + " at " + in.offset);
                 }
-            } catch(ParseException e){
-                throw new ParseException(context, "Failed to parse json string (" + original.toString() + ")", e);
-            } catch(StreamException e){
-                throw new ParseException(context, "Stream exception while parsing json string", e);
+            } catch(IOException e){
+                throw new StreamException("IOException while reading json", e);
             }
         }
 
-        @Override
-        public String toString(){
-            return "JsonStringToken";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.JsonNumber> numberParser = new Parser<Character,JsonFormat.JsonToken.JsonNumber>() {
-        
-        @SuppressWarnings("unchecked")
-        public JsonToken.JsonNumber parse(Context<Character> context) throws ParseException {
-            Optional<String> minus = optional(tag("-")).parse(context);
-            String integer = or(tag("0"),stringAppend(seq(charToString(oneOf("123456789")), optionOr(optional(stringFold(many(digit()))), Functions.constant(""))))).parse(context);
-            Optional<String> fraction = optional(stringAppend(seq(tag("."), stringFold(many(digit()))))).parse(context);
-            Optional<String> exponent = optional(stringAppend(seq(charToString(oneOf("eE")), optionOr(optional(charToString(oneOf("+-"))), Functions.constant("")), stringFold(many(digit()))))).parse(context);
-            String number = minus.or("") + integer + fraction.or("") + exponent.or("");
-            try{
-                BigDecimal bd = new BigDecimal(number);
-                return new JsonToken.JsonNumber(number, bd);
-            } catch(NumberFormatException e){
-                throw new ParseException(context, "Failed to parse json number: " + number, e);
+        private int required() throws IOException, StreamException {
+            int c = in.read();
+            if(c < 0){
+                throw new StreamException("Unexpected end of stream at " + in.offset);
             }
+            return c;
         }
 
-        @Override
-        public String toString(){
-            return "JsonNumberToken";
-        }
-        
-    };
-
-    private final Parser<Character, JsonToken.JsonTrue> trueParser = new Parser<Character,JsonFormat.JsonToken.JsonTrue>() {
-        public JsonToken.JsonTrue parse(Context<Character> context) throws ParseException {
-            return new JsonToken.JsonTrue(tag("true").parse(context));
-        }
-
-        @Override
-        public String toString(){
-            return "JsonTrue";
-        }
-    };
-
-    private final Parser<Character, JsonToken.JsonFalse> falseParser = new Parser<Character,JsonFormat.JsonToken.JsonFalse>() {
-        public JsonToken.JsonFalse parse(Context<Character> context) throws ParseException {
-            return new JsonToken.JsonFalse(tag("false").parse(context));
-        }
-
-        @Override
-        public String toString(){
-            return "JsonFalse";
-        }
-    };
-
-    private final Parser<Character, JsonToken.JsonNull> nullParser = new Parser<Character,JsonFormat.JsonToken.JsonNull>() {
-        public JsonToken.JsonNull parse(Context<Character> context) throws ParseException {
-            return new JsonToken.JsonNull(tag("null").parse(context));
-        }
-
-        @Override
-        public String toString(){
-            return "JsonNull";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.Whitespace> whitespaceParser = new Parser<Character, JsonToken.Whitespace>() {
-        public JsonToken.Whitespace parse(Context<Character> context) throws ParseException {
-            return new JsonToken.Whitespace(oneOf(" \t\n\r").parse(context).toString());
-        }
-
-        @Override
-        public String toString(){
-            return "Whitespace";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.OpenBracket> openBracketParser = new Parser<Character, JsonToken.OpenBracket>() {
-        public JsonToken.OpenBracket parse(Context<Character> context) throws ParseException {
-            return new JsonToken.OpenBracket(tag("[").parse(context));
+        private void literal(String literal) throws IOException, StreamException {
+            for(int i = 1; i < literal.length(); i++){
+                if(required() != literal.charAt(i)){
+                    throw new StreamException("Expected " + literal + " at " + in.offset);
+                }
+            }
         }
 
-        @Override
-        public String toString(){
-            return "OpenBracket";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.CloseBracket> closeBracketParser = new Parser<Character, JsonToken.CloseBracket>() {
-        public JsonToken.CloseBracket parse(Context<Character> context) throws ParseException {
-            return new JsonToken.CloseBracket(tag("]").parse(context));
+        /**
+         * Reads the rest of a string.
+         */
+        private JsonToken.JsonString string() throws IOException, StreamException {
+            StringBuilder value = in.scratch;
+            value.setLength(0);
+            while(true){
+                int c = required();
+                if(c == '"'){
+                    String s = value.toString();
+                    return new JsonToken.JsonString(s, s);
+                }else if(c != '\\'){
+                    value.append((char)c);
+                    continue;
+                }
+                int escape = required();
+                switch(escape){
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append((char)escape);
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for(int i = 0; i < 4; i++){
+                            int digit = Character.digit((char)required(), 16);
+                            if(digit < 0){
+                                throw new StreamException("Invalid unicode escape in json string at " + in.offset);
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        value.append((char)code);
+                        break;
+                    default:
+                        throw new StreamException("Invalid escape sequence in json string: \\" + (char)escape + " at " + in.offset);
+                }
+            }
         }
 
-        @Override
-        public String toString(){
-            return "CloseBracket";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.OpenBrace> openBraceParser = new Parser<Character, JsonToken.OpenBrace>() {
-        public JsonToken.OpenBrace parse(Context<Character> context) throws ParseException {
-            return new JsonToken.OpenBrace(tag("{").parse(context));
+        /**
+         * Reads the rest of a number, {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?}, as a BigDecimal.
+         */
+        private JsonToken.JsonNumber number(int first) throws IOException, StreamException {
+            StringBuilder sb = in.scratch;
+            sb.setLength(0);
+            sb.append((char)first);
+            int c = first;
+            if(c == '-'){
+                c = in.read();
+                if(c < '0' || c > '9'){
+                    throw new StreamException("Expected a digit after - in json number at " + in.offset);
+                }
+                sb.append((char)c);
+            }
+            boolean zero = c == '0';
+            c = in.read();
+            if(!zero){
+                c = digits(sb, c);
+            }
+            if(c == '.'){
+                sb.append('.');
+                c = requiredDigits(sb, in.read());
+            }
+            if(c == 'e' || c == 'E'){
+                sb.append((char)c);
+                c = in.read();
+                if(c == '+' || c == '-'){
+                    sb.append((char)c);
+                    c = in.read();
+                }
+                c = requiredDigits(sb, c);
+            }
+            if(c >= 0){
+                in.unread();
+            }
+            String number = sb.toString();
+            try{
+                return new JsonToken.JsonNumber(number, new BigDecimal(number));
+            } catch(NumberFormatException e){
+                throw new StreamException("Failed to parse json number: " + number, e);
+            }
         }
 
-        @Override
-        public String toString(){
-            return "OpenBrace";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.CloseBrace> closeBraceParser = new Parser<Character, JsonToken.CloseBrace>() {
-        public JsonToken.CloseBrace parse(Context<Character> context) throws ParseException {
-            return new JsonToken.CloseBrace(tag("}").parse(context));
+        /**
+         * Appends digits starting with the given char.
+         * @return The first char that is not a digit
+         */
+        private int digits(StringBuilder sb, int c) throws IOException {
+            while(c >= '0' && c <= '9'){
+                sb.append((char)c);
+                c = in.read();
+            }
+            return c;
         }
 
-        @Override
-        public String toString(){
-            return "CloseBrace";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.Colon> colonParser = new Parser<Character, JsonToken.Colon>() {
-        public JsonToken.Colon parse(Context<Character> context) throws ParseException {
-            return new JsonToken.Colon(tag(":").parse(context));
+        private int requiredDigits(StringBuilder sb, int c) throws IOException, StreamException {
+            if(c < '0' || c > '9'){
+                throw new StreamException("Expected a digit in json number: " + sb + " at " + in.offset);
+            }
+            return digits(sb, c);
         }
+    }
 
-        @Override
-        public String toString(){
-            return "Colon";
-        }
-    };
-    
-    private final Parser<Character, JsonToken.Comma> commaParser = new Parser<Character, JsonToken.Comma>() {
-        public JsonToken.Comma parse(Context<Character> context) throws ParseException {
-            return new JsonToken.Comma(tag(",").parse(context));
+    /**
+     * Parses any value, picking the parser from the type of the next token.
+     * Trying each parser in turn with {@code or} would throw and catch a ParseException for every parser tried before the right one.
+     */
+    private final Parser<JsonToken, SValue> jsonParser = new Parser<JsonToken, SValue>() {
+        public SValue parse(Context<JsonToken> context) throws ParseException {
+            JsonToken token;
+            try {
+                token = context.clone().next().get();
+            } catch (StreamException e) {
+                throw new ParseException(context, "Stream exception while parsing json value", e);
+            } catch (OptionalNoneException e){
+                throw new ParseException(context, "Unexpected end of stream", e);
+            }
+            if(token instanceof JsonToken.JsonString){
+                return jsonStringParser.parse(context);
+            }else if(token instanceof JsonToken.JsonNumber){
+                return jsonNumberParser.parse(context);
+            }else if(token instanceof JsonToken.OpenBrace){
+                return jsonObjectParser.parse(context);
+            }else if(token instanceof JsonToken.OpenBracket){
+                return jsonListParser.parse(context);
+            }else if(token instanceof JsonToken.JsonTrue || token instanceof JsonToken.JsonFalse){
+                return jsonBoolParser.parse(context);
+            }else if(token instanceof JsonToken.JsonNull){
+                return jsonNullParser.parse(context);
+            }
+            throw new ParseException(context, "Expected a json value, but got: " + token.getClass().getName());
         }
 
         @Override
         public String toString(){
-            return "Comma";
+            return "JsonValue";
         }
     };
-    
-    @SuppressWarnings("unchecked")
-    private final Parser<Character, JsonToken> jsonTokenParser = or(stringParser, numberParser, trueParser, falseParser, whitespaceParser, nullParser, openBracketParser, closeBracketParser, openBraceParser, closeBraceParser, colonParser, commaParser);
-    
-    private final Parser<JsonToken, SValue> jsonParser;
 
     private final Parser<JsonToken, SString> jsonStringParser = new Parser<JsonToken, SString>() {
         public SString parse(Context<JsonToken> context) throws ParseException {
@@ -569,7 +590,8 @@ public class JsonFormat implements Format {
                     }
                     try{ 
                         SValue value = jsonParser.parse(context);
-                        values.put(key.value, value);
+                        //Only the object parser knows a string is a key, so keys are shared here rather than in the lexer
+                        values.put(keys.get().intern(key.value), value);
                     }catch(ParseException e){
                         throw new ParseException(context, "Failed to parse value for json object field: " + key.value, e);
                     }
@@ -599,17 +621,36 @@ public class JsonFormat implements Format {
 
     
     public SValue parse(InputStream is) throws FormatException{
-        Context<Character> charContext = contextFromStream(is, Charset.forName(encoding));
-        Context<JsonToken> tokenContext = new FilterContext<JsonToken>(new ParsedContext<Character, JsonToken>(charContext, jsonTokenParser), new Predicate<JsonToken>() {
-            public boolean invoke(JsonToken token) {
-                return !(token instanceof JsonToken.Whitespace);
-            }
-        });
+        JsonTokenContext tokenContext = new JsonTokenContext(is, Charset.forName(encoding));
         try{
             return jsonParser.parse(tokenContext);
         } catch(ParseException e){
             throw new FormatException("Failed to parse json", e);
+        } finally {
+            tokenContext.close();
         }
     }
+
+    public SValueReader reader(InputStream is) throws FormatException {
+        return new SValueTreeReader(parse(is));
+    }
+
+    public SValue[] extract(InputStream is, String... paths) throws FormatException {
+        PathTree tree = PathTree.compile(paths);
+        SValue[] results = new SValue[paths.length];
+        tree.fill(parse(is), results);
+        return results;
+    }
+
+    /**
+     * Parses a value from the buffer. The tokenizer reads ahead, so this consumes the rest of the buffer.
+     */
+    public SValue parse(ByteBuffer buffer) throws FormatException {
+        return parse(new ByteBufferInputStream(buffer));
+    }
+
+    public boolean emit(SValue sv, ByteBuffer buffer) throws FormatException {
+        return ByteBufferOutputStream.emit(this, sv, buffer);
+    }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,235 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+/**
+ * Buffered output used by the JSON emitters.
+ * <p>
+ * Everything the JSON emitters write is ASCII, since strings escape any character outside of it.
+ * For ASCII compatible encodings the bytes are written straight into a reusable buffer and handed to the stream in large blocks.
+ * Any other encoding goes through a single writer for the whole emit call.
+ * The stream is only flushed when {@link #flush()} is called.
+ * </p>
+ * <p>
+ * Outputs are pooled per thread, so {@link #open(OutputStream, String, boolean)} must always be paired with {@link #close()}.
+ * </p>
+ */
+final class JsonOutput {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<JsonOutput> pool = new ThreadLocal<JsonOutput>() {
+        @Override
+        protected JsonOutput initialValue() {
+            return new JsonOutput();
+        }
+    };
+
+    private OutputStream os;
+    private Writer writer;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private char[] chars;
+    private int pos;
+    private boolean inUse;
+
+    private JsonOutput(){}
+
+    /**
+     * Gets an output writing to the given stream, reusing this thread's buffer if it is free.
+     * @param os The stream to write to
+     * @param encoding The encoding to write in
+     * @param asciiCompatible Whether the encoding writes ASCII as single ASCII bytes, see {@link #isAsciiCompatible(String)}
+     * @return The output, which must be closed when emitting is done
+     * @throws UnsupportedEncodingException If the encoding is not supported
+     */
+    static JsonOutput open(OutputStream os, String encoding, boolean asciiCompatible) throws UnsupportedEncodingException {
+        Writer writer = asciiCompatible ? null : new OutputStreamWriter(os, encoding);
+        JsonOutput output = pool.get();
+        if(output.inUse){
+            output = new JsonOutput();
+        }
+        output.os = os;
+        output.writer = writer;
+        output.pos = 0;
+        output.inUse = true;
+        return output;
+    }
+
+    /**
+     * Releases this output back to the pool. Anything not yet flushed is discarded and the stream is not closed.
+     */
+    void close(){
+        os = null;
+        writer = null;
+        inUse = false;
+    }
+
+    /**
+     * Checks if an encoding writes every ASCII character as the same single byte.
+     * @param encoding The encoding name
+     * @return true if ASCII can be written to the stream as is
+     */
+    static boolean isAsciiCompatible(String encoding){
+        byte[] ascii = new byte[128];
+        for(int i = 0; i < ascii.length; i++){
+            ascii[i] = (byte)i;
+        }
+        try{
+            String s = new String(ascii, "US-ASCII");
+            byte[] encoded = s.getBytes(encoding);
+            if(encoded.length != ascii.length){
+                return false;
+            }
+            for(int i = 0; i < ascii.length; i++){
+                if(encoded[i] != ascii[i]){
+                    return false;
+                }
+            }
+            return true;
+        }catch(UnsupportedEncodingException e){
+            return false;
+        }
+    }
+
+    private void drain() throws IOException {
+        if(pos == 0){
+            return;
+        }
+        if(writer == null){
+            os.write(buf, 0, pos);
+        }else{
+            if(chars == null){
+                chars = new char[BUFFER_SIZE];
+            }
+            for(int i = 0; i < pos; i++){
+                chars[i] = (char)buf[i];
+            }
+            writer.write(chars, 0, pos);
+        }
+        pos = 0;
+    }
+
+    /**
+     * Writes everything buffered so far and flushes the stream.
+     */
+    void flush() throws IOException {
+        drain();
+        if(writer != null){
+            writer.flush();
+        }
+        os.flush();
+    }
+
+    void writeByte(int b) throws IOException {
+        if(pos == buf.length){
+            drain();
+        }
+        buf[pos++] = (byte)b;
+    }
+
+    /**
+     * Writes a string that is known to only contain ASCII characters.
+     * @param s The string to write
+     */
+    void writeAscii(String s) throws IOException {
+        int len = s.length();
+        int i = 0;
+        while(i < len){
+            if(pos == buf.length){
+                drain();
+            }
+            int n = Math.min(len - i, buf.length - pos);
+            for(int j = 0; j < n; j++){
+                buf[pos++] = (byte)s.charAt(i++);
+            }
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped JSON string.
+     * @param s The string to write
+     */
+    void writeString(String s) throws IOException {
+        writeByte('\"');
+        int len = s.length();
+        byte[] b = buf;
+        for(int i = 0; i < len; i++){
+            if(pos + 6 > b.length){
+                drain();
+            }
+            char c = s.charAt(i);
+            if(c >= 32 && c < 127){
+                if(c == '\"' || c == '\\'){
+                    b[pos++] = '\\';
+                }
+                b[pos++] = (byte)c;
+            }else if(c == '\n'){
+                b[pos++] = '\\';
+                b[pos++] = 'n';
+            }else if(c == '\r'){
+                b[pos++] = '\\';
+                b[pos++] = 'r';
+            }else if(c == '\t'){
+                b[pos++] = '\\';
+                b[pos++] = 't';
+            }else if(c == '\b'){
+                b[pos++] = '\\';
+                b[pos++] = 'b';
+            }else if(c == '\f'){
+                b[pos++] = '\\';
+                b[pos++] = 'f';
+            }else{
+                b[pos++] = '\\';
+                b[pos++] = 'u';
+                b[pos++] = HEX[(c >> 12) & 0xF];
+                b[pos++] = HEX[(c >> 8) & 0xF];
+                b[pos++] = HEX[(c >> 4) & 0xF];
+                b[pos++] = HEX[c & 0xF];
+            }
+        }
+        writeByte('\"');
+    }
+
+    /**
+     * Writes a number. Integer types and doubles are written straight into the buffer, see {@link NumberWriter}.
+     * Anything else, including lazily parsed numbers, is written as its string form.
+     * @param n The number to write
+     */
+    void writeNumber(Number n) throws IOException {
+        if(pos + NumberWriter.MAX_LENGTH > buf.length){
+            drain();
+        }
+        int end = NumberWriter.writeNumber(n, buf, pos);
+        if(end < 0){
+            writeAscii(String.valueOf(n));
+        }else{
+            pos = end;
+        }
+    }
+
+    void writeLong(long l) throws IOException {
+        if(pos + NumberWriter.MAX_LENGTH > buf.length){
+            drain();
+        }
+        pos = NumberWriter.writeLong(l, buf, pos);
+    }
+
+    /**
+     * Writes a double in the shortest form that parses back to the same value, without a fraction if it is integral.
+     * @param d The double to write
+     */
+    void writeDouble(double d) throws IOException {
+        if(pos + NumberWriter.MAX_LENGTH > buf.length){
+            drain();
+        }
+        pos = NumberWriter.writeDouble(d, buf, pos);
+    }
+
+    void writeBoolean(boolean b) throws IOException {
+        writeAscii(b ? "true" : "false");
+    }
+}
@@ -0,0 +1,251 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.util.Map;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * An SValueWriter that writes compact json through a {@link JsonOutput}.
+ * <p>
+ * The output is byte for byte the same as {@link JsonFormat#emit(SValue, java.io.OutputStream)} and {@link FastJsonFormat#emit(SValue, java.io.OutputStream)}.
+ * </p>
+ */
+final class JsonValueWriter implements SValueWriter {
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_LIST = 2;
+    private static final int NONEMPTY_LIST = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private JsonOutput out;
+    private int[] stack = new int[32];
+    private int depth = 1;
+
+    JsonValueWriter(JsonOutput out){
+        this.out = out;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    private void push(int scope){
+        if(depth == stack.length){
+            int[] bigger = new int[depth * 2];
+            System.arraycopy(stack, 0, bigger, 0, depth);
+            stack = bigger;
+        }
+        stack[depth++] = scope;
+    }
+
+    private JsonOutput beforeValue() throws FormatException, IOException {
+        if(out == null){
+            throw new FormatException("Writer is closed");
+        }
+        switch(stack[depth - 1]){
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_LIST:
+                stack[depth - 1] = NONEMPTY_LIST;
+                break;
+            case NONEMPTY_LIST:
+                out.writeByte(',');
+                break;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new FormatException("A document can only have one top level value");
+            default:
+                throw new FormatException("Expected a name before the value");
+        }
+        return out;
+    }
+
+    private void close(int scope, int nonempty, int bracket) throws FormatException {
+        if(out == null){
+            throw new FormatException("Writer is closed");
+        }
+        int current = stack[depth - 1];
+        if(current != scope && current != nonempty){
+            throw new FormatException("Nesting problem closing with " + (char)bracket);
+        }
+        depth--;
+        try{
+            out.writeByte(bracket);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void beginObject() throws FormatException {
+        try{
+            beforeValue().writeByte('{');
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws FormatException {
+        close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    public void beginList() throws FormatException {
+        try{
+            beforeValue().writeByte('[');
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+        push(EMPTY_LIST);
+    }
+
+    public void endList() throws FormatException {
+        close(EMPTY_LIST, NONEMPTY_LIST, ']');
+    }
+
+    public void name(String name) throws FormatException {
+        int scope = stack[depth - 1];
+        if(out == null){
+            throw new FormatException("Writer is closed");
+        }
+        if(scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT){
+            throw new FormatException("Names can only be written inside an object");
+        }
+        try{
+            if(scope == NONEMPTY_OBJECT){
+                out.writeByte(',');
+            }
+            out.writeString(name);
+            out.writeByte(':');
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+        stack[depth - 1] = DANGLING_NAME;
+    }
+
+    public void value(String s) throws FormatException {
+        if(s == null){
+            nullValue();
+            return;
+        }
+        try{
+            beforeValue().writeString(s);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void value(Number n) throws FormatException {
+        if(n == null){
+            nullValue();
+            return;
+        }
+        try{
+            beforeValue().writeNumber(n);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void value(long l) throws FormatException {
+        try{
+            beforeValue().writeLong(l);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void value(double d) throws FormatException {
+        try{
+            beforeValue().writeDouble(d);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void value(boolean b) throws FormatException {
+        try{
+            beforeValue().writeBoolean(b);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void nullValue() throws FormatException {
+        try{
+            beforeValue().writeAscii("null");
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void value(SValue sv) throws FormatException {
+        if(sv instanceof SString){
+            value(((SString)sv).value);
+        }else if(sv instanceof SNumber){
+            value(((SNumber)sv).value);
+        }else if(sv instanceof SBool){
+            value(((SBool)sv).value);
+        }else if(sv instanceof SNull){
+            nullValue();
+        }else if(sv instanceof SList){
+            beginList();
+            for(SValue element : ((SList)sv).value){
+                value(element);
+            }
+            endList();
+        }else if(sv instanceof SObject){
+            beginObject();
+            for(Map.Entry<String, SValue> entry : ((SObject)sv).value.entrySet()){
+                name(entry.getKey());
+                value(entry.getValue());
+            }
+            endObject();
+        }else{
+            throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+        }
+    }
+
+    public void flush() throws FormatException {
+        if(out == null){
+            throw new FormatException("Writer is closed");
+        }
+        try{
+            out.flush();
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    /**
+     * Flushes the writer and releases its buffers.
+     * If an object or list is still open the writer is aborted instead, so a truncated document is never written.
+     */
+    public void close() throws FormatException {
+        if(out == null){
+            return;
+        }
+        if(depth > 1){
+            abort();
+            throw new FormatException("Writer closed with " + (depth - 1) + " objects or lists still open");
+        }
+        try{
+            out.flush();
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }finally{
+            out.close();
+            out = null;
+        }
+    }
+
+    public void abort() {
+        if(out == null){
+            return;
+        }
+        out.close();
+        out = null;
+    }
+}
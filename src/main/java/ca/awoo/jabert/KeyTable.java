@@ -0,0 +1,102 @@
+package ca.awoo.jabert;
+
+/**
+ * A small, bounded table of the object keys a parser has seen recently.
+ * <p>
+ * Messages of the same kind repeat the same few keys over and over. When a key is already in the table the parser gets the existing String back
+ * instead of allocating a new one, and since that String has already been hashed, looking it up in the SObject afterwards does not hash it again.
+ * </p>
+ * <p>
+ * Each slot holds one key and a new key simply replaces whatever was in its slot, so the table never grows past its size.
+ * Keys longer than {@link #MAX_KEY_LENGTH} are not kept.
+ * Reading and replacing slots from several threads at once is harmless, since Strings are immutable; at worst a key is allocated again.
+ * </p>
+ */
+final class KeyTable {
+    static final int MAX_KEY_LENGTH = 64;
+    private static final int SIZE = 1024;
+
+    private final String[] table = new String[SIZE];
+
+    /**
+     * Hashes characters the same way as {@link String#hashCode()}.
+     */
+    static int hash(char[] cs, int off, int len){
+        int h = 0;
+        for(int i = off; i < off + len; i++){
+            h = 31 * h + cs[i];
+        }
+        return h;
+    }
+
+    /**
+     * Gets the canonical String for some characters.
+     * @param cs The characters
+     * @param off The first character
+     * @param len The number of characters
+     * @param hash The hash of the characters, as given by {@link #hash(char[], int, int)}
+     * @return The String from the table if it has the same characters, otherwise a new String
+     */
+    String intern(char[] cs, int off, int len, int hash){
+        if(len > MAX_KEY_LENGTH){
+            return new String(cs, off, len);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String s = table[slot];
+        if(s != null && s.length() == len && s.hashCode() == hash){
+            int i = 0;
+            while(i < len && s.charAt(i) == cs[off + i]){
+                i++;
+            }
+            if(i == len){
+                return s;
+            }
+        }
+        s = new String(cs, off, len);
+        table[slot] = s;
+        return s;
+    }
+
+    /**
+     * Gets the canonical String for the contents of a StringBuilder.
+     * @param sb The characters
+     * @return The String from the table if it has the same characters, otherwise a new String
+     */
+    String intern(StringBuilder sb){
+        int len = sb.length();
+        if(len > MAX_KEY_LENGTH){
+            return sb.toString();
+        }
+        int h = 0;
+        for(int i = 0; i < len; i++){
+            h = 31 * h + sb.charAt(i);
+        }
+        int slot = (h ^ (h >>> 16)) & (SIZE - 1);
+        String s = table[slot];
+        if(s != null && s.length() == len && s.hashCode() == h && s.contentEquals(sb)){
+            return s;
+        }
+        s = sb.toString();
+        table[slot] = s;
+        return s;
+    }
+
+    /**
+     * Gets the canonical String for a key that has already been built, so equal keys from many documents share one instance.
+     * @param key The key
+     * @return The String from the table if it is equal, otherwise the key itself
+     */
+    String intern(String key){
+        if(key.length() > MAX_KEY_LENGTH){
+            return key;
+        }
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & (SIZE - 1);
+        String s = table[slot];
+        if(key.equals(s)){
+            return s;
+        }
+        table[slot] = key;
+        return key;
+    }
+}
@@ -0,0 +1,196 @@
+package ca.awoo.jabert;
+
+import java.math.BigDecimal;
+
+/**
+ * A parsed number that keeps its original digits and only converts them when asked to.
+ * <p>
+ * Integers that fit in a long are accumulated while parsing and never go through floating point, so ids and timestamps above 2^53 keep every digit.
+ * Anything else is kept as text until {@link #doubleValue()} or {@link #bigDecimalValue()} is called, and the result is cached.
+ * {@link #toString()} gives back the digits as they were parsed, so a number is emitted again exactly as it was read.
+ * </p>
+ * <p>
+ * The narrowing conversions behave like those of {@link Double}, except that {@link #longValue()} is exact for integers that fit in a long.
+ * </p>
+ */
+public final class LazyNumber extends Number {
+    private static final long serialVersionUID = 1L;
+
+    private String raw;
+    private final boolean isLong;
+    private final long longValue;
+    private transient volatile boolean hasDouble;
+    private transient volatile double doubleValue;
+    private transient volatile BigDecimal decimal;
+
+    /**
+     * Creates a number from an integer.
+     * @param value The value
+     */
+    public LazyNumber(long value) {
+        this.raw = null;
+        this.isLong = true;
+        this.longValue = value;
+    }
+
+    /**
+     * Creates a number from its text, which must follow the JSON grammar {@code -?(0|[1-9]digits)(.digits)?([eE][+-]?digits)?}.
+     * Only the syntax is checked here, integers that fit in a long are converted right away.
+     * Leading zeros and bare decimal points are rejected, so the text can always be written back out as JSON.
+     * @param raw The text of the number
+     * @throws NumberFormatException If the text is not a number
+     */
+    public LazyNumber(String raw) throws NumberFormatException {
+        int len = raw.length();
+        int i = 0;
+        boolean negative = len > 0 && raw.charAt(0) == '-';
+        if(negative){
+            i++;
+        }
+        long acc = 0;
+        boolean overflow = false;
+        int digits = 0;
+        while(i < len){
+            int d = raw.charAt(i) - '0';
+            if(d < 0 || d > 9){
+                break;
+            }
+            if(acc < (Long.MIN_VALUE + d) / 10){
+                overflow = true;
+            }
+            acc = acc * 10 - d;
+            digits++;
+            i++;
+        }
+        if(digits == 0 || (digits > 1 && raw.charAt(negative ? 1 : 0) == '0')){
+            throw new NumberFormatException("Invalid number: " + raw);
+        }
+        boolean integral = true;
+        if(i < len && raw.charAt(i) == '.'){
+            integral = false;
+            i++;
+            int fractionDigits = 0;
+            while(i < len && raw.charAt(i) >= '0' && raw.charAt(i) <= '9'){
+                fractionDigits++;
+                i++;
+            }
+            if(fractionDigits == 0){
+                throw new NumberFormatException("Invalid number: " + raw);
+            }
+        }
+        if(i < len && (raw.charAt(i) == 'e' || raw.charAt(i) == 'E')){
+            integral = false;
+            i++;
+            if(i < len && (raw.charAt(i) == '+' || raw.charAt(i) == '-')){
+                i++;
+            }
+            int exponentDigits = 0;
+            while(i < len && raw.charAt(i) >= '0' && raw.charAt(i) <= '9'){
+                exponentDigits++;
+                i++;
+            }
+            if(exponentDigits == 0){
+                throw new NumberFormatException("Invalid number: " + raw);
+            }
+        }
+        if(i != len){
+            throw new NumberFormatException("Invalid number: " + raw);
+        }
+        this.raw = raw;
+        //-0 is left to doubleValue so it stays negative zero
+        this.isLong = integral && !overflow && !(negative && acc == 0) && (negative || acc != Long.MIN_VALUE);
+        this.longValue = negative ? acc : -acc;
+    }
+
+    /**
+     * @return true if this is an integer that fits in a long, in which case {@link #longValue()} is exact
+     */
+    public boolean isLong() {
+        return isLong;
+    }
+
+    @Override
+    public int intValue() {
+        if(isLong && longValue == (int)longValue){
+            return (int)longValue;
+        }
+        return (int)doubleValue();
+    }
+
+    @Override
+    public long longValue() {
+        if(isLong){
+            return longValue;
+        }
+        return (long)doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        if(isLong){
+            return (float)longValue;
+        }
+        return Float.parseFloat(raw);
+    }
+
+    @Override
+    public double doubleValue() {
+        if(isLong){
+            return (double)longValue;
+        }
+        if(!hasDouble){
+            doubleValue = Double.parseDouble(raw);
+            hasDouble = true;
+        }
+        return doubleValue;
+    }
+
+    /**
+     * @return The exact value of the number
+     */
+    public BigDecimal bigDecimalValue() {
+        BigDecimal d = decimal;
+        if(d == null){
+            d = isLong ? BigDecimal.valueOf(longValue) : new BigDecimal(raw);
+            decimal = d;
+        }
+        return d;
+    }
+
+    /**
+     * @return The number as it was parsed
+     */
+    @Override
+    public String toString() {
+        String s = raw;
+        if(s == null){
+            s = Long.toString(longValue);
+            raw = s;
+        }
+        return s;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(doubleValue());
+        return (int)(bits ^ (bits >>> 32));
+    }
+
+    /**
+     * Two lazy numbers are equal if they have the same value, regardless of how they were written.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj){
+            return true;
+        }
+        if(!(obj instanceof LazyNumber)){
+            return false;
+        }
+        LazyNumber other = (LazyNumber)obj;
+        if(isLong && other.isLong){
+            return longValue == other.longValue;
+        }
+        return doubleValue() == other.doubleValue();
+    }
+}
@@ -0,0 +1,305 @@
+package ca.awoo.jabert;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Writes numbers as ASCII straight into a byte buffer.
+ * <p>
+ * Doubles are written in the shortest form that parses back to the same value, using the Schubfach algorithm by Raffaello Giulietti.
+ * Integral values are written without a fraction, so {@code 42.0} is written as {@code 42}.
+ * Values from 1e-6 up to 1e21 are written in plain notation and anything else with an exponent, like {@code 1.5e-7}.
+ * </p>
+ */
+final class NumberWriter {
+    /**
+     * The most bytes a single number can take.
+     */
+    static final int MAX_LENGTH = 32;
+
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes();
+
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long C_TINY = 3;
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+
+    private NumberWriter(){}
+
+    /**
+     * Writes a number if it is one of the types that can be written without going through a String.
+     * Integer types and doubles are written as with {@link #writeLong(long, byte[], int)} and {@link #writeDouble(double, byte[], int)},
+     * and integral floats as a long.
+     * @return The position after the last byte written, or -1 if nothing was written and the number should be written as {@link String#valueOf(Object)}
+     */
+    static int writeNumber(Number n, byte[] buf, int pos){
+        if(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte){
+            return writeLong(n.longValue(), buf, pos);
+        }else if(n instanceof Double){
+            return writeDouble(n.doubleValue(), buf, pos);
+        }else if(n instanceof Float){
+            float f = n.floatValue();
+            if(f == (long)f && Math.abs(f) < 1e15f){
+                return writeLong((long)f, buf, pos);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a long.
+     * @return The position after the last byte written
+     */
+    static int writeLong(long v, byte[] buf, int pos){
+        if(v == Long.MIN_VALUE){
+            System.arraycopy(MIN_LONG, 0, buf, pos, MIN_LONG.length);
+            return pos + MIN_LONG.length;
+        }
+        if(v < 0){
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int end = pos + digits(v);
+        int p = end;
+        while(v >= 10){
+            long q = v / 10;
+            buf[--p] = (byte)('0' + (v - q * 10));
+            v = q;
+        }
+        buf[--p] = (byte)('0' + v);
+        return end;
+    }
+
+    private static int digits(long v){
+        int n = 1;
+        long limit = 10;
+        while(n < 19 && v >= limit){
+            n++;
+            limit *= 10;
+        }
+        return n;
+    }
+
+    /**
+     * Writes a double. NaN and the infinities are written the same way as {@link Double#toString(double)}.
+     * @return The position after the last byte written
+     */
+    static int writeDouble(double v, byte[] buf, int pos){
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & (C_MIN - 1);
+        int bq = (int)(bits >>> (P - 1)) & 0x7FF;
+        if(bq == 0x7FF){
+            return writeAscii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", buf, pos);
+        }
+        if(bits < 0){
+            buf[pos++] = '-';
+        }
+        if(bq != 0){
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if(0 < mq && mq < P){
+                long f = c >> mq;
+                if(f << mq == c){
+                    return writeLong(f, buf, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, buf, pos);
+        }
+        if(t != 0){
+            int end = t < C_TINY ? toDecimal(Q_MIN, 10 * t, -1, buf, pos) : toDecimal(Q_MIN, t, 0, buf, pos);
+            return shortenSubnormal(Math.abs(v), buf, pos, end);
+        }
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    private static int writeAscii(String s, byte[] buf, int pos){
+        for(int i = 0; i < s.length(); i++){
+            buf[pos++] = (byte)s.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * Schubfach never gives fewer than two digits, but the smallest subnormals have so little precision that one digit can be enough.
+     * Those are rare, so they are simply checked with BigDecimal.
+     */
+    private static int shortenSubnormal(double v, byte[] buf, int start, int end){
+        char[] chars = new char[end - start];
+        for(int i = 0; i < chars.length; i++){
+            chars[i] = (char)buf[start + i];
+        }
+        BigDecimal bd = new BigDecimal(chars).stripTrailingZeros();
+        if(bd.precision() != 2){
+            return end;
+        }
+        //The nearest digit is preferred when more than one would do
+        RoundingMode[] modes = { RoundingMode.HALF_EVEN, RoundingMode.FLOOR, RoundingMode.CEILING };
+        BigDecimal shorter = null;
+        for(RoundingMode mode : modes){
+            BigDecimal candidate = bd.round(new MathContext(1, mode));
+            if(candidate.doubleValue() == v){
+                shorter = candidate;
+                break;
+            }
+        }
+        if(shorter == null){
+            return end;
+        }
+        bd = shorter;
+        return toChars(bd.unscaledValue().longValue(), -bd.scale(), buf, start);
+    }
+
+    /**
+     * Finds the shortest decimal in the rounding interval of c 2^q, see section 9 of "The Schubfach way to render doubles".
+     */
+    private static int toDecimal(int q, long c, int dk, byte[] buf, int pos){
+        int out = (int)c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if(c != C_MIN || q == Q_MIN){
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        }else{
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long[] g = Powers.G;
+        long g1 = g[(k - K_MIN) << 1];
+        long g0 = g[((k - K_MIN) << 1) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if(s >= 100){
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if(upin != wpin){
+                return toChars(upin ? sp10 : tp10, k, buf, pos);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if(uin != win){
+            return toChars(uin ? s : t, k + dk, buf, pos);
+        }
+        long cmp = vb - ((s + t) << 1);
+        return toChars(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, buf, pos);
+    }
+
+    /**
+     * Writes f 10^e, choosing between plain and exponent notation.
+     */
+    private static int toChars(long f, int e, byte[] buf, int pos){
+        while(f % 10 == 0){
+            f /= 10;
+            e++;
+        }
+        int len = digits(f);
+        //The decimal point goes after the first n digits
+        int n = len + e;
+        if(e >= 0 && n <= 21){
+            pos = writeLong(f, buf, pos);
+            for(int i = 0; i < e; i++){
+                buf[pos++] = '0';
+            }
+            return pos;
+        }
+        if(n > 0 && n <= 21){
+            int end = writeLong(f, buf, pos + 1);
+            System.arraycopy(buf, pos + 1, buf, pos, n);
+            buf[pos + n] = '.';
+            return end;
+        }
+        if(n > -6 && n <= 0){
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for(int i = n; i < 0; i++){
+                buf[pos++] = '0';
+            }
+            return writeLong(f, buf, pos);
+        }
+        int end = writeLong(f, buf, pos + 1);
+        buf[pos] = buf[pos + 1];
+        if(len > 1){
+            buf[pos + 1] = '.';
+        }else{
+            end--;
+        }
+        buf[end++] = 'e';
+        return writeLong(n - 1, buf, end);
+    }
+
+    private static int flog10pow2(int q){
+        return (int)(q * 661971961083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int q){
+        return (int)(q * 661971961083L + -274743187321L >> 41);
+    }
+
+    private static int flog2pow10(int e){
+        return (int)(e * 913124641741L >> 38);
+    }
+
+    private static long rop(long g1, long g0, long cp){
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static long multiplyHigh(long x, long y){
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * The 126 bit approximations of the powers of ten used by {@link #toDecimal(int, long, int, byte[], int)}, computed the first time a double is written.
+     * <p>
+     * For each k, 10^-k = b 2^r with 2^125 &lt;= b &lt; 2^126, and g = floor(b) + 1 is stored as its upper and lower 63 bits.
+     * </p>
+     */
+    private static final class Powers {
+        static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+        static {
+            BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+            for(int k = K_MIN; k <= K_MAX; k++){
+                int e = -k;
+                int r = flog2pow10(e) - 125;
+                BigInteger g;
+                if(e >= 0){
+                    BigInteger pow = BigInteger.TEN.pow(e);
+                    g = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+                }else{
+                    g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e));
+                }
+                g = g.add(BigInteger.ONE);
+                G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+                G[((k - K_MIN) << 1) + 1] = g.and(mask).longValue();
+            }
+        }
+    }
+}
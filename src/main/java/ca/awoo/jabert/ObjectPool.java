@@ -0,0 +1,31 @@
+package ca.awoo.jabert;
+
+/**
+ * A source of objects for serializers to deserialize into, so objects that are read often and kept briefly can be reused instead of allocated.
+ * <p>
+ * Serializers given a pool acquire the objects they read from it, and release the elements of collections they clear when reading in place
+ * if they would acquire objects of that class and nothing else in the object being read still refers to them.
+ * An object that has been released may be handed out and overwritten again, so it must not be used after it has been released.
+ * Pools are shared by every thread using the serializer, so they must be thread safe.
+ * </p>
+ * @see ThreadLocalObjectPool
+ * @see InPlaceDeserializer
+ */
+public interface ObjectPool {
+    /**
+     * Gets an object of the given class, either one that was released or a new one.
+     * <p>
+     * A released object keeps the values of its fields, the serializer overwrites them.
+     * </p>
+     * @param clazz The class of the object
+     * @return The object
+     * @throws SerializationException If a new object could not be created
+     */
+    public Object acquire(Class<?> clazz) throws SerializationException;
+
+    /**
+     * Gives an object back to the pool, which may hand it out again or drop it.
+     * @param o The object, which the caller must not use again
+     */
+    public void release(Object o);
+}
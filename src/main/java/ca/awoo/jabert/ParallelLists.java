@@ -0,0 +1,116 @@
+package ca.awoo.jabert;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Serializes the elements of large arrays and collections on an executor, used by the serializers that have parallel mode turned on.
+ * <p>
+ * The elements are cut into a few chunks per processor. Each chunk is serialized by its own task and the results are joined in order,
+ * so the output is the same as serializing the elements one after another.
+ * Elements serialized by a task never split again, since a task waiting on other tasks in the same pool can starve it.
+ * </p>
+ */
+final class ParallelLists {
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private static final ThreadLocal<Boolean> inTask = new ThreadLocal<Boolean>();
+
+    private ParallelLists(){}
+
+    /**
+     * Checks if a list of elements should be serialized in parallel.
+     * @param executor The executor, or null if parallel mode is off
+     * @param threshold The fewest elements to split
+     * @param size The number of elements
+     * @return true if the list should be passed to {@link #serialize(Serializer, Object[], ExecutorService)}
+     */
+    static boolean shouldSplit(ExecutorService executor, int threshold, int size){
+        return executor != null && size >= threshold && size >= 2 * MIN_CHUNK_SIZE && inTask.get() == null;
+    }
+
+    /**
+     * Gets the elements of an array as objects, boxing primitives.
+     */
+    static Object[] elements(Object array){
+        if(array instanceof Object[]){
+            return (Object[])array;
+        }
+        int length = Array.getLength(array);
+        Object[] elements = new Object[length];
+        for(int i = 0; i < length; i++){
+            elements[i] = Array.get(array, i);
+        }
+        return elements;
+    }
+
+    /**
+     * Serializes every element, the last chunk on the calling thread and the others on the executor.
+     * @return The serialized elements, in order
+     */
+    static List<SValue> serialize(Serializer serializer, Object[] elements, ExecutorService executor) throws SerializationException {
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (elements.length + chunks - 1) / chunks);
+        List<Future<List<SValue>>> futures = new ArrayList<Future<List<SValue>>>();
+        int start = 0;
+        try{
+            for(; start + chunkSize < elements.length; start += chunkSize){
+                futures.add(executor.submit(new ChunkTask(serializer, elements, start, start + chunkSize)));
+            }
+            List<SValue> last = new ChunkTask(serializer, elements, start, elements.length).call();
+            List<SValue> values = new ArrayList<SValue>(elements.length);
+            for(Future<List<SValue>> future : futures){
+                values.addAll(future.get());
+            }
+            values.addAll(last);
+            return values;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SerializationException("Interrupted while serializing", e);
+        }catch(ExecutionException e){
+            if(e.getCause() instanceof SerializationException){
+                throw (SerializationException)e.getCause();
+            }
+            throw new SerializationException("Failed to serialize elements", e.getCause());
+        }finally{
+            for(Future<List<SValue>> future : futures){
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static final class ChunkTask implements Callable<List<SValue>> {
+        private final Serializer serializer;
+        private final Object[] elements;
+        private final int start;
+        private final int end;
+
+        ChunkTask(Serializer serializer, Object[] elements, int start, int end){
+            this.serializer = serializer;
+            this.elements = elements;
+            this.start = start;
+            this.end = end;
+        }
+
+        public List<SValue> call() throws SerializationException {
+            Boolean outer = inTask.get();
+            inTask.set(Boolean.TRUE);
+            try{
+                List<SValue> values = new ArrayList<SValue>(end - start);
+                for(int i = start; i < end; i++){
+                    values.add(serializer.serialize(elements[i]));
+                }
+                return values;
+            }finally{
+                if(outer == null){
+                    inTask.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package ca.awoo.jabert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * Parses large UTF-8 JSON inputs made of many records on several threads.
+ * <p>
+ * The input is either newline delimited JSON, one record per line, or a single top-level array whose elements are the records.
+ * It is cut into chunks of about {@link #DEFAULT_CHUNK_SIZE} bytes at record boundaries, the chunks are parsed on the executor,
+ * and the records come back in their original order, either as one SList or one at a time to a {@link RecordHandler}.
+ * Inputs are ByteBuffers, so a file can be memory mapped with {@link java.nio.channels.FileChannel#map} and parsed without reading it first.
+ * </p>
+ * <p>
+ * Newline delimited input is cut by looking for a newline near each chunk size, so cutting takes no time at all.
+ * An array has to be scanned from the start to know which commas are outside of strings and nested values.
+ * That scan runs on the calling thread while the chunks found so far are already being parsed, and is many times faster than parsing,
+ * but it does limit how far arrays scale compared to newline delimited input.
+ * </p>
+ * <p>
+ * Only a few chunks per thread are parsed ahead of the handler, so streaming a huge input does not hold all of its records in memory.
+ * </p>
+ */
+public class ParallelParser {
+    /**
+     * The size of the chunks parsed by each task unless another size is given, 1MiB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final FastJsonFormat format = new FastJsonFormat("UTF-8");
+
+    /**
+     * Receives records in order as they are parsed.
+     */
+    public interface RecordHandler {
+        /**
+         * Handles the next record. This is always called from the thread that started parsing.
+         * @param record The record
+         */
+        public void record(SValue record) throws FormatException;
+    }
+
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int window;
+
+    /**
+     * Creates a parser using chunks of {@link #DEFAULT_CHUNK_SIZE}.
+     * @param executor The executor to parse the chunks on
+     */
+    public ParallelParser(ExecutorService executor) {
+        this(executor, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a parser.
+     * @param executor The executor to parse the chunks on
+     * @param chunkSize The number of bytes each task parses, the last record of a chunk may go past it
+     */
+    public ParallelParser(ExecutorService executor, int chunkSize) {
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.window = Math.max(4, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Parses newline delimited JSON.
+     * @param buffer The input, from its position to its limit. The position is moved to the limit
+     * @return The records, in order
+     */
+    public SList parseLines(ByteBuffer buffer) throws FormatException {
+        final SList list = new SList();
+        parseLines(buffer, new RecordHandler() {
+            public void record(SValue record) {
+                list.value.add(record);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Parses newline delimited JSON, handing each record to the handler in order.
+     * @param buffer The input, from its position to its limit. The position is moved to the limit
+     * @param handler The handler for the records
+     */
+    public void parseLines(ByteBuffer buffer, RecordHandler handler) throws FormatException {
+        parse(buffer, new LineSplitter(buffer, chunkSize), handler);
+    }
+
+    /**
+     * Parses a top-level JSON array.
+     * @param buffer The input, from its position to its limit. The position is moved to the limit
+     * @return The elements of the array, in order
+     */
+    public SList parseArray(ByteBuffer buffer) throws FormatException {
+        final SList list = new SList();
+        parseArray(buffer, new RecordHandler() {
+            public void record(SValue record) {
+                list.value.add(record);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Parses a top-level JSON array, handing each element to the handler in order.
+     * @param buffer The input, from its position to its limit. The position is moved to the limit
+     * @param handler The handler for the elements
+     */
+    public void parseArray(ByteBuffer buffer, RecordHandler handler) throws FormatException {
+        parse(buffer, new ArraySplitter(buffer, chunkSize), handler);
+    }
+
+    private void parse(ByteBuffer buffer, Splitter splitter, RecordHandler handler) throws FormatException {
+        LinkedList<Future<List<SValue>>> pending = new LinkedList<Future<List<SValue>>>();
+        try{
+            while(true){
+                while(pending.size() < window && splitter.next()){
+                    pending.add(executor.submit(new ChunkTask(buffer, splitter.start, splitter.end, splitter.array, splitter.mayBeEmpty)));
+                }
+                if(pending.isEmpty()){
+                    break;
+                }
+                List<SValue> records = pending.removeFirst().get();
+                for(SValue record : records){
+                    handler.record(record);
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new FormatException("Interrupted while parsing", e);
+        }catch(ExecutionException e){
+            if(e.getCause() instanceof FormatException){
+                throw (FormatException)e.getCause();
+            }
+            throw new FormatException("Failed to parse chunk", e.getCause());
+        }finally{
+            for(Future<List<SValue>> future : pending){
+                future.cancel(false);
+            }
+        }
+        buffer.position(buffer.limit());
+    }
+
+    private static boolean isBlank(byte b){
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Finds the chunks of an input one after another. Each call to {@link #next()} sets start and end to the next chunk.
+     */
+    private static abstract class Splitter {
+        int start;
+        int end;
+        final boolean array;
+        boolean mayBeEmpty;
+
+        Splitter(boolean array){
+            this.array = array;
+        }
+
+        /**
+         * @return false if there are no more chunks
+         */
+        abstract boolean next() throws FormatException;
+    }
+
+    private static final class LineSplitter extends Splitter {
+        private final ByteBuffer buffer;
+        private final int chunkSize;
+        private int pos;
+
+        LineSplitter(ByteBuffer buffer, int chunkSize){
+            super(false);
+            this.buffer = buffer;
+            this.chunkSize = chunkSize;
+            this.pos = buffer.position();
+            this.mayBeEmpty = true;
+        }
+
+        boolean next(){
+            int limit = buffer.limit();
+            if(pos >= limit){
+                return false;
+            }
+            start = pos;
+            end = limit - pos > chunkSize ? pos + chunkSize : limit;
+            while(end < limit && buffer.get(end - 1) != '\n'){
+                end++;
+            }
+            pos = end;
+            return true;
+        }
+    }
+
+    /**
+     * Scans an array for commas that separate its elements, keeping track of nesting and strings.
+     */
+    private static final class ArraySplitter extends Splitter {
+        private final ByteBuffer buffer;
+        private final int chunkSize;
+        private int pos;
+        private boolean first = true;
+        private boolean finished;
+
+        ArraySplitter(ByteBuffer buffer, int chunkSize) throws FormatException {
+            super(true);
+            this.buffer = buffer;
+            this.chunkSize = chunkSize;
+            pos = buffer.position();
+            while(pos < buffer.limit() && isBlank(buffer.get(pos))){
+                pos++;
+            }
+            if(pos == buffer.limit() || buffer.get(pos) != '['){
+                throw new FormatException("Expected [ at offset " + pos);
+            }
+            pos++;
+        }
+
+        boolean next() throws FormatException {
+            if(finished){
+                return false;
+            }
+            ByteBuffer b = buffer;
+            int limit = b.limit();
+            start = pos;
+            int depth = 0;
+            boolean inString = false;
+            for(int i = pos; i < limit; i++){
+                byte c = b.get(i);
+                if(inString){
+                    if(c == '\\'){
+                        i++;
+                    }else if(c == '\"'){
+                        inString = false;
+                    }
+                }else if(c == '\"'){
+                    inString = true;
+                }else if(c == '{' || c == '['){
+                    depth++;
+                }else if(c == '}' || c == ']'){
+                    if(depth > 0){
+                        depth--;
+                    }else if(c == ']'){
+                        end = i;
+                        mayBeEmpty = first;
+                        finished = true;
+                        for(i++; i < limit; i++){
+                            if(!isBlank(b.get(i))){
+                                throw new FormatException("Unexpected character " + (char)(b.get(i) & 0xFF) + " after the array at offset " + i);
+                            }
+                        }
+                        return true;
+                    }else{
+                        throw new FormatException("Unexpected } at offset " + i);
+                    }
+                }else if(c == ',' && depth == 0 && i - start >= chunkSize){
+                    end = i;
+                    mayBeEmpty = false;
+                    first = false;
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            throw new FormatException("Input ended in the middle of the array");
+        }
+    }
+
+    /**
+     * Parses the records of one chunk.
+     */
+    private static final class ChunkTask implements Callable<List<SValue>> {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final boolean array;
+        private final boolean mayBeEmpty;
+
+        ChunkTask(ByteBuffer buffer, int start, int end, boolean array, boolean mayBeEmpty){
+            this.buffer = buffer.duplicate();
+            this.start = start;
+            this.end = end;
+            this.array = array;
+            this.mayBeEmpty = mayBeEmpty;
+        }
+
+        public List<SValue> call() throws FormatException {
+            ByteBuffer chunk = buffer;
+            chunk.limit(end);
+            chunk.position(start);
+            //Where position 0 of the chunk is in the input, for error messages
+            int base = 0;
+            if(!chunk.hasArray()){
+                //Parsing straight from a direct buffer goes through a stream for every record, one bulk copy is much cheaper
+                byte[] bytes = new byte[end - start];
+                chunk.get(bytes);
+                chunk = ByteBuffer.wrap(bytes);
+                base = start;
+            }
+            List<SValue> records = new ArrayList<SValue>();
+            skipBlank(chunk);
+            if(!chunk.hasRemaining()){
+                if(array && !mayBeEmpty){
+                    throw new FormatException("Expected a value after , at offset " + start);
+                }
+                return records;
+            }
+            while(true){
+                records.add(format.parse(chunk));
+                skipBlank(chunk);
+                if(!chunk.hasRemaining()){
+                    return records;
+                }
+                if(array){
+                    if(chunk.get() != ','){
+                        throw new FormatException("Expected , or ] between elements at offset " + (base + chunk.position() - 1));
+                    }
+                    skipBlank(chunk);
+                }
+            }
+        }
+
+        private static void skipBlank(ByteBuffer chunk){
+            while(chunk.hasRemaining() && isBlank(chunk.get(chunk.position()))){
+                chunk.position(chunk.position() + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ca.awoo.jabert;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * The paths asked for by {@link Format#extract(java.io.InputStream, String...)}, merged into a tree so each part of the input is visited once.
+ * <p>
+ * A path starts with {@code $} for the root value, followed by any number of {@code .name}, {@code ['name']} and {@code [index]} steps,
+ * for example {@code $.room.members[0]['display name']}. Names in the dot form can not contain dots or brackets.
+ * </p>
+ */
+final class PathTree {
+    /**
+     * The indexes of the results that are this node's value, or null if no path ends here.
+     */
+    int[] targets;
+    /**
+     * The children reached by a name, or null if there are none.
+     */
+    Map<String, PathTree> names;
+    /**
+     * The children reached by an index, or null if there are none.
+     */
+    Map<Integer, PathTree> indexes;
+
+    /**
+     * Builds the tree for some paths.
+     * @param paths The paths, whose results are in the same order
+     * @return The root of the tree
+     * @throws IllegalArgumentException If a path is not valid
+     */
+    static PathTree compile(String... paths){
+        PathTree root = new PathTree();
+        for(int i = 0; i < paths.length; i++){
+            root.add(paths[i], i);
+        }
+        return root;
+    }
+
+    private void add(String path, int target){
+        if(!path.startsWith("$")){
+            throw new IllegalArgumentException("Path must start with $: " + path);
+        }
+        PathTree node = this;
+        int i = 1;
+        while(i < path.length()){
+            char c = path.charAt(i);
+            if(c == '.'){
+                int end = i + 1;
+                while(end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '['){
+                    end++;
+                }
+                if(end == i + 1){
+                    throw new IllegalArgumentException("Empty name at " + i + " in path " + path);
+                }
+                node = node.name(path.substring(i + 1, end));
+                i = end;
+            }else if(c == '[' && i + 1 < path.length() && (path.charAt(i + 1) == '\'' || path.charAt(i + 1) == '\"')){
+                char quote = path.charAt(i + 1);
+                int end = path.indexOf(quote, i + 2);
+                if(end < 0 || end + 1 >= path.length() || path.charAt(end + 1) != ']'){
+                    throw new IllegalArgumentException("Unterminated name at " + i + " in path " + path);
+                }
+                node = node.name(path.substring(i + 2, end));
+                i = end + 2;
+            }else if(c == '['){
+                int end = path.indexOf(']', i);
+                int index;
+                try{
+                    index = end < 0 ? -1 : Integer.parseInt(path.substring(i + 1, end));
+                }catch(NumberFormatException e){
+                    index = -1;
+                }
+                if(index < 0){
+                    throw new IllegalArgumentException("Invalid index at " + i + " in path " + path);
+                }
+                node = node.index(index);
+                i = end + 1;
+            }else{
+                throw new IllegalArgumentException("Unexpected " + c + " at " + i + " in path " + path);
+            }
+            }
+        int[] targets = new int[node.targets == null ? 1 : node.targets.length + 1];
+        if(node.targets != null){
+            System.arraycopy(node.targets, 0, targets, 0, node.targets.length);
+        }
+        targets[targets.length - 1] = target;
+        node.targets = targets;
+    }
+
+    private PathTree name(String name){
+        if(names == null){
+            names = new HashMap<String, PathTree>();
+        }
+        PathTree child = names.get(name);
+        if(child == null){
+            child = new PathTree();
+            names.put(name, child);
+        }
+        return child;
+    }
+
+    private PathTree index(int index){
+        if(indexes == null){
+            indexes = new HashMap<Integer, PathTree>();
+        }
+        PathTree child = indexes.get(index);
+        if(child == null){
+            child = new PathTree();
+            indexes.put(index, child);
+        }
+        return child;
+    }
+
+    /**
+     * Fills in the results of this node and its children from a value that has already been parsed.
+     * @param sv The value at this node
+     * @param results The results to fill in
+     */
+    void fill(SValue sv, SValue[] results){
+        if(targets != null){
+            for(int target : targets){
+                results[target] = sv;
+            }
+        }
+        if(names != null && sv instanceof SObject){
+            Map<String, SValue> map = ((SObject)sv).value;
+            for(Map.Entry<String, PathTree> entry : names.entrySet()){
+                SValue child = map.get(entry.getKey());
+                if(child != null){
+                    entry.getValue().fill(child, results);
+                }
+            }
+        }
+        if(indexes != null && sv instanceof SList){
+            SList list = (SList)sv;
+            for(Map.Entry<Integer, PathTree> entry : indexes.entrySet()){
+                if(entry.getKey() < list.value.size()){
+                    entry.getValue().fill(list.value.get(entry.getKey()), results);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears the results of this node and its children, for when a value is found again and replaces the one before it.
+     * @param results The results to clear
+     */
+    void clear(SValue[] results){
+        if(targets != null){
+            for(int target : targets){
+                results[target] = null;
+            }
+        }
+        if(names != null){
+            for(PathTree child : names.values()){
+                child.clear(results);
+            }
+        }
+        if(indexes != null){
+            for(PathTree child : indexes.values()){
+                child.clear(results);
+            }
+        }
+    }
+}
@@ -2,7 +2,7 @@ package ca.awoo.jabert;
 
 import ca.awoo.jabert.SValue.*;
 
-public class PrimativeSerializer implements Serializer {
+public class PrimativeSerializer implements StreamingSerializer {
 
     public SValue serialize(Object t) throws SerializationException {
         if(t instanceof Long) {
@@ -28,6 +28,20 @@ public class PrimativeSerializer implements Serializer {
         }
     }
 
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(t instanceof Long || t instanceof Integer || t instanceof Short || t instanceof Byte || t instanceof Double || t instanceof Float) {
+            out.value((Number)t);
+        } else if(t instanceof Boolean){
+            out.value(((Boolean)t).booleanValue());
+        } else if(t instanceof Character){
+            out.value(t.toString());
+        } else if(t instanceof String){
+            out.value((String)t);
+        } else {
+            throw new SerializationException("Cannot serialize object of type " + t.getClass().getName());
+        }
+    }
+
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
         if(sv instanceof SNumber){
             SNumber sn = (SNumber) sv;
@@ -64,5 +78,42 @@ public class PrimativeSerializer implements Serializer {
             throw new SerializationException("PrimativeSerializer cannot deserialize object of type " + sv.getClass().getName() + " into type " + clazz.getName());
         }
     }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        SValueReader.Token token = in.peek();
+        if(token == SValueReader.Token.NUMBER){
+            if(clazz.equals(Long.class)){
+                return in.nextLong();
+            } else if(clazz.equals(Integer.class)){
+                return in.nextInt();
+            } else if(clazz.equals(Short.class)){
+                return in.nextNumber().shortValue();
+            } else if(clazz.equals(Byte.class)){
+                return in.nextNumber().byteValue();
+            } else if(clazz.equals(Double.class)){
+                return in.nextDouble();
+            } else if(clazz.equals(Float.class)){
+                return in.nextNumber().floatValue();
+            } else {
+                throw new SerializationException("Cannot deserialize number into type " + clazz.getName());
+            }
+        } else if(token == SValueReader.Token.BOOLEAN){
+            if(clazz.equals(Boolean.class)){
+                return in.nextBoolean();
+            } else {
+                throw new SerializationException("Cannot deserialize boolean into type " + clazz.getName());
+            }
+        } else if(token == SValueReader.Token.STRING){
+            if(clazz.equals(Character.class)){
+                return in.nextString().charAt(0);
+            } else if(clazz.equals(String.class)){
+                return in.nextString();
+            } else {
+                throw new SerializationException("Cannot deserialize string into type " + clazz.getName());
+            }
+        } else {
+            throw new SerializationException("PrimativeSerializer cannot deserialize " + token + " into type " + clazz.getName());
+        }
+    }
     
 }
@@ -0,0 +1,215 @@
+package ca.awoo.jabert;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.awoo.fwoabl.Optional;
+
+/**
+ * Everything {@link ReflectionSerializer} needs to know about the fields of a class, worked out once per class.
+ * <p>
+ * Getting the declared fields copies them every time, and their modifiers, annotations and generic types are no cheaper,
+ * so plans are cached for every serializer to share. The cache only holds its classes weakly, and the plans softly since they refer back to their class,
+ * so a class loader that is no longer used, such as that of an undeployed web application, can still be unloaded.
+ * </p>
+ */
+final class ReflectionPlan {
+    /**
+     * How a field is serialized.
+     */
+    enum Kind {
+        PLAIN, OPTIONAL, MAP, COLLECTION
+    }
+
+    /**
+     * A field that is serialized, with its kind and type arguments already resolved.
+     */
+    static final class FieldPlan {
+        final Field field;
+        final FieldAccessor accessor;
+        final String name;
+        final int index;
+        final Kind kind;
+        final boolean serializeAsNull;
+        /**
+         * The type inside an Optional, the value type of a Map or the element type of a Collection, or null if it could not be resolved.
+         */
+        final Class<?> elementType;
+        /**
+         * For maps, whether the keys are declared as Strings.
+         */
+        final boolean stringKeys;
+
+        private FieldPlan(Field field, int index){
+            this.field = field;
+            this.accessor = FieldAccessor.of(field);
+            this.name = field.getName();
+            this.index = index;
+            Class<?> type = field.getType();
+            Type[] arguments = field.getGenericType() instanceof ParameterizedType ? ((ParameterizedType)field.getGenericType()).getActualTypeArguments() : new Type[0];
+            if(Optional.class.isAssignableFrom(type)){
+                kind = Kind.OPTIONAL;
+                elementType = argument(arguments, 0);
+                stringKeys = false;
+            }else if(Map.class.isAssignableFrom(type)){
+                kind = Kind.MAP;
+                elementType = argument(arguments, 1);
+                stringKeys = argument(arguments, 0) == String.class;
+            }else if(Collection.class.isAssignableFrom(type)){
+                kind = Kind.COLLECTION;
+                elementType = argument(arguments, 0);
+                stringKeys = false;
+            }else{
+                kind = Kind.PLAIN;
+                elementType = null;
+                stringKeys = false;
+            }
+            this.serializeAsNull = field.getAnnotation(SerializeAsNull.class) != null;
+        }
+
+        private static Class<?> argument(Type[] arguments, int i){
+            if(i >= arguments.length){
+                return null;
+            }
+            Type argument = arguments[i];
+            if(argument instanceof ParameterizedType){
+                argument = ((ParameterizedType)argument).getRawType();
+            }
+            return argument instanceof Class ? (Class<?>)argument : null;
+        }
+
+        /**
+         * @return The element type
+         * @throws SerializationException If the field does not declare its element type
+         */
+        Class<?> elementType() throws SerializationException {
+            if(elementType == null){
+                throw new SerializationException("Could not tell the element type of field " + name);
+            }
+            return elementType;
+        }
+
+        /**
+         * Creates an empty map for this field, a HashMap if the field is declared as a Map.
+         */
+        @SuppressWarnings("unchecked")
+        Map<String, Object> newMap() throws InstantiationException, IllegalAccessException {
+            if(field.getType().equals(Map.class)){
+                return new HashMap<String, Object>();
+            }
+            return (Map<String, Object>)field.getType().newInstance();
+        }
+
+        /**
+         * Creates an empty collection for this field, an ArrayList for a Collection or List and a HashSet for a Set.
+         */
+        @SuppressWarnings("unchecked")
+        Collection<Object> newCollection() throws InstantiationException, IllegalAccessException {
+            Class<?> type = field.getType();
+            if(type.equals(Collection.class) || type.equals(List.class)){
+                return new ArrayList<Object>();
+            }else if(type.equals(Set.class)){
+                return new HashSet<Object>();
+            }
+            return (Collection<Object>)type.newInstance();
+        }
+    }
+
+    /**
+     * A weak reference to a class that compares by the identity of the class.
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> {
+        private final int hash;
+
+        ClassKey(Class<?> clazz, ReferenceQueue<Class<?>> queue){
+            super(clazz, queue);
+            this.hash = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(this == obj){
+                return true;
+            }
+            if(!(obj instanceof ClassKey)){
+                return false;
+            }
+            Class<?> clazz = get();
+            return clazz != null && clazz == ((ClassKey)obj).get();
+        }
+    }
+
+    private static final ConcurrentHashMap<ClassKey, SoftReference<ReflectionPlan>> cache = new ConcurrentHashMap<ClassKey, SoftReference<ReflectionPlan>>();
+    private static final ReferenceQueue<Class<?>> collected = new ReferenceQueue<Class<?>>();
+
+    /**
+     * The serialized fields in declaration order.
+     */
+    final FieldPlan[] fields;
+    /**
+     * The serialized fields by name.
+     */
+    final Map<String, FieldPlan> byName;
+
+    private ReflectionPlan(Class<?> clazz){
+        List<FieldPlan> fields = new ArrayList<FieldPlan>();
+        Map<String, FieldPlan> byName = new HashMap<String, FieldPlan>();
+        for(Field f : clazz.getDeclaredFields()){
+            if(f.isSynthetic() || Modifier.isTransient(f.getModifiers()) || Modifier.isStatic(f.getModifiers())) {
+                continue;
+            }
+            f.setAccessible(true);
+            FieldPlan plan = new FieldPlan(f, fields.size());
+            fields.add(plan);
+            byName.put(plan.name, plan);
+        }
+        this.fields = fields.toArray(new FieldPlan[fields.size()]);
+        this.byName = byName;
+    }
+
+    /**
+     * Gets the plan for a class, working it out if it is not cached.
+     * @param clazz The class
+     * @return The plan
+     */
+    static ReflectionPlan of(Class<?> clazz){
+        SoftReference<ReflectionPlan> ref = cache.get(new ClassKey(clazz, null));
+        ReflectionPlan plan = ref == null ? null : ref.get();
+        if(plan == null){
+            expunge();
+            //Two threads may both work out a plan, they are the same so either one will do
+            plan = new ReflectionPlan(clazz);
+            cache.put(new ClassKey(clazz, collected), new SoftReference<ReflectionPlan>(plan));
+        }
+        return plan;
+    }
+
+    /**
+     * Removes the entries of classes that have been collected.
+     */
+    private static void expunge(){
+        Reference<? extends Class<?>> key;
+        while((key = collected.poll()) != null){
+            cache.remove(key);
+        }
+    }
+}
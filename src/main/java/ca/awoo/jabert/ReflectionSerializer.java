@@ -1,13 +1,9 @@
 package ca.awoo.jabert;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import ca.awoo.fwoabl.Optional;
 import ca.awoo.fwoabl.OptionalNoneException;
@@ -19,15 +15,49 @@ import ca.awoo.jabert.SValue.*;
  * This serializer gets the fields of an object using reflection and serializes them into an SValue. It then deserializes the fields from an SValue using reflection.
  * </p>
  */
-public class ReflectionSerializer implements Serializer {
+public class ReflectionSerializer implements StreamingSerializer, InPlaceDeserializer {
     private final Serializer baseSerializer;
+    private final ExecutorService executor;
+    private final int parallelThreshold;
+    private final ObjectPool pool;
 
     /**
      * Creates a new ReflectionSerializer with the given base serializer.
      * @param baseSerializer The serializer to use to serialize the fields of an object. The base serializer will most likely be a compound serializer with this serializer as a part of it.
      */
     public ReflectionSerializer(Serializer baseSerializer) {
+        this(baseSerializer, null, 0);
+    }
+
+    /**
+     * Creates a new ReflectionSerializer that serializes the elements of large collection fields in parallel.
+     * <p>
+     * Collections with at least parallelThreshold elements are cut into chunks that are serialized on the executor and joined in order,
+     * so the output is the same as serializing them one at a time. The base serializer must be thread safe.
+     * </p>
+     * @param baseSerializer The serializer to use to serialize the fields of an object.
+     * @param executor The executor to serialize on, or null to always serialize on the calling thread.
+     * @param parallelThreshold The fewest elements a collection needs to be serialized in parallel.
+     */
+    public ReflectionSerializer(Serializer baseSerializer, ExecutorService executor, int parallelThreshold) {
+        this(baseSerializer, executor, parallelThreshold, null);
+    }
+
+    /**
+     * Creates a new ReflectionSerializer that acquires the objects it reads from a pool.
+     * <p>
+     * Objects acquired from the pool are read in place, so a pooled object reuses the collections it held before it was released.
+     * </p>
+     * @param baseSerializer The serializer to use to serialize the fields of an object.
+     * @param executor The executor to serialize on, or null to always serialize on the calling thread.
+     * @param parallelThreshold The fewest elements a collection needs to be serialized in parallel.
+     * @param pool The pool to acquire objects from, or null to create new objects.
+     */
+    public ReflectionSerializer(Serializer baseSerializer, ExecutorService executor, int parallelThreshold, ObjectPool pool) {
         this.baseSerializer = baseSerializer;
+        this.executor = executor;
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
     }
 
     /**
@@ -46,69 +76,159 @@ public class ReflectionSerializer implements Serializer {
             return new SNull();
         }
         SObject so = new SObject();
-        Field[] fields = t.getClass().getDeclaredFields();
-        for(Field f : fields){
-            if(f.isSynthetic() || Modifier.isTransient(f.getModifiers()) || Modifier.isStatic(f.getModifiers())) {
-                continue;
-            }
-            f.setAccessible(true);
+        for(ReflectionPlan.FieldPlan f : ReflectionPlan.of(t.getClass()).fields){
             try {
-                Object value = f.get(t);
+                Object value = f.accessor.get(t);
                 if(value == null){
                     //The field is null, we write null
-                    so.put(f.getName(), new SNull());
+                    so.put(f.name, new SNull());
                     continue;
                 }
                 if(value.equals(t)){
                     throw new SerializationException("Cannot serialize object that contains itself: " + t);
                 }
-                //Check if the field is optional
-                if(Optional.class.isAssignableFrom(f.getType())){
-                    Optional<?> opt = (Optional<?>) value;
-                    if(opt.isSome()){
-                        so.put(f.getName(), baseSerializer.serialize(opt.get()));
-                    }else{
-                        //The field is optional and None, we only put it in if we were told to by an annotation
-                        if(f.getAnnotation(SerializeAsNull.class) != null){
-                            so.put(f.getName(), new SNull());
+                switch(f.kind){
+                    case OPTIONAL:
+                        Optional<?> opt = (Optional<?>) value;
+                        if(opt.isSome()){
+                            so.put(f.name, baseSerializer.serialize(opt.get()));
+                        }else if(f.serializeAsNull){
+                            //The field is optional and None, we only put it in if we were told to by an annotation
+                            so.put(f.name, new SNull());
                         }
-                    }
-                } else if (Map.class.isAssignableFrom(f.getType())) {
-                    Map<?, ?> map = (Map<?, ?>) value;
-                    ParameterizedType type = (ParameterizedType)f.getGenericType();
-                    Class<?> keyType = (Class<?>)type.getActualTypeArguments()[0];
-                    if(keyType != String.class){
-                        throw new SerializationException("Can only serialize Maps with String keys");
-                    }
-                    SObject mapObject = new SObject();
-                    for(Map.Entry<?, ?> entry : map.entrySet()){
-                        mapObject.put(entry.getKey().toString(), baseSerializer.serialize(entry.getValue()));
-                    }
-                    so.put(f.getName(), mapObject);
-                } else if (Collection.class.isAssignableFrom(f.getType())) {
-                    Collection<?> collection = (Collection<?>) value;
-                    SList list = new SList();
-                    for(Object o : collection){
-                        list.add(baseSerializer.serialize(o));
-                    }
-                    so.put(f.getName(), list);
-                } else {
-                    so.put(f.getName(), baseSerializer.serialize(value));
+                        break;
+                    case MAP:
+                        if(!f.stringKeys){
+                            throw new SerializationException("Can only serialize Maps with String keys");
+                        }
+                        SObject mapObject = new SObject();
+                        for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()){
+                            mapObject.put(entry.getKey().toString(), baseSerializer.serialize(entry.getValue()));
+                        }
+                        so.put(f.name, mapObject);
+                        break;
+                    case COLLECTION:
+                        Collection<?> collection = (Collection<?>) value;
+                        if(ParallelLists.shouldSplit(executor, parallelThreshold, collection.size())){
+                            so.put(f.name, new SList(ParallelLists.serialize(baseSerializer, collection.toArray(), executor)));
+                            break;
+                        }
+                        SList list = new SList();
+                        for(Object o : collection){
+                            list.add(baseSerializer.serialize(o));
+                        }
+                        so.put(f.name, list);
+                        break;
+                    default:
+                        so.put(f.name, baseSerializer.serialize(value));
                 }
             } catch (IllegalArgumentException e) {
-                throw new SerializationException("Could not serialize field " + f.getName() + " of object " + t.getClass().getName(), e);
+                throw new SerializationException("Could not serialize field " + f.name + " of object " + t.getClass().getName(), e);
             } catch (IllegalAccessException e) {
-                throw new SerializationException("Could not access field " + f.getName() + " of object " + t.getClass().getName(), e);
+                throw new SerializationException("Could not access field " + f.name + " of object " + t.getClass().getName(), e);
             } catch (OptionalNoneException e){
                 throw new SerializationException("Unreachable");
             } catch (SerializationException e){
-                throw new SerializationException("Could not serialize field " + f.getName() + " of object " + t.getClass().getName(), e);
+                throw new SerializationException("Could not serialize field " + f.name + " of object " + t.getClass().getName(), e);
             }
         }
         return so;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Writes an object straight to a writer using reflection.
+     * <p>
+     * This follows the same rules as {@link #serialize(Object)} and writes the same output, without building the SObject first.
+     * </p>
+     * @param t The object to write.
+     * @param out The writer to write to.
+     */
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(t == null){
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        for(ReflectionPlan.FieldPlan f : ReflectionPlan.of(t.getClass()).fields){
+            try {
+                if(f.field.getType().isPrimitive() && hasPrimitiveSerializer(baseSerializer, f.field.getType())){
+                    out.name(f.name);
+                    writePrimitive(f, t, out);
+                    continue;
+                }
+                Object value = f.accessor.get(t);
+                if(value == null){
+                    out.name(f.name);
+                    out.nullValue();
+                    continue;
+                }
+                if(value.equals(t)){
+                    throw new SerializationException("Cannot serialize object that contains itself: " + t);
+                }
+                switch(f.kind){
+                    case OPTIONAL:
+                        Optional<?> opt = (Optional<?>) value;
+                        if(opt.isSome()){
+                            out.name(f.name);
+                            Serializers.serialize(baseSerializer, opt.get(), out);
+                        }else if(f.serializeAsNull){
+                            out.name(f.name);
+                            out.nullValue();
+                        }
+                        break;
+                    case MAP:
+                        if(!f.stringKeys){
+                            throw new SerializationException("Can only serialize Maps with String keys");
+                        }
+                        out.name(f.name);
+                        out.beginObject();
+                        for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()){
+                            out.name(entry.getKey().toString());
+                            Serializers.serialize(baseSerializer, entry.getValue(), out);
+                        }
+                        out.endObject();
+                        break;
+                    case COLLECTION:
+                        Collection<?> collection = (Collection<?>) value;
+                        out.name(f.name);
+                        out.beginList();
+                        if(ParallelLists.shouldSplit(executor, parallelThreshold, collection.size())){
+                            for(SValue sv : ParallelLists.serialize(baseSerializer, collection.toArray(), executor)){
+                                out.value(sv);
+                            }
+                        }else{
+                            for(Object o : collection){
+                                Serializers.serialize(baseSerializer, o, out);
+                            }
+                        }
+                        out.endList();
+                        break;
+                    default:
+                        out.name(f.name);
+                        Serializers.serialize(baseSerializer, value, out);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException("Could not serialize field " + f.name + " of object " + t.getClass().getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new SerializationException("Could not access field " + f.name + " of object " + t.getClass().getName(), e);
+            } catch (OptionalNoneException e){
+                throw new SerializationException("Unreachable");
+            } catch (SerializationException e){
+                throw new SerializationException("Could not serialize field " + f.name + " of object " + t.getClass().getName(), e);
+            }
+        }
+        out.endObject();
+    }
+
+    /**
+     * Deserializes an object from an SValue using reflection.
+     * <p>
+     * If this serializer has a pool the object is acquired from it and read in place, the same way {@link #deserializeInto(SValue, Object)} reads.
+     * </p>
+     * @param sv The value to read.
+     * @param clazz The class to read.
+     * @return The object.
+     */
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
         if(sv instanceof SNull){
             return null;
@@ -116,83 +236,477 @@ public class ReflectionSerializer implements Serializer {
         if(!(sv instanceof SObject)){
             throw new SerializationException("Cannot deserialize non-object value into object");
         }
-        SObject so = (SObject) sv;
+        Object t = instantiate(clazz);
+        read((SObject) sv, t, clazz, pool != null);
+        return t;
+    }
+
+    /**
+     * Reads an object from an SValue into an existing object using reflection.
+     * <p>
+     * This follows the same rules as {@link #deserialize(SValue, Class)}, overwriting every serialized field of the target.
+     * Map and collection fields that already hold a map or collection have it cleared and filled again.
+     * If there is a pool, the old elements this serializer would have acquired from it are released to it, unless another field of the target still refers to them.
+     * Fields holding an object of exactly their declared class have that object read in place as well.
+     * </p>
+     * @param sv The value to read.
+     * @param target The object to overwrite.
+     * @return The target, or null if the value is null.
+     */
+    public Object deserializeInto(SValue sv, Object target) throws SerializationException {
+        if(sv instanceof SNull){
+            return null;
+        }
+        if(!(sv instanceof SObject)){
+            throw new SerializationException("Cannot deserialize non-object value into object");
+        }
+        read((SObject) sv, target, target.getClass(), true);
+        return target;
+    }
+
+    private void read(SObject so, Object t, Class<?> clazz, boolean reuse) throws SerializationException {
         try {
-            Object t = clazz.newInstance();
-            Field[] fields = clazz.getDeclaredFields();
-            for(Field f : fields){
-                if(f.isSynthetic() || Modifier.isTransient(f.getModifiers()) || Modifier.isStatic(f.getModifiers())) {
+            for(ReflectionPlan.FieldPlan f : ReflectionPlan.of(clazz).fields){
+                try{
+                    switch(f.kind){
+                        case OPTIONAL:
+                            if(so.has(f.name)){
+                                SValue value = so.get(f.name);
+                                if(value instanceof SNull){
+                                    //Use optionals to handle nulls in apis
+                                    setNone(f, t, reuse);
+                                }else{
+                                    //If the field is an optional and the value is present, deserialize the value
+                                    f.accessor.set(t, new Optional.Some<Object>(baseSerializer.deserialize(value, f.elementType())));
+                                }
+                            }else{
+                                //If the field is an optional and the value is not present, set the field to None
+                                setNone(f, t, reuse);
+                            }
+                            break;
+                        case MAP:
+                            SObject mapObject = (SObject) so.get(f.name);
+                            if(!f.stringKeys){
+                                throw new SerializationException("Can only serialize Maps with String keys");
+                            }
+                            Class<?> valueType = f.elementType();
+                            Map<String, Object> map = reuse ? clearedMap(f, t) : f.newMap();
+                            for(Map.Entry<String, SValue> entry : mapObject.entrySet()){
+                                map.put(entry.getKey(), baseSerializer.deserialize(entry.getValue(), valueType));
+                            }
+                            f.accessor.set(t, map);
+                            break;
+                        case COLLECTION:
+                            SList list = (SList) so.get(f.name);
+                            Class<?> elementType = f.elementType();
+                            Collection<Object> collection = reuse ? clearedCollection(f, t) : f.newCollection();
+                            for(SValue value : list){
+                                collection.add(baseSerializer.deserialize(value, elementType));
+                            }
+                            f.accessor.set(t, collection);
+                            break;
+                        default:
+                            if(f.field.getType().isPrimitive() && hasPrimitiveSerializer(baseSerializer, f.field.getType()) && setPrimitive(f, t, so.get(f.name))){
+                                break;
+                            }
+                            if(so.has(f.name)){
+                                Object existing = reusable(f, t, reuse);
+                                if(existing != null){
+                                    f.accessor.set(t, Serializers.deserializeInto(baseSerializer, so.get(f.name), existing));
+                                }else{
+                                    f.accessor.set(t, baseSerializer.deserialize(so.get(f.name), f.field.getType()));
+                                }
+                            } else {
+                                throw new SerializationException("Missing field " + f.name + " in object " + clazz.getName());
+                            }
+                    }
+                } catch (SerializationException e){
+                    throw new SerializationException("Could not deserialize field " + f.name + " of object " + clazz.getName(), e);
+                }
+            }
+        } catch (InstantiationException e) {
+            throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("Could not access class " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Reads an object straight from a reader using reflection, binding each member to its field as it is read.
+     * <p>
+     * This follows the same rules as {@link #deserialize(SValue, Class)}. Members with no matching field are skipped without being decoded.
+     * </p>
+     * @param in The reader to read from.
+     * @param clazz The class to read.
+     * @return The object.
+     */
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        SValueReader.Token token = in.peek();
+        if(token == SValueReader.Token.NULL){
+            in.nextNull();
+            return null;
+        }
+        if(token != SValueReader.Token.BEGIN_OBJECT){
+            throw new SerializationException("Cannot deserialize non-object value into object");
+        }
+        Object t = instantiate(clazz);
+        read(in, t, clazz, pool != null);
+        return t;
+    }
+
+    /**
+     * Reads an object straight from a reader into an existing object using reflection.
+     * <p>
+     * This follows the same rules as {@link #deserializeInto(SValue, Object)}.
+     * </p>
+     * @param in The reader to read from.
+     * @param target The object to overwrite.
+     * @return The target, or null if the value is null.
+     */
+    public Object deserializeInto(SValueReader in, Object target) throws SerializationException, FormatException {
+        SValueReader.Token token = in.peek();
+        if(token == SValueReader.Token.NULL){
+            in.nextNull();
+            return null;
+        }
+        if(token != SValueReader.Token.BEGIN_OBJECT){
+            throw new SerializationException("Cannot deserialize non-object value into object");
+        }
+        read(in, target, target.getClass(), true);
+        return target;
+    }
+
+    private void read(SValueReader in, Object t, Class<?> clazz, boolean reuse) throws SerializationException, FormatException {
+        try {
+            ReflectionPlan plan = ReflectionPlan.of(clazz);
+            boolean[] seen = new boolean[plan.fields.length];
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+                ReflectionPlan.FieldPlan f = plan.byName.get(name);
+                if(f == null){
+                    in.skipValue();
                     continue;
                 }
+                seen[f.index] = true;
                 try{
-                    f.setAccessible(true);
-                    if(Optional.class.isAssignableFrom(f.getType())){
-                        if(so.has(f.getName())){
-                            SValue value = so.get(f.getName());
-                            if(value instanceof SNull){
-                                //Use optionals to handle nulls in apis
-                                f.set(t, new Optional.None<Object>());
+                    switch(f.kind){
+                        case OPTIONAL:
+                            if(in.peek() == SValueReader.Token.NULL){
+                                in.nextNull();
+                                setNone(f, t, reuse);
                             }else{
-                                //If the field is an optional and the value is present, deserialize the value
-                                ParameterizedType type = (ParameterizedType)f.getGenericType();
-                                Class<?> optionalType = (Class<?>)type.getActualTypeArguments()[0];
-                                f.set(t, new Optional.Some<Object>(baseSerializer.deserialize(so.get(f.getName()), optionalType)));
+                                f.accessor.set(t, new Optional.Some<Object>(Serializers.deserialize(baseSerializer, in, f.elementType())));
+                            }
+                            break;
+                        case MAP:
+                            if(!f.stringKeys){
+                                throw new SerializationException("Can only serialize Maps with String keys");
+                            }
+                            Class<?> valueType = f.elementType();
+                            if(in.peek() != SValueReader.Token.BEGIN_OBJECT){
+                                throw new SerializationException("Expected an object for map field " + f.name);
+                            }
+                            Map<String, Object> map = reuse ? clearedMap(f, t) : f.newMap();
+                            in.beginObject();
+                            while(in.hasNext()){
+                                String key = in.nextName();
+                                map.put(key, Serializers.deserialize(baseSerializer, in, valueType));
+                            }
+                            in.endObject();
+                            f.accessor.set(t, map);
+                            break;
+                        case COLLECTION:
+                            Class<?> elementType = f.elementType();
+                            if(in.peek() != SValueReader.Token.BEGIN_LIST){
+                                throw new SerializationException("Expected a list for collection field " + f.name);
+                            }
+                            Collection<Object> collection = reuse ? clearedCollection(f, t) : f.newCollection();
+                            in.beginList();
+                            while(in.hasNext()){
+                                collection.add(Serializers.deserialize(baseSerializer, in, elementType));
+                            }
+                            in.endList();
+                            f.accessor.set(t, collection);
+                            break;
+                        default:
+                            if(f.field.getType().isPrimitive() && hasPrimitiveSerializer(baseSerializer, f.field.getType()) && readPrimitive(f, t, in)){
+                                break;
+                            }
+                            Object existing = reusable(f, t, reuse);
+                            if(existing != null){
+                                f.accessor.set(t, Serializers.deserializeInto(baseSerializer, in, existing));
+                            }else{
+                                f.accessor.set(t, Serializers.deserialize(baseSerializer, in, f.field.getType()));
                             }
-                        }else{
-                            //If the field is an optional and the value is not present, set the field to None
-                            f.set(t, new Optional.None<Object>());
-                        }
-                    } else if(Map.class.isAssignableFrom(f.getType())) {
-                        SObject mapObject = (SObject) so.get(f.getName());
-                        ParameterizedType type = (ParameterizedType)f.getGenericType();
-                        Class<?> keyType = (Class<?>)type.getActualTypeArguments()[0];
-                        if(keyType != String.class){
-                            throw new SerializationException("Can only serialize Maps with String keys");
-                        }
-                        Class<?> valueType = (Class<?>)type.getActualTypeArguments()[1];
-                        Map<String, Object> map;
-                        if(f.getType().equals(Map.class)){
-                            map = new HashMap<String,Object>();
-                        }else{
-                            map = (Map<String, Object>) f.getType().newInstance();
-                        }
-                        for(Map.Entry<String, SValue> entry : mapObject.entrySet()){
-                            map.put(entry.getKey(), baseSerializer.deserialize(entry.getValue(), valueType));
-                        }
-                        f.set(t, map);
-                    } else if (Collection.class.isAssignableFrom(f.getType())) {
-                        SList list = (SList) so.get(f.getName());
-                        ParameterizedType type = (ParameterizedType)f.getGenericType();
-                        Class<?> valueType = (Class<?>)type.getActualTypeArguments()[0];
-                        Collection<Object> collection;
-                        if(f.getType().equals(Collection.class) || f.getType().equals(List.class)){
-                            collection = new java.util.ArrayList<Object>();
-                        }else if(f.getType().equals(Set.class)){
-                            collection = new java.util.HashSet<Object>();
-                        }else{
-                            collection = (Collection<Object>) f.getType().newInstance();
-                        }
-                        for(SValue value : list){
-                            collection.add(baseSerializer.deserialize(value, valueType));
-                        }
-                        f.set(t, collection);
-                    } else {
-                        if(so.has(f.getName())){
-                            f.set(t, baseSerializer.deserialize(so.get(f.getName()), f.getType()));
-                        } else {
-                            throw new SerializationException("Missing field " + f.getName() + " in object " + clazz.getName());
-                        }
                     }
                 } catch (SerializationException e){
-                    throw new SerializationException("Could not deserialize field " + f.getName() + " of object " + clazz.getName(), e);
+                    throw new SerializationException("Could not deserialize field " + f.name + " of object " + clazz.getName(), e);
+                }
+            }
+            in.endObject();
+            for(ReflectionPlan.FieldPlan f : plan.fields){
+                if(seen[f.index]){
+                    continue;
+                }
+                if(f.kind == ReflectionPlan.Kind.OPTIONAL){
+                    setNone(f, t, reuse);
+                }else{
+                    throw new SerializationException("Could not deserialize field " + f.name + " of object " + clazz.getName(),
+                        new SerializationException("Missing field " + f.name + " in object " + clazz.getName()));
                 }
             }
+        } catch (InstantiationException e) {
+            throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("Could not access class " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Creates an object to read into, from the pool if there is one.
+     * Pooled objects are checked to be of the class, since the fields of the plan for that class are accessed without further checks.
+     */
+    private Object instantiate(Class<?> clazz) throws SerializationException {
+        if(pool != null){
+            Object t = pool.acquire(clazz);
+            if(!clazz.isInstance(t)){
+                throw new SerializationException("Object pool returned " + (t == null ? "null" : t.getClass().getName()) + " for class " + clazz.getName());
+            }
             return t;
+        }
+        try {
+            return clazz.newInstance();
         } catch (InstantiationException e) {
             throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
         } catch (IllegalAccessException e) {
             throw new SerializationException("Could not access class " + clazz.getName(), e);
         }
     }
-    
+
+    /**
+     * Sets an Optional field to None, keeping the None it already holds when reading in place.
+     */
+    private static void setNone(ReflectionPlan.FieldPlan f, Object t, boolean reuse) throws IllegalAccessException {
+        if(reuse && f.accessor.get(t) instanceof Optional.None){
+            return;
+        }
+        f.accessor.set(t, new Optional.None<Object>());
+    }
+
+    /**
+     * Gets the object a field holds if it can be read in place.
+     * Only objects of exactly the declared class of the field are, since reading them as their own class is then no different from reading the field.
+     * @return The object, or null if a new one should be read
+     */
+    private static Object reusable(ReflectionPlan.FieldPlan f, Object t, boolean reuse) throws IllegalAccessException {
+        if(!reuse || f.field.getType().isPrimitive()){
+            return null;
+        }
+        Object existing = f.accessor.get(t);
+        return existing != null && existing.getClass() == f.field.getType() ? existing : null;
+    }
+
+    /**
+     * Empties the map a field holds so it can be filled again, releasing its values to the pool, or creates one if the field is null or its map can not be changed.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> clearedMap(ReflectionPlan.FieldPlan f, Object t) throws InstantiationException, IllegalAccessException {
+        Map<String, Object> map = (Map<String, Object>) f.accessor.get(t);
+        if(map == null){
+            return f.newMap();
+        }
+        release(map.values(), f, t);
+        try{
+            map.clear();
+        }catch(UnsupportedOperationException e){
+            return f.newMap();
+        }
+        return map;
+    }
+
+    /**
+     * Empties the collection a field holds so it can be filled again, releasing its elements to the pool, or creates one if the field is null or its collection can not be changed.
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<Object> clearedCollection(ReflectionPlan.FieldPlan f, Object t) throws InstantiationException, IllegalAccessException {
+        Collection<Object> collection = (Collection<Object>) f.accessor.get(t);
+        if(collection == null){
+            return f.newCollection();
+        }
+        release(collection, f, t);
+        try{
+            collection.clear();
+        }catch(UnsupportedOperationException e){
+            return f.newCollection();
+        }
+        return collection;
+    }
+
+    /**
+     * Releases the old elements of a map or collection field to the pool, if there is one.
+     * <p>
+     * Only elements of exactly the element type are released, and only if the base serializer reads that type with this serializer or a {@link SerializableSerializer} on the same pool,
+     * since anything else, such as Strings, boxed numbers or SValues, would never be acquired again.
+     * Elements that appear more than once or that another field of the object still refers to are released at most once or not at all,
+     * so the pool never hands out an object that is still in use.
+     * </p>
+     */
+    private void release(Collection<?> elements, ReflectionPlan.FieldPlan f, Object t) throws IllegalAccessException {
+        Class<?> elementType = f.elementType;
+        if(pool == null || elementType == null || !pooled(elementType)){
+            return;
+        }
+        IdentityHashMap<Object, Object> used = null;
+        for(Object element : elements){
+            if(element == null || element.getClass() != elementType){
+                continue;
+            }
+            if(used == null){
+                used = referenced(t, f);
+            }
+            if(used.put(element, element) == null){
+                pool.release(element);
+            }
+        }
+    }
+
+    /**
+     * Checks if objects of a class are read by acquiring them from the pool of this serializer.
+     */
+    private boolean pooled(Class<?> clazz){
+        Serializer serializer = baseSerializer;
+        if(serializer instanceof CompoundSerializer){
+            serializer = ((CompoundSerializer)serializer).serializerFor(clazz);
+        }
+        return serializer == this || (serializer instanceof SerializableSerializer && ((SerializableSerializer)serializer).pool == pool);
+    }
+
+    /**
+     * Collects the objects the fields of an object refer to, other than through one field, including the contents of Optionals, maps and collections.
+     */
+    private static IdentityHashMap<Object, Object> referenced(Object t, ReflectionPlan.FieldPlan skip) throws IllegalAccessException {
+        IdentityHashMap<Object, Object> used = new IdentityHashMap<Object, Object>();
+        for(ReflectionPlan.FieldPlan f : ReflectionPlan.of(t.getClass()).fields){
+            if(f == skip || f.field.getType().isPrimitive()){
+                continue;
+            }
+            Object value = f.accessor.get(t);
+            if(value instanceof Optional){
+                value = ((Optional<?>)value).or(null);
+            }
+            if(value instanceof Map){
+                for(Object v : ((Map<?, ?>)value).values()){
+                    used.put(v, v);
+                }
+            }else if(value instanceof Collection){
+                for(Object v : (Collection<?>)value){
+                    used.put(v, v);
+                }
+            }else if(value != null){
+                used.put(value, value);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Checks if the base serializer would hand a primitive to {@link PrimativeSerializer}, in which case it can be read and written without boxing.
+     */
+    static boolean hasPrimitiveSerializer(Serializer baseSerializer, Class<?> primitive){
+        Serializer serializer = baseSerializer;
+        if(serializer instanceof CompoundSerializer){
+            serializer = ((CompoundSerializer)serializer).serializerFor(primitive);
+        }
+        return serializer instanceof PrimativeSerializer;
+    }
+
+    /**
+     * Writes a primitive field the same way {@link PrimativeSerializer} writes its boxed value.
+     */
+    private static void writePrimitive(ReflectionPlan.FieldPlan f, Object t, SValueWriter out) throws IllegalAccessException, FormatException {
+        Class<?> type = f.field.getType();
+        if(type == int.class){
+            out.value((long)f.accessor.getInt(t));
+        }else if(type == long.class){
+            out.value(f.accessor.getLong(t));
+        }else if(type == double.class){
+            out.value(f.accessor.getDouble(t));
+        }else if(type == boolean.class){
+            out.value(f.accessor.getBoolean(t));
+        }else if(type == float.class){
+            //Written as a Float, widening it to a double would change its shortest form
+            out.value((Number)f.accessor.getFloat(t));
+        }else if(type == short.class){
+            out.value((long)f.accessor.getShort(t));
+        }else if(type == byte.class){
+            out.value((long)f.accessor.getByte(t));
+        }else{
+            out.value(String.valueOf(f.accessor.getChar(t)));
+        }
+    }
+
+    /**
+     * Sets a primitive field from a value the same way {@link PrimativeSerializer} reads its boxed value.
+     * @return false if the value is not of the right kind, leaving it to the base serializer to fail
+     */
+    private static boolean setPrimitive(ReflectionPlan.FieldPlan f, Object t, SValue sv) throws IllegalAccessException {
+        Class<?> type = f.field.getType();
+        if(sv instanceof SNumber){
+            SNumber sn = (SNumber)sv;
+            if(type == int.class){
+                f.accessor.setInt(t, sn.intValue());
+            }else if(type == long.class){
+                f.accessor.setLong(t, sn.longValue());
+            }else if(type == double.class){
+                f.accessor.setDouble(t, sn.doubleValue());
+            }else if(type == float.class){
+                f.accessor.setFloat(t, sn.floatValue());
+            }else if(type == short.class){
+                f.accessor.setShort(t, sn.shortValue());
+            }else if(type == byte.class){
+                f.accessor.setByte(t, sn.byteValue());
+            }else{
+                return false;
+            }
+            return true;
+        }
+        if(sv instanceof SBool && type == boolean.class){
+            f.accessor.setBoolean(t, ((SBool)sv).value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a primitive field the same way {@link PrimativeSerializer} reads its boxed value.
+     * @return false if the next value is not of the right kind, leaving it to the base serializer to fail
+     */
+    private static boolean readPrimitive(ReflectionPlan.FieldPlan f, Object t, SValueReader in) throws IllegalAccessException, FormatException {
+        Class<?> type = f.field.getType();
+        SValueReader.Token token = in.peek();
+        if(token == SValueReader.Token.NUMBER){
+            if(type == int.class){
+                f.accessor.setInt(t, in.nextInt());
+            }else if(type == long.class){
+                f.accessor.setLong(t, in.nextLong());
+            }else if(type == double.class){
+                f.accessor.setDouble(t, in.nextDouble());
+            }else if(type == float.class){
+                f.accessor.setFloat(t, in.nextNumber().floatValue());
+            }else if(type == short.class){
+                f.accessor.setShort(t, in.nextNumber().shortValue());
+            }else if(type == byte.class){
+                f.accessor.setByte(t, in.nextNumber().byteValue());
+            }else{
+                return false;
+            }
+            return true;
+        }
+        if(token == SValueReader.Token.BOOLEAN && type == boolean.class){
+            f.accessor.setBoolean(t, in.nextBoolean());
+            return true;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,229 @@
+package ca.awoo.jabert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * Emits a value as JSON a bufferful at a time, for writing to non-blocking channels.
+ * <p>
+ * Each call to {@link #fill(ByteBuffer)} writes as much of the value as fits in the buffer and remembers exactly where it stopped,
+ * down to the character of a string, so the next call carries on from there once the channel has taken the previous bytes.
+ * Only a small fixed buffer and the path from the root to the current value are kept,
+ * so sending a large value to a slow client does not hold a serialized copy of it in memory.
+ * </p>
+ * <p>
+ * The output is the same as {@link FastJsonFormat} emits in UTF-8. It is all ASCII, since strings escape any character outside of it.
+ * The value must not be modified until it has been emitted completely.
+ * </p>
+ */
+public class ResumableEmitter {
+    private static final int BUFFER_SIZE = 1024;
+    /**
+     * The most bytes a single step writes outside of a string: a comma, a colon and a number.
+     */
+    private static final int STEP_SIZE = NumberWriter.MAX_LENGTH + 8;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final class Frame {
+        final Iterator<?> iterator;
+        final boolean object;
+        boolean first = true;
+
+        Frame(Iterator<?> iterator, boolean object){
+            this.iterator = iterator;
+            this.object = object;
+        }
+    }
+
+    private final byte[] pending = new byte[BUFFER_SIZE];
+    private int pos;
+    private int len;
+    private final List<Frame> stack = new ArrayList<Frame>();
+    private SValue root;
+    private String text;
+    private int textIndex;
+    private boolean quoted;
+    private SValue afterKey;
+    private boolean done;
+
+    /**
+     * Creates an emitter for a value.
+     * @param sv The value to emit
+     */
+    public ResumableEmitter(SValue sv) {
+        this.root = sv;
+    }
+
+    /**
+     * Writes as much of the value as fits into the buffer, starting at its position.
+     * @param buffer The buffer to write to
+     * @return true if the whole value has now been written, false if there is more to write once the buffer has room again
+     */
+    public boolean fill(ByteBuffer buffer) throws FormatException {
+        while(true){
+            if(pos < len){
+                int n = Math.min(len - pos, buffer.remaining());
+                buffer.put(pending, pos, n);
+                pos += n;
+                if(pos < len){
+                    return false;
+                }
+            }
+            pos = 0;
+            len = 0;
+            if(done){
+                return true;
+            }
+            while(!done && len <= pending.length - STEP_SIZE){
+                step();
+            }
+        }
+    }
+
+    /**
+     * @return true if the whole value has been written
+     */
+    public boolean isDone() {
+        return done && pos == len;
+    }
+
+    /**
+     * Writes the next piece of the value into the pending bytes.
+     */
+    private void step() throws FormatException {
+        if(text != null){
+            writeText();
+            return;
+        }
+        if(root != null){
+            SValue sv = root;
+            root = null;
+            start(sv);
+            return;
+        }
+        if(stack.isEmpty()){
+            done = true;
+            return;
+        }
+        Frame frame = stack.get(stack.size() - 1);
+        if(!frame.iterator.hasNext()){
+            pending[len++] = (byte)(frame.object ? '}' : ']');
+            stack.remove(stack.size() - 1);
+            return;
+        }
+        if(!frame.first){
+            pending[len++] = ',';
+        }
+        frame.first = false;
+        if(frame.object){
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>)frame.iterator.next();
+            afterKey = (SValue)entry.getValue();
+            startText((String)entry.getKey(), true);
+        }else{
+            start((SValue)frame.iterator.next());
+        }
+    }
+
+    private void start(SValue sv) throws FormatException {
+        if(sv instanceof SNumber){
+            Number n = ((SNumber)sv).value;
+            int end = NumberWriter.writeNumber(n, pending, len);
+            if(end < 0){
+                startText(String.valueOf(n), false);
+            }else{
+                len = end;
+            }
+        }else if(sv instanceof SString){
+            startText(((SString)sv).value, true);
+        }else if(sv instanceof SList){
+            pending[len++] = '[';
+            stack.add(new Frame(((SList)sv).value.iterator(), false));
+        }else if(sv instanceof SObject){
+            pending[len++] = '{';
+            stack.add(new Frame(((SObject)sv).value.entrySet().iterator(), true));
+        }else if(sv instanceof SBool){
+            writeAscii(((SBool)sv).value ? "true" : "false");
+        }else if(sv instanceof SNull){
+            writeAscii("null");
+        }else{
+            throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+        }
+    }
+
+    private void writeAscii(String s){
+        for(int i = 0; i < s.length(); i++){
+            pending[len++] = (byte)s.charAt(i);
+        }
+    }
+
+    private void startText(String s, boolean quote){
+        text = s;
+        textIndex = 0;
+        quoted = quote;
+        if(quote){
+            pending[len++] = '\"';
+        }
+    }
+
+    /**
+     * Writes as much of the current string as fits in the pending bytes, escaping it if it is quoted.
+     */
+    private void writeText() throws FormatException {
+        String s = text;
+        int i = textIndex;
+        byte[] b = pending;
+        int end = s.length();
+        while(i < end && len + 6 <= b.length){
+            char c = s.charAt(i++);
+            if(!quoted){
+                b[len++] = (byte)c;
+            }else if(c >= 32 && c < 127){
+                if(c == '\"' || c == '\\'){
+                    b[len++] = '\\';
+                }
+                b[len++] = (byte)c;
+            }else if(c == '\n'){
+                b[len++] = '\\';
+                b[len++] = 'n';
+            }else if(c == '\r'){
+                b[len++] = '\\';
+                b[len++] = 'r';
+            }else if(c == '\t'){
+                b[len++] = '\\';
+                b[len++] = 't';
+            }else if(c == '\b'){
+                b[len++] = '\\';
+                b[len++] = 'b';
+            }else if(c == '\f'){
+                b[len++] = '\\';
+                b[len++] = 'f';
+            }else{
+                b[len++] = '\\';
+                b[len++] = 'u';
+                b[len++] = HEX[(c >> 12) & 0xF];
+                b[len++] = HEX[(c >> 8) & 0xF];
+                b[len++] = HEX[(c >> 4) & 0xF];
+                b[len++] = HEX[c & 0xF];
+            }
+        }
+        textIndex = i;
+        if(i < end || len + STEP_SIZE > b.length){
+            return;
+        }
+        if(quoted){
+            b[len++] = '\"';
+        }
+        text = null;
+        if(afterKey != null){
+            SValue value = afterKey;
+            afterKey = null;
+            b[len++] = ':';
+            start(value);
+        }
+    }
+}
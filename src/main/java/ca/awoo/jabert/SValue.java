@@ -1,8 +1,8 @@
 package ca.awoo.jabert;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -226,8 +226,11 @@ public abstract class SValue {
             this.value = value;
         }
 
+        /**
+         * Creates an empty object. Members keep the order they were put in, so they are emitted in that order.
+         */
         public SObject(){
-            this.value = new HashMap<String, SValue>();
+            this.value = new LinkedHashMap<String, SValue>();
         }
 
         public SValue get(String key) {
@@ -0,0 +1,83 @@
+package ca.awoo.jabert;
+
+/**
+ * A pull parser that reads a document one token at a time instead of building the whole SValue tree.
+ * <p>
+ * Readers are obtained from {@link Format#reader(java.io.InputStream)}. Objects are read by calling {@link #beginObject()},
+ * then {@link #nextName()} followed by one value for each member while {@link #hasNext()} is true, and finally {@link #endObject()}.
+ * Lists work the same way without the names. Anything that is not needed can be passed over with {@link #skipValue()}.
+ * </p>
+ * <p>
+ * A reader must be closed when it is no longer needed, even if the document was not read to the end.
+ * Closing a reader does not close the stream it reads from.
+ * </p>
+ */
+public interface SValueReader {
+    /**
+     * The kinds of tokens a reader can return.
+     */
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_LIST,
+        END_LIST,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    /**
+     * Gets the kind of the next token without consuming it.
+     * @return The next token
+     */
+    public Token peek() throws FormatException;
+
+    /**
+     * Consumes the next token, whatever it is. Names and values are skipped without being decoded.
+     * @return The token that was consumed
+     */
+    public Token nextToken() throws FormatException;
+
+    /**
+     * @return true if the current list or object has more elements
+     */
+    public boolean hasNext() throws FormatException;
+
+    public void beginObject() throws FormatException;
+    public void endObject() throws FormatException;
+    public void beginList() throws FormatException;
+    public void endList() throws FormatException;
+
+    /**
+     * Reads the name of the next member of the current object.
+     * @return The name
+     */
+    public String nextName() throws FormatException;
+
+    public String nextString() throws FormatException;
+    public Number nextNumber() throws FormatException;
+    public long nextLong() throws FormatException;
+    public int nextInt() throws FormatException;
+    public double nextDouble() throws FormatException;
+    public boolean nextBoolean() throws FormatException;
+    public void nextNull() throws FormatException;
+
+    /**
+     * Reads the next value, including everything nested in it, as an SValue.
+     * @return The value
+     */
+    public SValue nextValue() throws FormatException;
+
+    /**
+     * Skips the next value, including everything nested in it. If the next token is a name, the name and its value are skipped.
+     */
+    public void skipValue() throws FormatException;
+
+    /**
+     * Releases any buffers held by the reader. The underlying stream is not closed.
+     */
+    public void close();
+}
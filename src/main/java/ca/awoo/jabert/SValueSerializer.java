@@ -7,7 +7,7 @@ package ca.awoo.jabert;
  * Using this serializer, you can get the SValue and handle it later.
  * </p>
  */
-public class SValueSerializer implements Serializer {
+public class SValueSerializer implements StreamingSerializer {
 
     public SValue serialize(Object t) throws SerializationException {
         if(t instanceof SValue){
@@ -16,8 +16,17 @@ public class SValueSerializer implements Serializer {
         throw new SerializationException("Cannot serialize object of type " + t.getClass().getName() + " with SValueSerializer");
     }
 
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        out.value(serialize(t));
+    }
+
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
         return sv;
     }
     
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        return in.nextValue();
+    }
+    
 }
@@ -0,0 +1,214 @@
+package ca.awoo.jabert;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * An SValueReader that reads the tokens of an SValue that is already in memory.
+ * <p>
+ * Formats that can not read a stream incrementally use this to provide {@link Format#reader(java.io.InputStream)} on top of {@link Format#parse(java.io.InputStream)}.
+ * </p>
+ */
+public class SValueTreeReader implements SValueReader {
+    private static class Frame {
+        private final Iterator<SValue> list;
+        private final Iterator<Map.Entry<String, SValue>> object;
+        private SValue memberValue;
+
+        public Frame(Iterator<SValue> list, Iterator<Map.Entry<String, SValue>> object) {
+            this.list = list;
+            this.object = object;
+        }
+    }
+
+    private final List<Frame> stack = new ArrayList<Frame>();
+    private SValue root;
+    private SValue pending;
+    private String pendingName;
+
+    /**
+     * Creates a reader for the given value.
+     * @param root The value to read
+     */
+    public SValueTreeReader(SValue root) {
+        this.root = root;
+    }
+
+    private static Token tokenOf(SValue sv) throws FormatException {
+        if(sv instanceof SString){
+            return Token.STRING;
+        }else if(sv instanceof SNumber){
+            return Token.NUMBER;
+        }else if(sv instanceof SBool){
+            return Token.BOOLEAN;
+        }else if(sv instanceof SNull){
+            return Token.NULL;
+        }else if(sv instanceof SList){
+            return Token.BEGIN_LIST;
+        }else if(sv instanceof SObject){
+            return Token.BEGIN_OBJECT;
+        }
+        throw new FormatException("Unknown SValue type: " + sv.getClass().getName());
+    }
+
+    public Token peek() throws FormatException {
+        if(pendingName != null){
+            return Token.NAME;
+        }
+        if(pending != null){
+            return tokenOf(pending);
+        }
+        if(stack.isEmpty()){
+            if(root != null){
+                pending = root;
+                root = null;
+                return tokenOf(pending);
+            }
+            return Token.END_DOCUMENT;
+        }
+        Frame frame = stack.get(stack.size() - 1);
+        if(frame.list != null){
+            if(frame.list.hasNext()){
+                pending = frame.list.next();
+                return tokenOf(pending);
+            }
+            return Token.END_LIST;
+        }
+        if(frame.object.hasNext()){
+            Map.Entry<String, SValue> entry = frame.object.next();
+            pendingName = entry.getKey();
+            frame.memberValue = entry.getValue();
+            return Token.NAME;
+        }
+        return Token.END_OBJECT;
+    }
+
+    private SValue expect(Token token) throws FormatException {
+        Token next = peek();
+        if(next != token){
+            throw new FormatException("Expected " + token + " but was " + next);
+        }
+        SValue value = pending;
+        pending = null;
+        return value;
+    }
+
+    public Token nextToken() throws FormatException {
+        Token token = peek();
+        switch(token){
+            case BEGIN_OBJECT:
+                beginObject();
+                break;
+            case BEGIN_LIST:
+                beginList();
+                break;
+            case END_OBJECT:
+                endObject();
+                break;
+            case END_LIST:
+                endList();
+                break;
+            case NAME:
+                nextName();
+                break;
+            case END_DOCUMENT:
+                break;
+            default:
+                pending = null;
+        }
+        return token;
+    }
+
+    public boolean hasNext() throws FormatException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_LIST && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws FormatException {
+        SObject so = (SObject) expect(Token.BEGIN_OBJECT);
+        stack.add(new Frame(null, so.value.entrySet().iterator()));
+    }
+
+    public void endObject() throws FormatException {
+        expect(Token.END_OBJECT);
+        stack.remove(stack.size() - 1);
+    }
+
+    public void beginList() throws FormatException {
+        SList sl = (SList) expect(Token.BEGIN_LIST);
+        stack.add(new Frame(sl.value.iterator(), null));
+    }
+
+    public void endList() throws FormatException {
+        expect(Token.END_LIST);
+        stack.remove(stack.size() - 1);
+    }
+
+    public String nextName() throws FormatException {
+        if(peek() != Token.NAME){
+            throw new FormatException("Expected " + Token.NAME + " but was " + peek());
+        }
+        String name = pendingName;
+        pendingName = null;
+        Frame frame = stack.get(stack.size() - 1);
+        pending = frame.memberValue;
+        frame.memberValue = null;
+        return name;
+    }
+
+    public String nextString() throws FormatException {
+        return ((SString) expect(Token.STRING)).value;
+    }
+
+    public Number nextNumber() throws FormatException {
+        return ((SNumber) expect(Token.NUMBER)).value;
+    }
+
+    public long nextLong() throws FormatException {
+        return nextNumber().longValue();
+    }
+
+    public int nextInt() throws FormatException {
+        return nextNumber().intValue();
+    }
+
+    public double nextDouble() throws FormatException {
+        return nextNumber().doubleValue();
+    }
+
+    public boolean nextBoolean() throws FormatException {
+        return ((SBool) expect(Token.BOOLEAN)).value;
+    }
+
+    public void nextNull() throws FormatException {
+        expect(Token.NULL);
+    }
+
+    public SValue nextValue() throws FormatException {
+        Token token = peek();
+        if(pending == null){
+            throw new FormatException("Expected a value but was " + token);
+        }
+        SValue value = pending;
+        pending = null;
+        return value;
+    }
+
+    public void skipValue() throws FormatException {
+        if(peek() == Token.NAME){
+            nextName();
+        }
+        nextValue();
+    }
+
+    public void close() {
+        stack.clear();
+        root = null;
+        pending = null;
+        pendingName = null;
+    }
+}
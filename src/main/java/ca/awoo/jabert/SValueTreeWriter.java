@@ -0,0 +1,153 @@
+package ca.awoo.jabert;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * An SValueWriter that builds an SValue in memory.
+ * <p>
+ * Formats that can not write incrementally use this to provide {@link Format#writer(OutputStream)} on top of {@link Format#emit(SValue, OutputStream)}.
+ * In that case the value is emitted as soon as it is complete.
+ * </p>
+ */
+public class SValueTreeWriter implements SValueWriter {
+    private final Format format;
+    private final OutputStream os;
+    private final List<SValue> stack = new ArrayList<SValue>();
+    private String pendingName;
+    private SValue root;
+
+    /**
+     * Creates a writer that only builds the value, which can then be read with {@link #getValue()}.
+     */
+    public SValueTreeWriter() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a writer that emits the value with the given format once it is complete.
+     * @param format The format to emit with
+     * @param os The stream to emit to
+     */
+    public SValueTreeWriter(Format format, OutputStream os) {
+        this.format = format;
+        this.os = os;
+    }
+
+    /**
+     * @return The value written so far, or null if nothing has been written
+     */
+    public SValue getValue() {
+        return root;
+    }
+
+    private void add(SValue sv, boolean container) throws FormatException {
+        if(stack.isEmpty()){
+            if(root != null){
+                throw new FormatException("A document can only have one top level value");
+            }
+            root = sv;
+            if(!container){
+                complete();
+            }
+        }else{
+            SValue top = stack.get(stack.size() - 1);
+            if(top instanceof SList){
+                ((SList)top).add(sv);
+            }else{
+                if(pendingName == null){
+                    throw new FormatException("Expected a name before the value");
+                }
+                ((SObject)top).put(pendingName, sv);
+                pendingName = null;
+            }
+        }
+        if(container){
+            stack.add(sv);
+        }
+    }
+
+    private void end(Class<? extends SValue> type, char bracket) throws FormatException {
+        if(stack.isEmpty() || !type.isInstance(stack.get(stack.size() - 1)) || pendingName != null){
+            throw new FormatException("Nesting problem closing with " + bracket);
+        }
+        stack.remove(stack.size() - 1);
+        if(stack.isEmpty()){
+            complete();
+        }
+    }
+
+    private void complete() throws FormatException {
+        if(format != null){
+            format.emit(root, os);
+        }
+    }
+
+    public void beginObject() throws FormatException {
+        add(new SObject(), true);
+    }
+
+    public void endObject() throws FormatException {
+        end(SObject.class, '}');
+    }
+
+    public void beginList() throws FormatException {
+        add(new SList(), true);
+    }
+
+    public void endList() throws FormatException {
+        end(SList.class, ']');
+    }
+
+    public void name(String name) throws FormatException {
+        if(stack.isEmpty() || !(stack.get(stack.size() - 1) instanceof SObject) || pendingName != null){
+            throw new FormatException("Names can only be written inside an object");
+        }
+        pendingName = name;
+    }
+
+    public void value(String s) throws FormatException {
+        add(s == null ? new SNull() : new SString(s), false);
+    }
+
+    public void value(Number n) throws FormatException {
+        add(n == null ? new SNull() : new SNumber(n), false);
+    }
+
+    public void value(long l) throws FormatException {
+        add(new SNumber(l), false);
+    }
+
+    public void value(double d) throws FormatException {
+        add(new SNumber(d), false);
+    }
+
+    public void value(boolean b) throws FormatException {
+        add(new SBool(b), false);
+    }
+
+    public void nullValue() throws FormatException {
+        add(new SNull(), false);
+    }
+
+    public void value(SValue sv) throws FormatException {
+        add(sv, false);
+    }
+
+    public void flush() throws FormatException {
+    }
+
+    public void close() throws FormatException {
+    }
+
+    /**
+     * Drops the value being built. A value that was not complete has not been emitted.
+     */
+    public void abort() {
+        stack.clear();
+        pendingName = null;
+    }
+}
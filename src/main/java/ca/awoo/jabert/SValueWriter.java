@@ -0,0 +1,60 @@
+package ca.awoo.jabert;
+
+/**
+ * A push writer that emits a document one token at a time instead of walking an SValue tree.
+ * <p>
+ * Writers are obtained from {@link Format#writer(java.io.OutputStream)}. Objects are written by calling {@link #beginObject()},
+ * then {@link #name(String)} followed by one value for each member, and finally {@link #endObject()}.
+ * Lists work the same way without the names. The output is the same as emitting the equivalent SValue.
+ * </p>
+ * <p>
+ * A writer must be closed once the document is written, or aborted if it can not be. Closing flushes the writer but does not close the stream it writes to.
+ * </p>
+ */
+public interface SValueWriter {
+    public void beginObject() throws FormatException;
+    public void endObject() throws FormatException;
+    public void beginList() throws FormatException;
+    public void endList() throws FormatException;
+
+    /**
+     * Writes the name of the next member of the current object.
+     * @param name The name
+     */
+    public void name(String name) throws FormatException;
+
+    public void value(String s) throws FormatException;
+    public void value(Number n) throws FormatException;
+    public void value(long l) throws FormatException;
+    public void value(double d) throws FormatException;
+    public void value(boolean b) throws FormatException;
+    public void nullValue() throws FormatException;
+
+    /**
+     * Writes a whole SValue, including everything nested in it.
+     * @param sv The value
+     */
+    public void value(SValue sv) throws FormatException;
+
+    /**
+     * Writes anything buffered so far to the stream and flushes it.
+     */
+    public void flush() throws FormatException;
+
+    /**
+     * Flushes the writer and releases its buffers. The underlying stream is not closed.
+     * <p>
+     * Writers that stream their output throw a FormatException rather than flush an unfinished document, and release their buffers as {@link #abort()} does.
+     * </p>
+     */
+    public void close() throws FormatException;
+
+    /**
+     * Releases the writer's buffers without flushing them, for when the document can not be finished.
+     * <p>
+     * Whatever is still buffered is dropped instead of being written, so a short document that fails partway writes nothing.
+     * Anything the writer already had to pass on to the stream can not be taken back. The underlying stream is not closed.
+     * </p>
+     */
+    public void abort();
+}
@@ -2,8 +2,28 @@ package ca.awoo.jabert;
 
 /**
  * A serializer for serializable objects.
+ * <p>
+ * Reading in place hands the value to {@link Serializable#deserialize(SValue)} of the existing object,
+ * so it is up to the object whether it reuses what it holds.
+ * </p>
  */
-public class SerializableSerializer implements Serializer{
+public class SerializableSerializer implements StreamingSerializer, InPlaceDeserializer{
+    final ObjectPool pool;
+
+    /**
+     * Creates a serializer that creates a new object for every value it reads.
+     */
+    public SerializableSerializer(){
+        this(null);
+    }
+
+    /**
+     * Creates a serializer that acquires the objects it reads from a pool.
+     * @param pool The pool to acquire objects from, or null to create new objects
+     */
+    public SerializableSerializer(ObjectPool pool){
+        this.pool = pool;
+    }
 
     public SValue serialize(Object t) throws SerializationException{
         if(!(t instanceof Serializable)){
@@ -12,19 +32,37 @@ public class SerializableSerializer implements Serializer{
         return ((Serializable)t).serialize();
     }
 
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException {
+        out.value(serialize(t));
+    }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        return deserialize(in.nextValue(), clazz);
+    }
+
     public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
+        if(pool != null){
+            return deserializeInto(sv, pool.acquire(clazz));
+        }
         try {
-            Object s = clazz.newInstance();
-            if(!(s instanceof Serializable)){
-                throw new SerializationException("Class " + clazz.getName() + " does not implement Serializable");
-            }
-            ((Serializable)s).deserialize(sv);
-            return s;
+            return deserializeInto(sv, clazz.newInstance());
         } catch (InstantiationException e) {
             throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
         } catch (IllegalAccessException e) {
             throw new SerializationException("Could not access class " + clazz.getName(), e);
         }
     }
-    
+
+    public Object deserializeInto(SValueReader in, Object target) throws SerializationException, FormatException {
+        return deserializeInto(in.nextValue(), target);
+    }
+
+    public Object deserializeInto(SValue sv, Object target) throws SerializationException {
+        if(!(target instanceof Serializable)){
+            throw new SerializationException("Class " + target.getClass().getName() + " does not implement Serializable");
+        }
+        ((Serializable)target).deserialize(sv);
+        return target;
+    }
+
 }
@@ -1,11 +1,60 @@
 package ca.awoo.jabert;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
 import ca.awoo.fwoabl.function.Predicate;
 
 public final class Serializers {
     private Serializers(){}
 
+    /**
+     * Creates the default serializer.
+     * <p>
+     * Classes marked with {@link GenerateSerializer} use the serializer generated for them at compile time if there is one, other objects use reflection.
+     * </p>
+     */
     public static Serializer defaultSerializer(){
+        return defaultSerializer(null, 0);
+    }
+
+    /**
+     * Creates the default serializer with parallel mode turned on for arrays and collection fields.
+     * <p>
+     * Arrays and collections with at least parallelThreshold elements are serialized in chunks on the executor.
+     * The output is the same as that of {@link #defaultSerializer()}.
+     * Nested arrays and collections inside a chunk are serialized on the thread of that chunk, so the executor is never waited on from one of its own threads.
+     * </p>
+     * @param executor The executor to serialize on
+     * @param parallelThreshold The fewest elements an array or collection needs to be serialized in parallel
+     */
+    public static Serializer defaultSerializer(ExecutorService executor, int parallelThreshold){
+        return defaultSerializer(executor, parallelThreshold, null);
+    }
+
+    /**
+     * Creates the default serializer, creating the objects it reads through the given pool.
+     * <p>
+     * Objects read with reflection or through {@link Serializable} are acquired from the pool, and pooled objects are read in place,
+     * reusing the collections they already hold and releasing the pooled elements that were in them, unless another field still refers to them.
+     * </p>
+     * @param pool The pool to acquire objects from
+     * @see #deserializeInto(Serializer, SValue, Object)
+     */
+    public static Serializer defaultSerializer(ObjectPool pool){
+        return defaultSerializer(null, 0, pool);
+    }
+
+    /**
+     * Creates the default serializer with parallel mode turned on, creating the objects it reads through the given pool.
+     * @param executor The executor to serialize on, or null to always serialize on the calling thread
+     * @param parallelThreshold The fewest elements an array or collection needs to be serialized in parallel
+     * @param pool The pool to acquire objects from, or null to create new objects
+     * @see #defaultSerializer(ExecutorService, int)
+     * @see #defaultSerializer(ObjectPool)
+     */
+    public static Serializer defaultSerializer(ExecutorService executor, int parallelThreshold, ObjectPool pool){
         CompoundSerializer cs = new CompoundSerializer();
         PrimativeSerializer ps = new PrimativeSerializer();
         cs.addOption(new Predicate<Class<?>>() {
@@ -21,13 +70,13 @@ public final class Serializers {
                         t.equals(String.class);
             }
         }, ps);
-        ArraySerializer as = new ArraySerializer(cs);
+        ArraySerializer as = new ArraySerializer(cs, executor, parallelThreshold);
         cs.addOption(new Predicate<Class<?>>() {
             public boolean invoke(Class<?> t) {
                 return t.isArray();
             }
         }, as);
-        SerializableSerializer ss = new SerializableSerializer();
+        SerializableSerializer ss = new SerializableSerializer(pool);
         cs.addOption(new Predicate<Class<?>>() {
             public boolean invoke(Class<?> t) {
                 return Serializable.class.isAssignableFrom(t);
@@ -39,8 +88,157 @@ public final class Serializers {
                 return SValue.class.isAssignableFrom(t);
             }
         }, svs);
-        ReflectionSerializer rs = new ReflectionSerializer(cs);
+        ReflectionSerializer rs = new ReflectionSerializer(cs, executor, parallelThreshold, pool);
+        GeneratedSerializerLookup gs = new GeneratedSerializerLookup(cs, rs);
+        cs.addOption(new Predicate<Class<?>>() {
+            public boolean invoke(Class<?> t) {
+                return t.isAnnotationPresent(GenerateSerializer.class);
+            }
+        }, gs);
         cs.setDefaultSerializer(rs);
         return cs;
     }
+
+    /**
+     * Writes an object to a writer, straight through if the serializer supports it and through an SValue otherwise.
+     * @param serializer The serializer to use
+     * @param t The object to write
+     * @param out The writer to write to
+     */
+    public static void serialize(Serializer serializer, Object t, SValueWriter out) throws SerializationException, FormatException {
+        if(serializer instanceof StreamingSerializer){
+            ((StreamingSerializer)serializer).serialize(t, out);
+        }else{
+            out.value(serializer.serialize(t));
+        }
+    }
+
+    /**
+     * Serializes an object and emits it with the given format in one pass.
+     * <p>
+     * If the serializer is a {@link StreamingSerializer} the object is written straight to the format's writer without building an SValue tree.
+     * The output is the same as emitting the result of {@link Serializer#serialize(Object)}.
+     * If serializing fails the writer is aborted rather than flushed, so nothing is written unless the document outgrew the writer's buffer first.
+     * </p>
+     * @param serializer The serializer to use
+     * @param t The object to write
+     * @param format The format to write in
+     * @param os The stream to write to
+     */
+    public static void emit(Serializer serializer, Object t, Format format, OutputStream os) throws SerializationException, FormatException {
+        if(!(serializer instanceof StreamingSerializer)){
+            format.emit(serializer.serialize(t), os);
+            return;
+        }
+        SValueWriter out = format.writer(os);
+        boolean written = false;
+        try{
+            ((StreamingSerializer)serializer).serialize(t, out);
+            written = true;
+        }finally{
+            if(!written){
+                //Do not flush half a document, or let a failing flush hide why it failed
+                out.abort();
+            }
+        }
+        out.close();
+    }
+
+    /**
+     * Reads an object from a reader, straight through if the serializer supports it and through an SValue otherwise.
+     * @param serializer The serializer to use
+     * @param in The reader to read from
+     * @param clazz The class to read
+     * @return The object
+     */
+    public static Object deserialize(Serializer serializer, SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        if(serializer instanceof StreamingSerializer){
+            return ((StreamingSerializer)serializer).deserialize(in, clazz);
+        }
+        return serializer.deserialize(in.nextValue(), clazz);
+    }
+
+    /**
+     * Reads a value into an existing object if the serializer supports it, and into a new object of the same class otherwise.
+     * @param serializer The serializer to use
+     * @param sv The value to read
+     * @param target The object to overwrite
+     * @return The object read, which is the target if it was overwritten
+     * @see InPlaceDeserializer
+     */
+    public static Object deserializeInto(Serializer serializer, SValue sv, Object target) throws SerializationException {
+        if(target == null){
+            throw new SerializationException("Cannot deserialize into null");
+        }
+        if(serializer instanceof InPlaceDeserializer){
+            return ((InPlaceDeserializer)serializer).deserializeInto(sv, target);
+        }
+        return serializer.deserialize(sv, target.getClass());
+    }
+
+    /**
+     * Reads the next value of a reader into an existing object if the serializer supports it, and into a new object of the same class otherwise.
+     * @param serializer The serializer to use
+     * @param in The reader to read from
+     * @param target The object to overwrite
+     * @return The object read, which is the target if it was overwritten
+     * @see InPlaceDeserializer
+     */
+    public static Object deserializeInto(Serializer serializer, SValueReader in, Object target) throws SerializationException, FormatException {
+        if(target == null){
+            throw new SerializationException("Cannot deserialize into null");
+        }
+        if(serializer instanceof InPlaceDeserializer){
+            return ((InPlaceDeserializer)serializer).deserializeInto(in, target);
+        }
+        return deserialize(serializer, in, target.getClass());
+    }
+
+    /**
+     * Parses an object of the given class from a stream in one pass.
+     * <p>
+     * If the serializer is a {@link StreamingSerializer} the fields are bound as the format's reader reads them, without building an SValue tree.
+     * The result is the same as deserializing the result of {@link Format#parse(InputStream)}.
+     * </p>
+     * @param serializer The serializer to use
+     * @param clazz The class to read
+     * @param format The format to read
+     * @param is The stream to read from
+     * @return The object
+     */
+    public static Object parse(Serializer serializer, Class<? extends Object> clazz, Format format, InputStream is) throws SerializationException, FormatException {
+        if(!(serializer instanceof StreamingSerializer)){
+            return serializer.deserialize(format.parse(is), clazz);
+        }
+        SValueReader in = format.reader(is);
+        try{
+            return ((StreamingSerializer)serializer).deserialize(in, clazz);
+        }finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Parses a stream into an existing object in one pass.
+     * <p>
+     * This is {@link #parse(Serializer, Class, Format, InputStream)} for a serializer that can read in place,
+     * used to decode the same kind of message over and over without creating a new object each time.
+     * </p>
+     * @param serializer The serializer to use
+     * @param target The object to overwrite
+     * @param format The format to read
+     * @param is The stream to read from
+     * @return The object read, which is the target if it was overwritten
+     */
+    public static Object parseInto(Serializer serializer, Object target, Format format, InputStream is) throws SerializationException, FormatException {
+        if(!(serializer instanceof StreamingSerializer)){
+            return deserializeInto(serializer, format.parse(is), target);
+        }
+        SValueReader in = format.reader(is);
+        try{
+            return deserializeInto(serializer, in, target);
+        }finally{
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package ca.awoo.jabert;
+
+/**
+ * A serializer that can also write objects straight to an SValueWriter and read them straight from an SValueReader, without building an SValue tree.
+ * <p>
+ * The output must be the same as writing the SValue returned by {@link #serialize(Object)},
+ * and reading must give the same object as {@link #deserialize(SValue, Class)} on the parsed value.
+ * </p>
+ * @see Serializers#emit(Serializer, Object, Format, java.io.OutputStream)
+ * @see Serializers#parse(Serializer, Class, Format, java.io.InputStream)
+ */
+public interface StreamingSerializer extends Serializer {
+    /**
+     * Writes an object to the given writer.
+     * @param t The object to write
+     * @param out The writer to write to
+     */
+    public void serialize(Object t, SValueWriter out) throws SerializationException, FormatException;
+
+    /**
+     * Reads an object of the given class from the next value of the reader.
+     * @param in The reader to read from
+     * @param clazz The class to read
+     * @return The object
+     */
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException;
+}
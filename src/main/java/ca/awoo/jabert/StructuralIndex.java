@@ -0,0 +1,516 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * An index of where every value starts in a UTF-8 json document, used by {@link FastJsonFormat#parseLazy(java.io.InputStream)}.
+ * <p>
+ * Building the index is a single pass over the bytes that checks the whole document but decodes nothing.
+ * Each value, and each object key, gets a node holding the position of its first byte and the node that follows it,
+ * so a whole subtree can be stepped over without looking at it.
+ * Objects and lists are then handed out as views that only decode their own members the first time they are used.
+ * Nested objects and lists stay undecoded until they are used in turn.
+ * </p>
+ * <p>
+ * The views keep the whole document in memory for as long as any of them is reachable.
+ * They can be used from several threads, decoding is synchronized on the index.
+ * </p>
+ */
+final class StructuralIndex {
+    private final byte[] bytes;
+    private final int length;
+    private int[] start = new int[64];
+    private int[] next = new int[64];
+    private int count;
+    private final Utf8JsonInput decoder;
+
+    private StructuralIndex(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+        this.decoder = new Utf8JsonInput(bytes, length);
+    }
+
+    /**
+     * Indexes a document and returns a view of its top level value.
+     * @param bytes The UTF-8 bytes of the document
+     * @param length The number of bytes in the document
+     * @return The value, with objects and lists decoded lazily
+     * @throws FormatException If the document is not valid json
+     */
+    static SValue parse(byte[] bytes, int length) throws FormatException {
+        StructuralIndex index = new StructuralIndex(bytes, length);
+        int p = index.skipSpace(index.scanValue(0));
+        if(p < length){
+            throw new FormatException("Unexpected character after the value: " + (char)(bytes[p] & 0xFF) + " at " + p);
+        }
+        synchronized(index){
+            return index.value(0);
+        }
+    }
+
+    private int add(int position){
+        if(count == start.length){
+            int[] bigger = new int[count * 2];
+            System.arraycopy(start, 0, bigger, 0, count);
+            start = bigger;
+            bigger = new int[count * 2];
+            System.arraycopy(next, 0, bigger, 0, count);
+            next = bigger;
+        }
+        start[count] = position;
+        return count++;
+    }
+
+    private int skipSpace(int p){
+        while(p < length && Utf8JsonInput.isSpace(bytes[p] & 0xFF)){
+            p++;
+        }
+        return p;
+    }
+
+    private FormatException unexpected(int p){
+        if(p >= length){
+            return new FormatException("Unexpected EOF at " + p);
+        }
+        return new FormatException("Unexpected character: " + (char)(bytes[p] & 0xFF) + " at " + p);
+    }
+
+    private int scanValue(int p) throws FormatException {
+        p = skipSpace(p);
+        if(p >= length){
+            throw unexpected(p);
+        }
+        int node = add(p);
+        switch(bytes[p]){
+            case '{':
+                p = scanObject(p + 1);
+                break;
+            case '[':
+                p = scanList(p + 1);
+                break;
+            case '\"':
+                p = scanString(p + 1);
+                break;
+            case 't':
+                p = scanLiteral(p, "true");
+                break;
+            case 'f':
+                p = scanLiteral(p, "false");
+                break;
+            case 'n':
+                p = scanLiteral(p, "null");
+                break;
+            default:
+                p = scanNumber(p);
+        }
+        next[node] = count;
+        return p;
+    }
+
+    private int scanObject(int p) throws FormatException {
+        p = skipSpace(p);
+        if(p < length && bytes[p] == '}'){
+            return p + 1;
+        }
+        while(true){
+            if(p >= length || bytes[p] != '\"'){
+                throw unexpected(p);
+            }
+            int key = add(p);
+            p = scanString(p + 1);
+            next[key] = count;
+            p = skipSpace(p);
+            if(p >= length || bytes[p] != ':'){
+                throw unexpected(p);
+            }
+            p = skipSpace(scanValue(p + 1));
+            if(p < length && bytes[p] == '}'){
+                return p + 1;
+            }
+            if(p >= length || bytes[p] != ','){
+                throw unexpected(p);
+            }
+            p = skipSpace(p + 1);
+        }
+    }
+
+    private int scanList(int p) throws FormatException {
+        p = skipSpace(p);
+        if(p < length && bytes[p] == ']'){
+            return p + 1;
+        }
+        while(true){
+            p = skipSpace(scanValue(p));
+            if(p < length && bytes[p] == ']'){
+                return p + 1;
+            }
+            if(p >= length || bytes[p] != ','){
+                throw unexpected(p);
+            }
+            p++;
+        }
+    }
+
+    private int scanString(int p) throws FormatException {
+        while(p < length){
+            byte c = bytes[p++];
+            if(c == '\"'){
+                return p;
+            }
+            if(c == '\\'){
+                if(p >= length){
+                    break;
+                }
+                switch(bytes[p++]){
+                    case '\"':
+                    case '\\':
+                    case '/':
+                    case 'b':
+                    case 'f':
+                    case 'n':
+                    case 'r':
+                    case 't':
+                        break;
+                    case 'u':
+                        for(int i = 0; i < 4; i++){
+                            if(p >= length || Character.digit(bytes[p++], 16) < 0){
+                                throw new FormatException("Invalid unicode escape at " + (p - 1));
+                            }
+                        }
+                        break;
+                    default:
+                        throw new FormatException("Invalid escape sequence: \\" + (char)(bytes[p - 1] & 0xFF) + " at " + (p - 1));
+                }
+            }
+        }
+        throw unexpected(p);
+    }
+
+    private int scanLiteral(int p, String literal) throws FormatException {
+        for(int i = 0; i < literal.length(); i++){
+            if(p + i >= length || bytes[p + i] != literal.charAt(i)){
+                throw new FormatException("Invalid value, expected " + literal + " at " + p);
+            }
+        }
+        return p + literal.length();
+    }
+
+    /**
+     * Checks a number the same way as {@link LazyNumber#LazyNumber(String)}.
+     */
+    private int scanNumber(int p) throws FormatException {
+        int begin = p;
+        if(p < length && bytes[p] == '-'){
+            p++;
+        }
+        int digits = 0;
+        while(p < length && bytes[p] >= '0' && bytes[p] <= '9'){
+            p++;
+            digits++;
+        }
+        if(digits == 0){
+            throw unexpected(begin);
+        }
+        if(digits > 1 && bytes[p - digits] == '0'){
+            throw new FormatException("Invalid number at " + begin);
+        }
+        if(p < length && bytes[p] == '.'){
+            p++;
+            int fractionDigits = 0;
+            while(p < length && bytes[p] >= '0' && bytes[p] <= '9'){
+                p++;
+                fractionDigits++;
+            }
+            if(fractionDigits == 0){
+                throw new FormatException("Invalid number at " + begin);
+            }
+        }
+        if(p < length && (bytes[p] == 'e' || bytes[p] == 'E')){
+            p++;
+            if(p < length && (bytes[p] == '+' || bytes[p] == '-')){
+                p++;
+            }
+            int exponentDigits = 0;
+            while(p < length && bytes[p] >= '0' && bytes[p] <= '9'){
+                p++;
+                exponentDigits++;
+            }
+            if(exponentDigits == 0){
+                throw new FormatException("Invalid number at " + begin);
+            }
+        }
+        if(p < length && (bytes[p] == '.' || bytes[p] == 'e' || bytes[p] == 'E' || bytes[p] == '+' || bytes[p] == '-')){
+            throw new FormatException("Invalid number at " + begin);
+        }
+        return p;
+    }
+
+    /**
+     * Builds the value of a node. Objects and lists become views, everything else is decoded.
+     * Must be called while holding the lock on this index.
+     */
+    private SValue value(int node){
+        int p = start[node];
+        try{
+            switch(bytes[p]){
+                case '{':
+                    return new SObject(new LazyMap(this, node));
+                case '[':
+                    return new SList(new LazyList(this, node));
+                case '\"':
+                    decoder.seek(p + 1);
+                    return new SString(decoder.readString());
+                case 't':
+                    return new SBool(true);
+                case 'f':
+                    return new SBool(false);
+                case 'n':
+                    return new SNull();
+                default:
+                    decoder.seek(p + 1);
+                    return new SNumber(decoder.readNumber(bytes[p]));
+            }
+        }catch(IOException e){
+            throw new IllegalStateException("Reading from memory can not fail", e);
+        }catch(FormatException e){
+            throw new IllegalStateException("The document was already checked", e);
+        }
+    }
+
+    private String key(int node){
+        decoder.seek(start[node] + 1);
+        try{
+            return decoder.readKey();
+        }catch(IOException e){
+            throw new IllegalStateException("Reading from memory can not fail", e);
+        }catch(FormatException e){
+            throw new IllegalStateException("The document was already checked", e);
+        }
+    }
+
+    /**
+     * Checks if a key node holds the given key, comparing the raw bytes where it can instead of decoding them.
+     * Must be called while holding the lock on this index.
+     */
+    private boolean keyEquals(int node, String key){
+        int p = start[node] + 1;
+        int len = key.length();
+        for(int i = 0; i < len; i++){
+            char c = key.charAt(i);
+            byte b = bytes[p + i];
+            if(b < 0 || b == '\\' || c >= 0x80){
+                return key.equals(key(node));
+            }
+            if(b != c || b == '\"'){
+                return false;
+            }
+        }
+        return bytes[p + len] == '\"';
+    }
+
+    /**
+     * The members of an object, decoded the first time the object is iterated or changed. After that it behaves like a LinkedHashMap.
+     * <p>
+     * Looking up a single member before that only decodes the member that was asked for, and it is remembered so the same SValue is returned every time.
+     * </p>
+     */
+    private static final class LazyMap extends AbstractMap<String, SValue> {
+        private final StructuralIndex index;
+        private final int node;
+        private volatile Map<String, SValue> map;
+        private Map<String, SValue> lookedUp;
+
+        public LazyMap(StructuralIndex index, int node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        /**
+         * Finds the value node of the last member with the given key, like a map keeps the last of duplicate keys.
+         * @return The node, or -1 if there is no such member
+         */
+        private int find(String key) {
+            int found = -1;
+            int end = index.next[node];
+            int i = node + 1;
+            while(i < end){
+                int value = index.next[i];
+                if(index.keyEquals(i, key)){
+                    found = value;
+                }
+                i = index.next[value];
+            }
+            return found;
+        }
+
+        private Map<String, SValue> map() {
+            Map<String, SValue> m = map;
+            if(m == null){
+                synchronized(index){
+                    m = map;
+                    if(m == null){
+                        m = new LinkedHashMap<String, SValue>();
+                        int end = index.next[node];
+                        int i = node + 1;
+                        while(i < end){
+                            String key = index.key(i);
+                            i = index.next[i];
+                            SValue value = lookedUp == null ? null : lookedUp.get(key);
+                            m.put(key, value != null ? value : index.value(i));
+                            i = index.next[i];
+                        }
+                        map = m;
+                        lookedUp = null;
+                    }
+                }
+            }
+            return m;
+        }
+
+        @Override
+        public Set<Map.Entry<String, SValue>> entrySet() {
+            return map().entrySet();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return map().keySet();
+        }
+
+        @Override
+        public Collection<SValue> values() {
+            return map().values();
+        }
+
+        @Override
+        public int size() {
+            return map().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return index.next[node] == node + 1 || map().isEmpty();
+        }
+
+        @Override
+        public SValue get(Object key) {
+            if(map == null && key instanceof String){
+                synchronized(index){
+                    if(map == null){
+                        SValue value = lookedUp == null ? null : lookedUp.get(key);
+                        if(value == null){
+                            int found = find((String)key);
+                            if(found < 0){
+                                return null;
+                            }
+                            value = index.value(found);
+                            if(lookedUp == null){
+                                lookedUp = new HashMap<String, SValue>();
+                            }
+                            lookedUp.put((String)key, value);
+                        }
+                        return value;
+                    }
+                }
+            }
+            return map().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if(map == null && key instanceof String){
+                synchronized(index){
+                    if(map == null){
+                        return find((String)key) >= 0;
+                    }
+                }
+            }
+            return map().containsKey(key);
+        }
+
+        @Override
+        public SValue put(String key, SValue value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public SValue remove(Object key) {
+            return map().remove(key);
+        }
+
+        @Override
+        public void clear() {
+            map().clear();
+        }
+    }
+
+    /**
+     * The elements of a list, decoded the first time any of them is used. After that it behaves like an ArrayList.
+     */
+    private static final class LazyList extends AbstractList<SValue> {
+        private final StructuralIndex index;
+        private final int node;
+        private volatile List<SValue> list;
+
+        public LazyList(StructuralIndex index, int node) {
+            this.index = index;
+            this.node = node;
+        }
+
+        private List<SValue> list() {
+            List<SValue> l = list;
+            if(l == null){
+                synchronized(index){
+                    l = list;
+                    if(l == null){
+                        l = new ArrayList<SValue>();
+                        int end = index.next[node];
+                        for(int i = node + 1; i < end; i = index.next[i]){
+                            l.add(index.value(i));
+                        }
+                        list = l;
+                    }
+                }
+            }
+            return l;
+        }
+
+        @Override
+        public SValue get(int i) {
+            return list().get(i);
+        }
+
+        @Override
+        public int size() {
+            return list().size();
+        }
+
+        @Override
+        public SValue set(int i, SValue element) {
+            return list().set(i, element);
+        }
+
+        @Override
+        public void add(int i, SValue element) {
+            list().add(i, element);
+            modCount++;
+        }
+
+        @Override
+        public SValue remove(int i) {
+            modCount++;
+            return list().remove(i);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ca.awoo.jabert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An object pool that keeps the released objects of each thread apart, so acquiring and releasing never waits on another thread.
+ * <p>
+ * Each thread keeps at most a set number of released objects of each class, anything released past that is dropped for the garbage collector.
+ * Objects released on one thread are only handed out again on that thread.
+ * New objects are created with the no argument constructor of their class.
+ * </p>
+ */
+public class ThreadLocalObjectPool implements ObjectPool {
+    private final int maxPerClass;
+
+    private final ThreadLocal<Map<Class<?>, ArrayList<Object>>> free = new ThreadLocal<Map<Class<?>, ArrayList<Object>>>() {
+        @Override
+        protected Map<Class<?>, ArrayList<Object>> initialValue() {
+            return new HashMap<Class<?>, ArrayList<Object>>();
+        }
+    };
+
+    /**
+     * Creates a pool keeping up to 256 objects of each class per thread.
+     */
+    public ThreadLocalObjectPool(){
+        this(256);
+    }
+
+    /**
+     * Creates a pool keeping up to the given number of objects of each class per thread.
+     * @param maxPerClass The most released objects of one class each thread keeps
+     */
+    public ThreadLocalObjectPool(int maxPerClass){
+        this.maxPerClass = maxPerClass;
+    }
+
+    public Object acquire(Class<?> clazz) throws SerializationException {
+        ArrayList<Object> objects = free.get().get(clazz);
+        if(objects != null && objects.size() > 0){
+            return objects.remove(objects.size() - 1);
+        }
+        try {
+            return clazz.newInstance();
+        } catch (InstantiationException e) {
+            throw new SerializationException("Could not instantiate class " + clazz.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("Could not access class " + clazz.getName(), e);
+        }
+    }
+
+    public void release(Object o) {
+        if(o == null){
+            return;
+        }
+        Map<Class<?>, ArrayList<Object>> classes = free.get();
+        ArrayList<Object> objects = classes.get(o.getClass());
+        if(objects == null){
+            objects = new ArrayList<Object>();
+            classes.put(o.getClass(), objects);
+        }
+        if(objects.size() < maxPerClass){
+            objects.add(o);
+        }
+    }
+
+    /**
+     * Counts the released objects of a class this thread is keeping.
+     * @param clazz The class
+     * @return The number of objects
+     */
+    public int available(Class<?> clazz){
+        ArrayList<Object> objects = free.get().get(clazz);
+        return objects == null ? 0 : objects.size();
+    }
+}
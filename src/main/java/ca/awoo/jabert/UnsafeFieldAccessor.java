@@ -0,0 +1,147 @@
+package ca.awoo.jabert;
+
+import java.lang.reflect.Field;
+
+/**
+ * Accesses a field directly at its offset in the object with {@code sun.misc.Unsafe}.
+ * <p>
+ * This is the only class that refers to Unsafe, so the warnings javac gives for using an internal proprietary API stay here.
+ * The target is not checked, it must be an instance of the class declaring the field or Unsafe will read or write whatever is at the offset.
+ * </p>
+ */
+final class UnsafeFieldAccessor extends FieldAccessor {
+    private static final sun.misc.Unsafe UNSAFE = (sun.misc.Unsafe)findUnsafe();
+
+    private final Field field;
+    private final Class<?> type;
+    private final long offset;
+
+    UnsafeFieldAccessor(Field field){
+        this.field = field;
+        this.type = field.getType();
+        this.offset = UNSAFE.objectFieldOffset(field);
+    }
+
+    /**
+     * @return Whether Unsafe could be found
+     */
+    static boolean available(){
+        return UNSAFE != null;
+    }
+
+    private static Object findUnsafe(){
+        try{
+            Field f = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return f.get(null);
+        }catch(Throwable e){
+            return null;
+        }
+    }
+
+    Object get(Object target) throws IllegalAccessException {
+        if(!type.isPrimitive()){
+            return UNSAFE.getObject(target, offset);
+        }else if(type == int.class){
+            return UNSAFE.getInt(target, offset);
+        }else if(type == long.class){
+            return UNSAFE.getLong(target, offset);
+        }else if(type == double.class){
+            return UNSAFE.getDouble(target, offset);
+        }else if(type == boolean.class){
+            return UNSAFE.getBoolean(target, offset);
+        }else if(type == float.class){
+            return UNSAFE.getFloat(target, offset);
+        }else if(type == short.class){
+            return UNSAFE.getShort(target, offset);
+        }else if(type == byte.class){
+            return UNSAFE.getByte(target, offset);
+        }else{
+            return UNSAFE.getChar(target, offset);
+        }
+    }
+
+    void set(Object target, Object value) throws IllegalAccessException {
+        if(!type.isPrimitive()){
+            if(value != null && !type.isInstance(value)){
+                throw new IllegalArgumentException("Can not set " + type.getName() + " field " + field.getName() + " to " + value.getClass().getName());
+            }
+            UNSAFE.putObject(target, offset, value);
+        }else if(type == int.class && value instanceof Integer){
+            UNSAFE.putInt(target, offset, ((Integer)value).intValue());
+        }else if(type == long.class && value instanceof Long){
+            UNSAFE.putLong(target, offset, ((Long)value).longValue());
+        }else if(type == double.class && value instanceof Double){
+            UNSAFE.putDouble(target, offset, ((Double)value).doubleValue());
+        }else if(type == boolean.class && value instanceof Boolean){
+            UNSAFE.putBoolean(target, offset, ((Boolean)value).booleanValue());
+        }else{
+            //Widening conversions and errors are left to reflection
+            field.set(target, value);
+        }
+    }
+
+    boolean getBoolean(Object target){
+        return UNSAFE.getBoolean(target, offset);
+    }
+
+    char getChar(Object target){
+        return UNSAFE.getChar(target, offset);
+    }
+
+    byte getByte(Object target){
+        return UNSAFE.getByte(target, offset);
+    }
+
+    short getShort(Object target){
+        return UNSAFE.getShort(target, offset);
+    }
+
+    int getInt(Object target){
+        return UNSAFE.getInt(target, offset);
+    }
+
+    long getLong(Object target){
+        return UNSAFE.getLong(target, offset);
+    }
+
+    float getFloat(Object target){
+        return UNSAFE.getFloat(target, offset);
+    }
+
+    double getDouble(Object target){
+        return UNSAFE.getDouble(target, offset);
+    }
+
+    void setBoolean(Object target, boolean value){
+        UNSAFE.putBoolean(target, offset, value);
+    }
+
+    void setChar(Object target, char value){
+        UNSAFE.putChar(target, offset, value);
+    }
+
+    void setByte(Object target, byte value){
+        UNSAFE.putByte(target, offset, value);
+    }
+
+    void setShort(Object target, short value){
+        UNSAFE.putShort(target, offset, value);
+    }
+
+    void setInt(Object target, int value){
+        UNSAFE.putInt(target, offset, value);
+    }
+
+    void setLong(Object target, long value){
+        UNSAFE.putLong(target, offset, value);
+    }
+
+    void setFloat(Object target, float value){
+        UNSAFE.putFloat(target, offset, value);
+    }
+
+    void setDouble(Object target, double value){
+        UNSAFE.putDouble(target, offset, value);
+    }
+}
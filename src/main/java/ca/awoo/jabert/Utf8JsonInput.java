@@ -0,0 +1,522 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered UTF-8 input used by the byte level JSON parsers.
+ * <p>
+ * Structure, literals and numbers are matched directly against the bytes in a reusable buffer.
+ * Only the contents of strings are decoded to chars, and malformed UTF-8 is replaced with U+FFFD the same way an InputStreamReader would.
+ * </p>
+ * <p>
+ * Inputs are pooled per thread, so {@link #open(InputStream)} must always be paired with {@link #close()}.
+ * </p>
+ */
+final class Utf8JsonInput {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<Utf8JsonInput> pool = new ThreadLocal<Utf8JsonInput>() {
+        @Override
+        protected Utf8JsonInput initialValue() {
+            return new Utf8JsonInput();
+        }
+    };
+
+    private InputStream is;
+    private final byte[] own;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private long base;
+    private char[] chars = new char[64];
+    private final KeyTable keys = new KeyTable();
+    private boolean inUse;
+
+    private Utf8JsonInput(){
+        own = new byte[BUFFER_SIZE];
+        buf = own;
+    }
+
+    /**
+     * Creates an input over bytes that are already in memory. It is not pooled and does not need to be closed.
+     * @param bytes The bytes to read
+     * @param length The number of bytes to read
+     */
+    Utf8JsonInput(byte[] bytes, int length){
+        own = null;
+        buf = bytes;
+        limit = length;
+    }
+
+    /**
+     * Moves to the given position of an input created over bytes in memory.
+     * @param position The position of the next byte to read
+     */
+    void seek(int position){
+        pos = position;
+    }
+
+    /**
+     * Gets an input reading from the given stream, reusing this thread's buffers if they are free.
+     * @param is The stream to read from
+     * @return The input, which must be closed when parsing is done
+     */
+    static Utf8JsonInput open(InputStream is){
+        Utf8JsonInput input = pool.get();
+        if(input.inUse){
+            input = new Utf8JsonInput();
+        }
+        input.is = is;
+        input.buf = input.own;
+        input.pos = 0;
+        input.limit = 0;
+        input.base = 0;
+        input.inUse = true;
+        return input;
+    }
+
+    /**
+     * Gets an input reading straight from part of a byte array, reusing this thread's other buffers if they are free.
+     * {@link #offset()} counts from the start of that part.
+     * @param bytes The array to read
+     * @param offset The first byte to read
+     * @param length The number of bytes to read
+     * @return The input, which must be closed when parsing is done
+     */
+    static Utf8JsonInput open(byte[] bytes, int offset, int length){
+        Utf8JsonInput input = pool.get();
+        if(input.inUse){
+            input = new Utf8JsonInput();
+        }
+        input.is = null;
+        input.buf = bytes;
+        input.pos = offset;
+        input.limit = offset + length;
+        input.base = -offset;
+        input.inUse = true;
+        return input;
+    }
+
+    /**
+     * Releases this input back to the pool. The underlying stream is not closed.
+     */
+    void close(){
+        is = null;
+        buf = own;
+        inUse = false;
+    }
+
+    /**
+     * Checks if the given encoding name refers to UTF-8.
+     * @param encoding The encoding name
+     * @return true if the encoding is UTF-8 or one of its aliases
+     */
+    static boolean isUtf8(String encoding){
+        try{
+            return Charset.forName(encoding).name().equals("UTF-8");
+        }catch(IllegalArgumentException e){
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of bytes consumed so far
+     */
+    long offset(){
+        return base + pos;
+    }
+
+    private boolean fill() throws IOException {
+        if(is == null){
+            return false;
+        }
+        base += limit;
+        pos = 0;
+        limit = 0;
+        int n = 0;
+        while(n == 0){
+            n = is.read(buf, 0, buf.length);
+        }
+        if(n < 0){
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Reads the next byte.
+     * @return The byte as an unsigned value, or -1 at the end of the input
+     */
+    int read() throws IOException {
+        if(pos == limit && !fill()){
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    /**
+     * Steps back over the byte returned by the last successful {@link #read()} or {@link #nextNonSpace()}.
+     */
+    void unread(){
+        pos--;
+    }
+
+    /**
+     * Reads the next byte that is not whitespace.
+     * <p>
+     * Whitespace is the ASCII range of {@link Character#isWhitespace(char)}, to match the reader based parser.
+     * </p>
+     * @return The byte as an unsigned value, or -1 at the end of the input
+     */
+    int nextNonSpace() throws IOException {
+        while(true){
+            while(pos < limit){
+                int c = buf[pos++] & 0xFF;
+                if(!isSpace(c)){
+                    return c;
+                }
+            }
+            if(!fill()){
+                return -1;
+            }
+        }
+    }
+
+    static boolean isSpace(int c){
+        return c == ' ' || (c >= 0x09 && c <= 0x0D) || (c >= 0x1C && c <= 0x1F);
+    }
+
+    /**
+     * Reads the remaining bytes of a literal such as true, false or null.
+     * @param literal The full literal, the first byte of which has already been read
+     * @return true if the following bytes matched the literal
+     */
+    boolean readLiteral(String literal) throws IOException {
+        for(int i = 1; i < literal.length(); i++){
+            if(read() != literal.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a number, the first character of which has already been read.
+     * <p>
+     * Plain integers of up to 18 digits are accumulated into a long as they are read, without building any text.
+     * </p>
+     * @param first The first character of the number
+     * @return The number
+     * @throws NumberFormatException If the characters do not form a number
+     */
+    LazyNumber readNumber(int first) throws IOException, NumberFormatException {
+        int len = 0;
+        chars[len++] = (char)first;
+        boolean negative = first == '-';
+        long acc = negative ? 0 : first - '0';
+        int digits = negative ? 0 : 1;
+        boolean simple = true;
+        while(true){
+            while(pos < limit){
+                int c = buf[pos];
+                if(c >= '0' && c <= '9'){
+                    acc = acc * 10 + (c - '0');
+                    digits++;
+                }else if(c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-'){
+                    simple = false;
+                }else{
+                    return number(len, negative, acc, digits, simple);
+                }
+                if(len == chars.length){
+                    grow(len + 1);
+                }
+                chars[len++] = (char)c;
+                pos++;
+            }
+            if(!fill()){
+                return number(len, negative, acc, digits, simple);
+            }
+        }
+    }
+
+    private LazyNumber number(int len, boolean negative, long acc, int digits, boolean simple){
+        //-0 goes through the text so it stays negative zero, and leading zeros so they are rejected
+        if(simple && digits > 0 && digits <= 18 && (digits == 1 || chars[negative ? 1 : 0] != '0') && !(negative && acc == 0)){
+            return new LazyNumber(negative ? -acc : acc);
+        }
+        return new LazyNumber(new String(chars, 0, len));
+    }
+
+    /**
+     * Reads an object key the same way as {@link #readString()}, but returns the String this thread last saw for the same key if there is one.
+     * <p>
+     * Plain ASCII keys are hashed while they are scanned, so a key that is already in the table costs no allocation at all.
+     * </p>
+     * @return The key
+     */
+    String readKey() throws IOException, FormatException {
+        int len = 0;
+        int h = 0;
+        boolean hashed = true;
+        while(true){
+            if(pos == limit && !fill()){
+                throw new FormatException("Unexpected EOF at " + offset());
+            }
+            byte[] b = buf;
+            int p = pos;
+            int l = limit;
+            if(len + (l - p) > chars.length){
+                grow(len + (l - p));
+            }
+            char[] cs = chars;
+            while(p < l){
+                int c = b[p];
+                if(c == '\"'){
+                    pos = p + 1;
+                    return keys.intern(cs, 0, len, hashed ? h : KeyTable.hash(cs, 0, len));
+                }
+                if(c == '\\' || c < 0){
+                    break;
+                }
+                cs[len++] = (char)c;
+                h = 31 * h + c;
+                p++;
+            }
+            pos = p;
+            if(p == l){
+                continue;
+            }
+            int c = b[pos++] & 0xFF;
+            if(len + 2 > chars.length){
+                grow(len + 2);
+            }
+            hashed = false;
+            if(c == '\\'){
+                len = readEscape(len);
+            }else{
+                len = readMultiByte(c, len);
+            }
+        }
+    }
+
+    /**
+     * Reads and decodes the rest of a string whose opening quote has already been read.
+     * @return The decoded string
+     */
+    String readString() throws IOException, FormatException {
+        int len = 0;
+        while(true){
+            if(pos == limit && !fill()){
+                throw new FormatException("Unexpected EOF at " + offset());
+            }
+            byte[] b = buf;
+            int p = pos;
+            int l = limit;
+            if(len + (l - p) > chars.length){
+                grow(len + (l - p));
+            }
+            char[] cs = chars;
+            while(p < l){
+                int c = b[p];
+                if(c == '\"'){
+                    pos = p + 1;
+                    return new String(cs, 0, len);
+                }
+                if(c == '\\' || c < 0){
+                    break;
+                }
+                cs[len++] = (char)c;
+                p++;
+            }
+            pos = p;
+            if(p == l){
+                continue;
+            }
+            int c = b[pos++] & 0xFF;
+            if(len + 2 > chars.length){
+                grow(len + 2);
+            }
+            if(c == '\\'){
+                len = readEscape(len);
+            }else{
+                len = readMultiByte(c, len);
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a string whose opening quote has already been read, without decoding it.
+     */
+    void skipString() throws IOException, FormatException {
+        while(true){
+            while(pos < limit){
+                byte c = buf[pos++];
+                if(c == '\"'){
+                    return;
+                }
+                if(c == '\\'){
+                    if(read() == -1){
+                        throw new FormatException("Unexpected EOF at " + offset());
+                    }
+                }
+            }
+            if(!fill()){
+                throw new FormatException("Unexpected EOF at " + offset());
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a number, the first character of which has already been read.
+     */
+    void skipNumber() throws IOException {
+        while(true){
+            while(pos < limit){
+                int c = buf[pos];
+                if((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-'){
+                    pos++;
+                }else{
+                    return;
+                }
+            }
+            if(!fill()){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a list or object whose opening bracket has already been read.
+     * <p>
+     * This only counts brackets outside of strings, so the skipped bytes are not validated.
+     * </p>
+     */
+    void skipContainer() throws IOException, FormatException {
+        int depth = 1;
+        while(true){
+            while(pos < limit){
+                byte c = buf[pos++];
+                if(c == '\"'){
+                    skipString();
+                }else if(c == '[' || c == '{'){
+                    depth++;
+                }else if(c == ']' || c == '}'){
+                    if(--depth == 0){
+                        return;
+                    }
+                }
+            }
+            if(!fill()){
+                throw new FormatException("Unexpected EOF at " + offset());
+            }
+        }
+    }
+
+    private int readEscape(int len) throws IOException, FormatException {
+        int next = read();
+        switch(next){
+            case -1:
+                throw new FormatException("Unexpected EOF at " + offset());
+            case '\"':
+                chars[len++] = '\"';
+                break;
+            case '\\':
+                chars[len++] = '\\';
+                break;
+            case '/':
+                chars[len++] = '/';
+                break;
+            case 'b':
+                chars[len++] = '\b';
+                break;
+            case 'f':
+                chars[len++] = '\f';
+                break;
+            case 'n':
+                chars[len++] = '\n';
+                break;
+            case 'r':
+                chars[len++] = '\r';
+                break;
+            case 't':
+                chars[len++] = '\t';
+                break;
+            case 'u':
+                int value = 0;
+                for(int i = 0; i < 4; i++){
+                    next = read();
+                    if(next == -1){
+                        throw new FormatException("Unexpected EOF at " + offset());
+                    }
+                    int digit = Character.digit((char)next, 16);
+                    if(digit < 0){
+                        throw new FormatException("Invalid unicode escape at " + offset());
+                    }
+                    value = (value << 4) | digit;
+                }
+                chars[len++] = (char)value;
+                break;
+            default:
+                throw new FormatException("Invalid escape sequence: \\" + (char)next + " at " + offset());
+        }
+        return len;
+    }
+
+    private int readMultiByte(int first, int len) throws IOException, FormatException {
+        int needed;
+        int cp;
+        int min;
+        if((first & 0xE0) == 0xC0){
+            needed = 1;
+            cp = first & 0x1F;
+            min = 0x80;
+        }else if((first & 0xF0) == 0xE0){
+            needed = 2;
+            cp = first & 0x0F;
+            min = 0x800;
+        }else if((first & 0xF8) == 0xF0){
+            needed = 3;
+            cp = first & 0x07;
+            min = 0x10000;
+        }else{
+            chars[len++] = '\uFFFD';
+            return len;
+        }
+        for(int i = 0; i < needed; i++){
+            int next = read();
+            if(next == -1){
+                throw new FormatException("Unexpected EOF at " + offset());
+            }
+            if((next & 0xC0) != 0x80){
+                //Not a continuation byte, let the string loop look at it again
+                unread();
+                chars[len++] = '\uFFFD';
+                return len;
+            }
+            cp = (cp << 6) | (next & 0x3F);
+        }
+        if(cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF)){
+            chars[len++] = '\uFFFD';
+        }else if(cp >= 0x10000){
+            cp -= 0x10000;
+            chars[len++] = (char)((cp >>> 10) + 0xD800);
+            chars[len++] = (char)((cp & 0x3FF) + 0xDC00);
+        }else{
+            chars[len++] = (char)cp;
+        }
+        return len;
+    }
+
+    private void grow(int needed){
+        int size = chars.length * 2;
+        if(size < needed){
+            size = needed;
+        }
+        char[] bigger = new char[size];
+        System.arraycopy(chars, 0, bigger, 0, chars.length);
+        chars = bigger;
+    }
+}
@@ -0,0 +1,339 @@
+package ca.awoo.jabert;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * A pull parser for UTF-8 json that reads straight from the stream.
+ * <p>
+ * Only one value is read from the stream. The reader keeps a stack of the lists and objects it is inside of,
+ * so memory use depends on the nesting depth of the document and not on its size.
+ * </p>
+ */
+final class Utf8JsonReader implements SValueReader {
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_LIST = 2;
+    private static final int NONEMPTY_LIST = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private Utf8JsonInput in;
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private Token peeked;
+    private int peekedChar;
+
+    Utf8JsonReader(InputStream is){
+        this.in = Utf8JsonInput.open(is);
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    private void push(int scope){
+        if(depth == stack.length){
+            int[] bigger = new int[depth * 2];
+            System.arraycopy(stack, 0, bigger, 0, depth);
+            stack = bigger;
+        }
+        stack[depth++] = scope;
+    }
+
+    private FormatException unexpected(int c){
+        if(c == -1){
+            return new FormatException("Unexpected EOF at " + in.offset());
+        }
+        return new FormatException("Unexpected character: " + (char)c + " at " + in.offset());
+    }
+
+    public Token peek() throws FormatException {
+        if(peeked != null){
+            return peeked;
+        }
+        if(in == null){
+            throw new FormatException("Reader is closed");
+        }
+        try{
+            peeked = doPeek();
+            return peeked;
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    private Token doPeek() throws IOException, FormatException {
+        int scope = stack[depth - 1];
+        int c;
+        switch(scope){
+            case EMPTY_LIST:
+                stack[depth - 1] = NONEMPTY_LIST;
+                break;
+            case NONEMPTY_LIST:
+                c = in.nextNonSpace();
+                if(c == ']'){
+                    depth--;
+                    return Token.END_LIST;
+                }else if(c != ','){
+                    throw new FormatException("Expected ',' or ']', got " + (char)c + " at " + in.offset());
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[depth - 1] = DANGLING_NAME;
+                c = in.nextNonSpace();
+                if(c == '}'){
+                    depth--;
+                    return Token.END_OBJECT;
+                }
+                if(scope == NONEMPTY_OBJECT){
+                    if(c != ','){
+                        throw new FormatException("Expected ',' or '}', got " + (char)c + " at " + in.offset());
+                    }
+                    c = in.nextNonSpace();
+                }
+                if(c != '\"'){
+                    throw new FormatException("Expected '\"', got " + (char)c + " at " + in.offset());
+                }
+                return Token.NAME;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                c = in.nextNonSpace();
+                if(c != ':'){
+                    throw new FormatException("Expected ':', got " + (char)c + " at " + in.offset());
+                }
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:
+                return Token.END_DOCUMENT;
+        }
+        c = in.nextNonSpace();
+        switch(c){
+            case '\"':
+                return Token.STRING;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_LIST;
+            case 't':
+                if(!in.readLiteral("true")){
+                    throw new FormatException("Invalid value: true at " + in.offset());
+                }
+                peekedChar = 't';
+                return Token.BOOLEAN;
+            case 'f':
+                if(!in.readLiteral("false")){
+                    throw new FormatException("Invalid value: false at " + in.offset());
+                }
+                peekedChar = 'f';
+                return Token.BOOLEAN;
+            case 'n':
+                if(!in.readLiteral("null")){
+                    throw new FormatException("Invalid value: null at " + in.offset());
+                }
+                return Token.NULL;
+            case ']':
+                if(scope == EMPTY_LIST){
+                    depth--;
+                    return Token.END_LIST;
+                }
+                throw unexpected(c);
+            default:
+                if((c >= '0' && c <= '9') || c == '-'){
+                    peekedChar = c;
+                    return Token.NUMBER;
+                }
+                throw unexpected(c);
+        }
+    }
+
+    private void expect(Token token) throws FormatException {
+        Token next = peek();
+        if(next != token){
+            throw new FormatException("Expected " + token + " but was " + next + " at " + in.offset());
+        }
+        peeked = null;
+    }
+
+    public Token nextToken() throws FormatException {
+        Token token = peek();
+        switch(token){
+            case BEGIN_OBJECT:
+                beginObject();
+                break;
+            case BEGIN_LIST:
+                beginList();
+                break;
+            case END_OBJECT:
+            case END_LIST:
+            case BOOLEAN:
+            case NULL:
+                peeked = null;
+                break;
+            case NAME:
+            case STRING:
+                try{
+                    in.skipString();
+                }catch(IOException e){
+                    throw new FormatException("IOException", e);
+                }
+                peeked = null;
+                break;
+            case NUMBER:
+                try{
+                    in.skipNumber();
+                }catch(IOException e){
+                    throw new FormatException("IOException", e);
+                }
+                peeked = null;
+                break;
+            case END_DOCUMENT:
+                break;
+        }
+        return token;
+    }
+
+    public boolean hasNext() throws FormatException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_LIST && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws FormatException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws FormatException {
+        expect(Token.END_OBJECT);
+    }
+
+    public void beginList() throws FormatException {
+        expect(Token.BEGIN_LIST);
+        push(EMPTY_LIST);
+    }
+
+    public void endList() throws FormatException {
+        expect(Token.END_LIST);
+    }
+
+    public String nextName() throws FormatException {
+        expect(Token.NAME);
+        try{
+            return in.readKey();
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public String nextString() throws FormatException {
+        expect(Token.STRING);
+        try{
+            return in.readString();
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public Number nextNumber() throws FormatException {
+        expect(Token.NUMBER);
+        try{
+            return in.readNumber(peekedChar);
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }catch(NumberFormatException e){
+            throw new FormatException("Invalid number at " + in.offset(), e);
+        }
+    }
+
+    public long nextLong() throws FormatException {
+        return nextNumber().longValue();
+    }
+
+    public int nextInt() throws FormatException {
+        return nextNumber().intValue();
+    }
+
+    public double nextDouble() throws FormatException {
+        return nextNumber().doubleValue();
+    }
+
+    public boolean nextBoolean() throws FormatException {
+        expect(Token.BOOLEAN);
+        return peekedChar == 't';
+    }
+
+    public void nextNull() throws FormatException {
+        expect(Token.NULL);
+    }
+
+    public SValue nextValue() throws FormatException {
+        switch(peek()){
+            case STRING:
+                return new SString(nextString());
+            case NUMBER:
+                return new SNumber(nextNumber());
+            case BOOLEAN:
+                return new SBool(nextBoolean());
+            case NULL:
+                nextNull();
+                return new SNull();
+            case BEGIN_LIST:
+                SList l = new SList();
+                beginList();
+                while(hasNext()){
+                    l.add(nextValue());
+                }
+                endList();
+                return l;
+            case BEGIN_OBJECT:
+                SObject o = new SObject();
+                beginObject();
+                while(hasNext()){
+                    String name = nextName();
+                    o.put(name, nextValue());
+                }
+                endObject();
+                return o;
+            default:
+                throw new FormatException("Expected a value but was " + peek() + " at " + in.offset());
+        }
+    }
+
+    public void skipValue() throws FormatException {
+        Token token = peek();
+        try{
+            switch(token){
+                case NAME:
+                    in.skipString();
+                    peeked = null;
+                    skipValue();
+                    break;
+                case BEGIN_OBJECT:
+                case BEGIN_LIST:
+                    in.skipContainer();
+                    peeked = null;
+                    break;
+                case STRING:
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    nextToken();
+                    break;
+                default:
+                    throw new FormatException("Expected a value but was " + token + " at " + in.offset());
+            }
+        }catch(IOException e){
+            throw new FormatException("IOException", e);
+        }
+    }
+
+    public void close() {
+        if(in != null){
+            in.close();
+            in = null;
+        }
+    }
+}
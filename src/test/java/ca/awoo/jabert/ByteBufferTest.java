@@ -0,0 +1,113 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class ByteBufferTest {
+
+    private void consecutive(Format format, ByteBuffer buffer) throws Exception {
+        List<SValue> values = FormatTest.everyValue(2);
+        for(SValue value : values){
+            assertTrue(format.emit(value, buffer));
+            if(format instanceof FastJsonFormat){
+                //Numbers need something after them to end
+                buffer.put((byte)' ');
+            }
+        }
+        buffer.flip();
+        for(SValue value : values){
+            assertEquals(value, format.parse(buffer));
+        }
+        if(format instanceof BinaryFormat){
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void heapBuffers() throws Exception {
+        consecutive(new FastJsonFormat("UTF-8"), ByteBuffer.allocate(64 * 1024));
+        consecutive(new BinaryFormat(), ByteBuffer.allocate(64 * 1024));
+        //A buffer that does not start at the beginning of its array
+        ByteBuffer slice = ByteBuffer.allocate(64 * 1024);
+        slice.position(100);
+        consecutive(new FastJsonFormat("UTF-8"), slice.slice());
+        consecutive(new BinaryFormat(), slice.slice());
+    }
+
+    @Test
+    public void directBuffers() throws Exception {
+        consecutive(new FastJsonFormat("UTF-8"), ByteBuffer.allocateDirect(64 * 1024));
+        consecutive(new BinaryFormat(), ByteBuffer.allocateDirect(64 * 1024));
+    }
+
+    @Test
+    public void wholeBuffer() throws Exception {
+        SObject payload = SpeedTest.payload(20 * 1024);
+        Format[] formats = { new JsonFormat("UTF-8"), new FastJsonFormat("UTF-16"), new FastJsonFormat("UTF-8"), new BinaryFormat() };
+        for(Format format : formats){
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            assertTrue(format.emit(payload, buffer));
+            buffer.flip();
+            assertEquals(payload, format.parse(buffer));
+        }
+    }
+
+    @Test
+    public void overflow() throws Exception {
+        SObject payload = SpeedTest.payload(20 * 1024);
+        Format[] formats = { new JsonFormat("UTF-8"), new FastJsonFormat("UTF-8"), new BinaryFormat() };
+        for(Format format : formats){
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            buffer.position(10);
+            assertFalse(format.emit(payload, buffer));
+            assertEquals(10, buffer.position());
+            assertTrue(format.emit(new SString("fits"), buffer));
+            buffer.flip();
+            buffer.position(10);
+            assertEquals(new SString("fits"), format.parse(buffer));
+        }
+    }
+
+    @Test(expected = FormatException.class)
+    public void truncated() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new BinaryFormat().emit(new SString("hello"), buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        new BinaryFormat().parse(buffer);
+    }
+
+    @Test
+    public void mappedFile() throws Exception {
+        SObject payload = SpeedTest.payload(20 * 1024);
+        File file = File.createTempFile("jabert", ".json");
+        try{
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try{
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, 256 * 1024);
+                assertTrue(new FastJsonFormat("UTF-8").emit(payload, out));
+                int length = out.position();
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                assertEquals(payload, new FastJsonFormat("UTF-8").parse(in));
+                assertEquals(length, in.position());
+            }finally{
+                raf.close();
+            }
+        }finally{
+            file.delete();
+        }
+    }
+}
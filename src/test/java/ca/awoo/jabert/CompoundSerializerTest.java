@@ -0,0 +1,134 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ca.awoo.fwoabl.function.Predicate;
+import ca.awoo.jabert.SValue.*;
+
+public class CompoundSerializerTest {
+
+    /**
+     * Serializes everything to the same string, so tests can tell which serializer was picked.
+     */
+    private static class Named implements Serializer {
+        private final String name;
+
+        Named(String name){
+            this.name = name;
+        }
+
+        public SValue serialize(Object t) {
+            return new SString(name);
+        }
+
+        public Object deserialize(SValue sv, Class<? extends Object> clazz) {
+            return name;
+        }
+    }
+
+    private static class Counting implements Predicate<Class<?>> {
+        final AtomicInteger calls = new AtomicInteger();
+        private final Class<?> match;
+
+        Counting(Class<?> match){
+            this.match = match;
+        }
+
+        public boolean invoke(Class<?> t) {
+            calls.incrementAndGet();
+            return match.isAssignableFrom(t);
+        }
+    }
+
+    @Test
+    public void firstMatchingOptionWins() throws Exception {
+        CompoundSerializer cs = new CompoundSerializer();
+        cs.addOption(new Counting(Integer.class), new Named("integer"));
+        cs.addOption(new Counting(Number.class), new Named("number"));
+        cs.addOption(new Counting(Object.class), new Named("object"));
+        assertEquals(new SString("integer"), cs.serialize(1));
+        assertEquals(new SString("number"), cs.serialize(1L));
+        assertEquals(new SString("object"), cs.serialize("one"));
+    }
+
+    @Test
+    public void predicatesRunOncePerClass() throws Exception {
+        CompoundSerializer cs = new CompoundSerializer();
+        Counting strings = new Counting(String.class);
+        Counting numbers = new Counting(Number.class);
+        cs.addOption(strings, new Named("string"));
+        cs.addOption(numbers, new Named("number"));
+        for(int i = 0; i < 100; i++){
+            cs.serialize("s" + i);
+            cs.serialize(i);
+            cs.deserialize(new SNumber(i), int.class);
+        }
+        //Integer and int are the same class once boxed
+        assertEquals(2, strings.calls.get());
+        assertEquals(1, numbers.calls.get());
+    }
+
+    @Test
+    public void addingAnOptionForgetsCachedClasses() throws Exception {
+        CompoundSerializer cs = new CompoundSerializer();
+        cs.setDefaultSerializer(new Named("default"));
+        assertEquals(new SString("default"), cs.serialize("s"));
+        cs.addOption(new Counting(String.class), new Named("string"));
+        assertEquals(new SString("string"), cs.serialize("s"));
+        Named other = new Named("other");
+        cs.setDefaultSerializer(other);
+        assertSame(other, cs.serializerFor(Thread.class));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void noMatchWithoutDefaultFails() throws Exception {
+        new CompoundSerializer().serialize("nothing");
+    }
+
+    @Test
+    public void registeringWhileSerializing() throws Exception {
+        final CompoundSerializer cs = new CompoundSerializer();
+        cs.setDefaultSerializer(new Named("default"));
+        final AtomicInteger wrong = new AtomicInteger();
+        final int threads = 4;
+        Thread[] workers = new Thread[threads];
+        final Object lock = new Object();
+        final boolean[] added = new boolean[1];
+        for(int i = 0; i < threads; i++){
+            workers[i] = new Thread(){
+                public void run(){
+                    try{
+                        for(int j = 0; j < 20000; j++){
+                            boolean after;
+                            synchronized(lock){
+                                after = added[0];
+                            }
+                            SValue sv = cs.serialize(j);
+                            if(after && !sv.equals(new SString("number"))){
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    }catch(SerializationException e){
+                        wrong.incrementAndGet();
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        Thread.sleep(5);
+        cs.addOption(new Counting(Number.class), new Named("number"));
+        synchronized(lock){
+            added[0] = true;
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+        assertEquals(0, wrong.get());
+        assertEquals(new SString("number"), cs.serialize(5));
+    }
+}
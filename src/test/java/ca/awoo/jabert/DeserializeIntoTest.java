@@ -0,0 +1,257 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.awoo.fwoabl.Optional;
+import ca.awoo.jabert.SValue.*;
+
+public class DeserializeIntoTest {
+
+    public static class Position {
+        double x;
+        double y;
+    }
+
+    public static class Entity {
+        int id;
+        String name;
+        Position position;
+        Optional<String> tag;
+        List<Position> path;
+        Map<String, Integer> stats;
+    }
+
+    public static class Counter implements Serializable {
+        int value;
+        int reads;
+
+        public SValue serialize() throws SerializationException {
+            return new SNumber((long)value);
+        }
+
+        public void deserialize(SValue sv) throws SerializationException {
+            value = ((SNumber)sv).intValue();
+            reads++;
+        }
+    }
+
+    private static Position position(double x, double y){
+        Position p = new Position();
+        p.x = x;
+        p.y = y;
+        return p;
+    }
+
+    private static Entity entity(int id, int pathLength){
+        Entity e = new Entity();
+        e.id = id;
+        e.name = "entity " + id;
+        e.position = position(id, -id);
+        e.tag = id % 2 == 0 ? new Optional.Some<String>("even") : new Optional.None<String>();
+        e.path = new ArrayList<Position>();
+        for(int i = 0; i < pathLength; i++){
+            e.path.add(position(i, i * 2));
+        }
+        e.stats = new HashMap<String, Integer>();
+        e.stats.put("hp", id * 10);
+        return e;
+    }
+
+    private static void assertSameState(Serializer serializer, Entity expected, Object actual) throws Exception {
+        assertEquals(serializer.serialize(expected), serializer.serialize(actual));
+    }
+
+    @Test
+    public void overwritesFieldsAndReusesCollections() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Entity target = entity(1, 3);
+        Position position = target.position;
+        List<Position> path = target.path;
+        Map<String, Integer> stats = target.stats;
+
+        Entity next = entity(2, 5);
+        Object read = Serializers.deserializeInto(serializer, serializer.serialize(next), target);
+        assertSame(target, read);
+        assertSameState(serializer, next, target);
+        assertSame(position, target.position);
+        assertSame(path, target.path);
+        assertSame(stats, target.stats);
+        assertEquals(5, path.size());
+    }
+
+    @Test
+    public void streamingReadsInPlace() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Format format = new FastJsonFormat("UTF-8");
+        Entity target = entity(3, 2);
+        List<Position> path = target.path;
+        for(int i = 0; i < 4; i++){
+            Entity next = entity(i, i);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Serializers.emit(serializer, next, format, out);
+            assertSame(target, Serializers.parseInto(serializer, target, format, new ByteArrayInputStream(out.toByteArray())));
+            assertSameState(serializer, next, target);
+            assertSame(path, target.path);
+        }
+    }
+
+    @Test
+    public void replacesWhatCanNotBeReused() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Entity target = entity(4, 1);
+        List<Position> fixed = Collections.unmodifiableList(Arrays.asList(position(0, 0)));
+        target.path = fixed;
+        target.stats = null;
+        Entity next = entity(5, 2);
+        next.position = null;
+        Serializers.deserializeInto(serializer, serializer.serialize(next), target);
+        assertSameState(serializer, next, target);
+        assertNotSame(fixed, target.path);
+        assertNull(target.position);
+        assertNull(Serializers.deserializeInto(serializer, new SNull(), target));
+    }
+
+    @Test
+    public void pooledObjectsAreReused() throws Exception {
+        ThreadLocalObjectPool pool = new ThreadLocalObjectPool();
+        Serializer serializer = Serializers.defaultSerializer(pool);
+        Entity target = (Entity)serializer.deserialize(serializer.serialize(entity(6, 3)), Entity.class);
+        List<Position> before = new ArrayList<Position>(target.path);
+
+        //The old path points go back to the pool and come out again as the new ones
+        Entity next = entity(7, 3);
+        Serializers.deserializeInto(serializer, serializer.serialize(next), target);
+        assertSameState(serializer, next, target);
+        for(int i = 0; i < 3; i++){
+            assertTrue(before.contains(target.path.get(i)));
+        }
+        assertEquals(0, pool.available(Position.class));
+
+        //A shorter path leaves the rest in the pool
+        next = entity(8, 1);
+        Serializers.deserializeInto(serializer, serializer.serialize(next), target);
+        assertSameState(serializer, next, target);
+        assertEquals(2, pool.available(Position.class));
+
+        //Released entities are handed out again and read in place
+        pool.release(target);
+        Entity again = (Entity)serializer.deserialize(serializer.serialize(entity(9, 4)), Entity.class);
+        assertSame(target, again);
+        assertSameState(serializer, entity(9, 4), again);
+    }
+
+    @Test
+    public void sharedObjectsAreNotReleased() throws Exception {
+        ThreadLocalObjectPool pool = new ThreadLocalObjectPool();
+        Serializer serializer = Serializers.defaultSerializer(pool);
+        Entity target = entity(10, 3);
+        target.position = target.path.get(1);
+        target.path.add(target.path.get(0));
+
+        Entity next = entity(11, 4);
+        Serializers.deserializeInto(serializer, serializer.serialize(next), target);
+        assertSameState(serializer, next, target);
+        Map<Object, Object> seen = new IdentityHashMap<Object, Object>();
+        seen.put(target.position, target.position);
+        for(Position p : target.path){
+            assertNull(seen.put(p, p));
+        }
+        assertEquals(0, pool.available(Position.class));
+    }
+
+    @Test
+    public void onlyPooledClassesAreReleased() throws Exception {
+        ThreadLocalObjectPool pool = new ThreadLocalObjectPool();
+        Serializer serializer = Serializers.defaultSerializer(pool);
+        Entity target = entity(12, 0);
+        target.stats.put("mp", 5);
+        Serializers.deserializeInto(serializer, serializer.serialize(entity(13, 0)), target);
+        assertEquals(0, pool.available(Integer.class));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void poolsMustGiveTheClassAskedFor() throws Exception {
+        ObjectPool wrong = new ObjectPool() {
+            public Object acquire(Class<?> clazz) {
+                return "not a Position";
+            }
+
+            public void release(Object o) {
+            }
+        };
+        Serializer serializer = Serializers.defaultSerializer(wrong);
+        serializer.deserialize(serializer.serialize(position(1, 2)), Position.class);
+    }
+
+    @Test
+    public void poolsKeepABoundedNumberPerThread() throws Exception {
+        final ThreadLocalObjectPool pool = new ThreadLocalObjectPool(2);
+        for(int i = 0; i < 5; i++){
+            pool.release(new Position());
+        }
+        assertEquals(2, pool.available(Position.class));
+        final int[] seen = new int[1];
+        Thread other = new Thread(){
+            public void run(){
+                seen[0] = pool.available(Position.class);
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(0, seen[0]);
+        Position p = (Position)pool.acquire(Position.class);
+        assertEquals(1, pool.available(Position.class));
+        pool.acquire(Position.class);
+        assertNotSame(p, pool.acquire(Position.class));
+        assertEquals(0, pool.available(Position.class));
+    }
+
+    @Test
+    public void serializablesReadInPlace() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Counter counter = new Counter();
+        assertSame(counter, Serializers.deserializeInto(serializer, new SNumber(5L), counter));
+        assertSame(counter, Serializers.deserializeInto(serializer, new SNumber(6L), counter));
+        assertEquals(6, counter.value);
+        assertEquals(2, counter.reads);
+
+        ThreadLocalObjectPool pool = new ThreadLocalObjectPool();
+        Serializer pooled = Serializers.defaultSerializer(pool);
+        pool.release(counter);
+        assertSame(counter, pooled.deserialize(new SNumber(7L), Counter.class));
+        assertEquals(3, counter.reads);
+    }
+
+    @Test
+    public void serializersThatCanNotReadInPlaceCreateObjects() throws Exception {
+        Serializer plain = new Serializer() {
+            public SValue serialize(Object t) throws SerializationException {
+                return new SString(t.toString());
+            }
+
+            public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
+                return new StringBuilder(((SString)sv).value);
+            }
+        };
+        StringBuilder target = new StringBuilder("old");
+        Object read = Serializers.deserializeInto(plain, new SString("new"), target);
+        assertNotSame(target, read);
+        assertEquals("new", read.toString());
+    }
+}
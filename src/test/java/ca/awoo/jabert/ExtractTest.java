@@ -0,0 +1,91 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static ca.awoo.jabert.TestSupport.emit;
+import static ca.awoo.jabert.TestSupport.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class ExtractTest {
+
+    private static final String[] PATHS = { "$.type", "$.room.id", "$.members[2][1]", "$['display name']", "$.nothing", "$.missing", "$.room", "$.members[7]", "$.type.length", "$" };
+
+    private static SValue[] expected() {
+        SObject message = message(0);
+        SObject room = (SObject)message.get("room");
+        return new SValue[] { new SString("chat"), room.get("id"), new SNumber(2), new SBool(true), new SNull(), null, room, null, null, message };
+    }
+
+    @Test
+    public void everyFormat() throws Exception {
+        Format[] formats = { new FastJsonFormat("UTF-8"), new FastJsonFormat("UTF-16"), new JsonFormat("UTF-8"), new BinaryFormat() };
+        for(Format format : formats){
+            assertArrayEquals(expected(), format.extract(new ByteArrayInputStream(emit(format, message(0))), PATHS));
+        }
+    }
+
+    @Test
+    public void skippedValuesAreNotParsed() throws Exception {
+        String json = "{\"body\": {\"deep\": [1e, tru, {]}}, \"type\" : \"chat\", \"room\": {\"x\": \"\\u00e9\\\"}\", \"id\": 7}}";
+        SValue[] values = new FastJsonFormat("UTF-8").extract(new ByteArrayInputStream(json.getBytes("UTF-8")), "$.type", "$.room.id");
+        assertArrayEquals(new SValue[] { new SString("chat"), new SNumber(7) }, values);
+    }
+
+    @Test
+    public void readsNothingPastTheValue() throws Exception {
+        final byte[] start = "{\"type\":\"chat\",\"body\":{\"a\":[1,\"]\"]}} ".getBytes("UTF-8");
+        //Fails if anything past the first value is read
+        InputStream is = new InputStream() {
+            int pos = 0;
+
+            @Override
+            public int read() throws IOException {
+                if(pos == start.length){
+                    throw new IOException("Read too far");
+                }
+                return start[pos++];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(len == 0){
+                    return 0;
+                }
+                b[off] = (byte)read();
+                return 1;
+            }
+        };
+        SValue[] values = new FastJsonFormat("UTF-8").extract(is, "$.type");
+        assertEquals(new SString("chat"), values[0]);
+    }
+
+    @Test
+    public void lastDuplicateKeyWins() throws Exception {
+        String json = "{\"a\":1,\"o\":{\"x\":1,\"y\":2},\"a\":2,\"b\":3,\"o\":{\"x\":3}}";
+        String[] paths = { "$.a", "$.b", "$.o.x", "$.o.y" };
+        SValue[] expected = { new SNumber(2), new SNumber(3), new SNumber(3), null };
+        Format[] formats = { new FastJsonFormat("UTF-8"), new FastJsonFormat("UTF-16"), new JsonFormat("UTF-8") };
+        String[] encodings = { "UTF-8", "UTF-16", "UTF-8" };
+        for(int i = 0; i < formats.length; i++){
+            byte[] bytes = json.getBytes(encodings[i]);
+            assertArrayEquals(expected, formats[i].extract(new ByteArrayInputStream(bytes), paths));
+            SObject parsed = (SObject)formats[i].parse(new ByteArrayInputStream(bytes));
+            assertEquals(parsed.get("a"), expected[0]);
+            assertEquals(((SObject)parsed.get("o")).get("x"), expected[2]);
+        }
+        assertNull(new FastJsonFormat("UTF-8").extract(new ByteArrayInputStream("[1]".getBytes("UTF-8")), "$.a")[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPath() throws Exception {
+        new FastJsonFormat("UTF-8").extract(new ByteArrayInputStream("{}".getBytes("UTF-8")), "$.a[x]");
+    }
+}
@@ -1,9 +1,14 @@
 package ca.awoo.jabert;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
 import java.io.ByteArrayInputStream;
 
 import org.junit.Test;
 
+import ca.awoo.jabert.SValue.*;
+
 public class FastJsonTest {
     @Test
     public void objectWithSpaces() throws Exception{
@@ -40,4 +45,58 @@ public class FastJsonTest {
         SValue sv = format.parse(in);
         System.out.println(sv);
     }
+
+    @Test
+    public void utf8MatchesReader() throws Exception{
+        String what = "{\"caf\u00e9\" : [\"\u00fc\u20ac\ud83d\ude00\", \"\\u00e9\\n\", -1.5e3, true, false, null]}";
+        SValue fast = new FastJsonFormat("UTF-8").parse(new ByteArrayInputStream(what.getBytes("UTF-8")));
+        SValue reader = new FastJsonFormat("UTF-16").parse(new ByteArrayInputStream(what.getBytes("UTF-16")));
+        assertEquals(reader, fast);
+        SList list = (SList)((SObject)fast).get("caf\u00e9");
+        assertEquals(new SString("\u00fc\u20ac\ud83d\ude00"), list.get(0));
+        assertEquals(new SString("\u00e9\n"), list.get(1));
+    }
+
+    @Test
+    public void utf8AcrossBuffers() throws Exception{
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 10000; i++){
+            sb.append(i % 3 == 0 ? "\u00e9" : i % 3 == 1 ? "\u20ac" : "\ud83d\ude00");
+        }
+        String what = "[\"" + sb + "\", \"" + sb + "\"]";
+        SValue sv = new FastJsonFormat("UTF-8").parse(new ByteArrayInputStream(what.getBytes("UTF-8")));
+        assertEquals(new SList(new SString(sb.toString()), new SString(sb.toString())), sv);
+    }
+
+    private static String firstKey(SValue sv){
+        return ((SObject)sv).value.keySet().iterator().next();
+    }
+
+    @Test
+    public void keysAreShared() throws Exception {
+        String what = "[{\"user\":1,\"caf\u00e9\":2},{\"user\":\"user\",\"caf\u00e9\":3}]";
+        Format[] formats = { new FastJsonFormat("UTF-8"), new FastJsonFormat("UTF-16"), new JsonFormat("UTF-8") };
+        String[] encodings = { "UTF-8", "UTF-16", "UTF-8" };
+        for(int i = 0; i < formats.length; i++){
+            SList list = (SList)formats[i].parse(new ByteArrayInputStream(what.getBytes(encodings[i])));
+            assertSame(firstKey(list.get(0)), firstKey(list.get(1)));
+            assertEquals(new SNumber(3), ((SObject)list.get(1)).get("caf\u00e9"));
+            SList again = (SList)formats[i].parse(new ByteArrayInputStream(what.getBytes(encodings[i])));
+            assertSame(firstKey(list.get(0)), firstKey(again.get(0)));
+            assertEquals(list, again);
+        }
+    }
+
+    @Test
+    public void readerNamesAreShared() throws Exception {
+        SValueReader reader = new FastJsonFormat("UTF-8").reader(new ByteArrayInputStream("[{\"id\":1},{\"id\":2}]".getBytes("UTF-8")));
+        reader.beginList();
+        reader.beginObject();
+        String first = reader.nextName();
+        reader.skipValue();
+        reader.endObject();
+        reader.beginObject();
+        assertSame(first, reader.nextName());
+        reader.close();
+    }
 }
@@ -0,0 +1,94 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class FeedParserTest {
+
+    private static List<SValue> feedInChunks(byte[] bytes, int chunkSize) throws Exception {
+        FeedParser parser = new FeedParser();
+        List<SValue> values = new ArrayList<SValue>();
+        for(int i = 0; i < bytes.length; i += chunkSize){
+            values.addAll(parser.feed(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i))));
+        }
+        values.addAll(parser.finish());
+        return values;
+    }
+
+    @Test
+    public void anySplit() throws Exception {
+        List<SValue> expected = FormatTest.everyValue(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameWriter writer = new FrameWriter(new FastJsonFormat("UTF-8"), out, Framing.NEWLINE);
+        for(SValue value : expected){
+            writer.write(value);
+        }
+        byte[] bytes = out.toByteArray();
+        int[] chunkSizes = { 1, 2, 7, 100, bytes.length };
+        for(int chunkSize : chunkSizes){
+            assertEquals(expected, feedInChunks(bytes, chunkSize));
+        }
+    }
+
+    @Test
+    public void splitStringsAndNumbers() throws Exception {
+        byte[] bytes = "{\"a\\\"}\":\"\u263a[\"} 12345 \"x\\\\\"[-1.5e3]true\t{}".getBytes("UTF-8");
+        SObject object = new SObject();
+        object.put("a\"}", new SString("\u263a["));
+        List<SValue> expected = new ArrayList<SValue>();
+        expected.add(object);
+        expected.add(new SNumber(12345));
+        expected.add(new SString("x\\"));
+        expected.add(new SList(new SNumber(-1.5e3)));
+        expected.add(new SBool(true));
+        expected.add(new SObject());
+        for(int chunkSize = 1; chunkSize <= bytes.length; chunkSize++){
+            assertEquals(expected, feedInChunks(bytes, chunkSize));
+        }
+    }
+
+    @Test
+    public void valuesAsTheyComplete() throws Exception {
+        FeedParser parser = new FeedParser();
+        assertTrue(parser.feed(ByteBuffer.wrap("[1, {\"a\"".getBytes("UTF-8"))).isEmpty());
+        assertTrue(parser.feed(ByteBuffer.wrap(": 2}".getBytes("UTF-8"))).isEmpty());
+        List<SValue> values = parser.feed(ByteBuffer.wrap("]\n42".getBytes("UTF-8")));
+        assertEquals(1, values.size());
+        assertEquals(new SNumber(42), parser.feed(ByteBuffer.wrap("\n".getBytes("UTF-8"))).get(0));
+        assertTrue(parser.finish().isEmpty());
+    }
+
+    @Test
+    public void largeValue() throws Exception {
+        SObject payload = SpeedTest.payload(100 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FastJsonFormat("UTF-8").emit(payload, out);
+        List<SValue> values = feedInChunks(out.toByteArray(), 1500);
+        assertEquals(1, values.size());
+        assertEquals(payload, values.get(0));
+    }
+
+    @Test(expected = FormatException.class)
+    public void endsInsideValue() throws Exception {
+        feedInChunks("{\"a\":[1,2".getBytes("UTF-8"), 3);
+    }
+
+    @Test(expected = FormatException.class)
+    public void malformedValue() throws Exception {
+        feedInChunks("{\"a\" 1}".getBytes("UTF-8"), 3);
+    }
+
+    @Test(expected = FormatException.class)
+    public void valueTooLarge() throws Exception {
+        new FeedParser(16).feed(ByteBuffer.wrap("[\"this is more than sixteen bytes".getBytes("UTF-8")));
+    }
+}
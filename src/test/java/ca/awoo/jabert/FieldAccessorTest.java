@@ -0,0 +1,147 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class FieldAccessorTest {
+
+    public static class Primitives {
+        private boolean z;
+        private char c;
+        private byte b;
+        private short s;
+        private int i;
+        private long j;
+        private float f;
+        private double d;
+        private String text;
+        private volatile int counter;
+    }
+
+    private static FieldAccessor[] accessors(String name) throws Exception {
+        Field field = Primitives.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return new FieldAccessor[]{ FieldAccessor.of(field), FieldAccessor.reflective(field) };
+    }
+
+    @Test
+    public void typedAccessorsReadWhatTheyWrite() throws Exception {
+        for(int k = 0; k < 2; k++){
+            Primitives p = new Primitives();
+            accessors("z")[k].setBoolean(p, true);
+            accessors("c")[k].setChar(p, '\u263a');
+            accessors("b")[k].setByte(p, (byte)-7);
+            accessors("s")[k].setShort(p, (short)1234);
+            accessors("i")[k].setInt(p, -123456789);
+            accessors("j")[k].setLong(p, Long.MAX_VALUE);
+            accessors("f")[k].setFloat(p, 1.5f);
+            accessors("d")[k].setDouble(p, -0.25);
+            assertEquals(true, p.z);
+            assertEquals('\u263a', p.c);
+            assertEquals(-7, p.b);
+            assertEquals(1234, p.s);
+            assertEquals(-123456789, p.i);
+            assertEquals(Long.MAX_VALUE, p.j);
+            assertEquals(1.5f, p.f, 0);
+            assertEquals(-0.25, p.d, 0);
+            assertEquals(true, accessors("z")[k].getBoolean(p));
+            assertEquals('\u263a', accessors("c")[k].getChar(p));
+            assertEquals(-7, accessors("b")[k].getByte(p));
+            assertEquals(1234, accessors("s")[k].getShort(p));
+            assertEquals(-123456789, accessors("i")[k].getInt(p));
+            assertEquals(Long.MAX_VALUE, accessors("j")[k].getLong(p));
+            assertEquals(1.5f, accessors("f")[k].getFloat(p), 0);
+            assertEquals(-0.25, accessors("d")[k].getDouble(p), 0);
+        }
+    }
+
+    @Test
+    public void boxedAccessorsMatchReflection() throws Exception {
+        String[] names = { "z", "c", "b", "s", "i", "j", "f", "d", "text", "counter" };
+        Object[] values = { Boolean.TRUE, 'x', (byte)1, (short)2, 3, 4L, 5f, 6.0, "seven", 8 };
+        for(int n = 0; n < names.length; n++){
+            FieldAccessor[] accessors = accessors(names[n]);
+            Primitives fast = new Primitives();
+            Primitives slow = new Primitives();
+            accessors[0].set(fast, values[n]);
+            accessors[1].set(slow, values[n]);
+            assertEquals(values[n], accessors[0].get(fast));
+            assertEquals(accessors[1].get(slow), accessors[0].get(fast));
+        }
+        //Widening works the same as with reflection
+        Primitives p = new Primitives();
+        accessors("j")[0].set(p, 9);
+        assertEquals(9L, p.j);
+    }
+
+    @Test
+    public void wrongTypesAreRejected() throws Exception {
+        for(FieldAccessor accessor : accessors("text")){
+            try{
+                accessor.set(new Primitives(), 1);
+                fail("Set a String field to an Integer");
+            }catch(IllegalArgumentException e){
+                //Expected
+            }
+        }
+        for(FieldAccessor accessor : accessors("i")){
+            try{
+                accessor.set(new Primitives(), "one");
+                fail("Set an int field to a String");
+            }catch(IllegalArgumentException e){
+                //Expected
+            }
+        }
+        //Only reflection checks the target, callers of the fast accessors check it themselves
+        try{
+            accessors("i")[1].get("not a Primitives");
+            fail("Read a field of the wrong class");
+        }catch(IllegalArgumentException e){
+            //Expected
+        }
+    }
+
+    @Test
+    public void primitiveFieldsRoundTrip() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Primitives p = new Primitives();
+        p.z = true;
+        p.c = 'q';
+        p.b = -1;
+        p.s = 300;
+        p.i = 70000;
+        p.j = 1L << 40;
+        p.f = 0.1f;
+        p.d = 0.1;
+        p.text = "hi";
+        SObject so = (SObject)serializer.serialize(p);
+        assertEquals(new SNumber(70000L), so.get("i"));
+        Primitives q = (Primitives)serializer.deserialize(so, Primitives.class);
+        assertEquals(p.z, q.z);
+        assertEquals(p.c, q.c);
+        assertEquals(p.b, q.b);
+        assertEquals(p.s, q.s);
+        assertEquals(p.i, q.i);
+        assertEquals(p.j, q.j);
+        assertEquals(p.f, q.f, 0);
+        assertEquals(p.d, q.d, 0);
+        assertEquals(p.text, q.text);
+
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serializers.emit(serializer, p, format, out);
+        Primitives r = (Primitives)Serializers.parse(serializer, Primitives.class, format, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(p.c, r.c);
+        assertEquals(p.j, r.j);
+        assertEquals(p.f, r.f, 0);
+        assertEquals(p.z, r.z);
+    }
+}
@@ -1,9 +1,12 @@
 package ca.awoo.jabert;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +31,57 @@ public class FormatTest {
         testAll(new JsonFormat("UTF-8"), new FastJsonFormat("UTF-8"));
     }
 
+    @Test
+    public void testJsonExactNumbers() throws Exception {
+        String number = "12345678901234567890.123456789012345678901234567890";
+        SValue sv = new JsonFormat("UTF-8").parse(new ByteArrayInputStream(("[ " + number + " , -0.5e-3,0 ]").getBytes("UTF-8")));
+        assertEquals(new SList(new SNumber(new BigDecimal(number)), new SNumber(-0.0005), new SNumber(0)), sv);
+        assertEquals(new BigDecimal(number), ((SNumber)((SList)sv).get(0)).value);
+    }
+
+    @Test
+    public void testJsonRejectsMalformed() throws Exception {
+        String[] malformed = { "{\"a\" 1}", "tru", "\"abc", "\"\\x\"", "-", "1e", "[01]", "{\"a\":1" };
+        for(String json : malformed){
+            try{
+                new JsonFormat("UTF-8").parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+                fail("Parsed malformed json " + json);
+            }catch(FormatException e){
+            }
+        }
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        testAll(new BinaryFormat());
+    }
+
+    @Test
+    public void testBinaryEdgeCases() throws Exception {
+        Format format = new BinaryFormat();
+        testValue(format, new SNumber(Long.MIN_VALUE));
+        testValue(format, new SNumber(Long.MAX_VALUE));
+        testValue(format, new SNumber(new BigDecimal("12345678901234567890.5")));
+        testValue(format, new SNumber(new BigInteger("123456789012345678901234567890")));
+        testValue(format, new SNumber(Double.NaN));
+        testValue(format, new SString("h\u00e9llo \u263a \ud83d\ude00"));
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 20000; i++){
+            sb.append((char)('a' + i % 26));
+        }
+        testValue(format, new SString(sb.toString()));
+    }
+
+    @Test(expected = FormatException.class)
+    public void testBinaryTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryFormat().emit(new SList(new SString("hello"), new SNumber(1.5)), out);
+        byte[] bytes = out.toByteArray();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new BinaryFormat().parse(new ByteArrayInputStream(truncated));
+    }
+
     public void testValue(Format emitter, Format parser, SValue sv) throws Exception{
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         emitter.emit(sv, out);
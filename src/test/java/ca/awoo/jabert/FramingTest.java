@@ -0,0 +1,109 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class FramingTest {
+
+    /**
+     * Hands out at most one byte per read, like a slow socket.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        public TrickleInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    private void roundTrip(Format format, Framing framing, boolean trickle) throws Exception {
+        List<SValue> values = FormatTest.everyValue(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameWriter writer = new FrameWriter(format, out, framing);
+        for(SValue value : values){
+            writer.write(value);
+        }
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        if(trickle){
+            in = new TrickleInputStream(in);
+        }
+        FrameReader reader = new FrameReader(format, in, framing);
+        for(SValue value : values){
+            assertTrue(reader.hasNext());
+            assertEquals(value, reader.next());
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void newlineDelimited() throws Exception {
+        roundTrip(new FastJsonFormat("UTF-8"), Framing.NEWLINE, false);
+        roundTrip(new JsonFormat("UTF-8"), Framing.NEWLINE, false);
+    }
+
+    @Test
+    public void lengthPrefixed() throws Exception {
+        roundTrip(new FastJsonFormat("UTF-8"), Framing.LENGTH_PREFIXED, false);
+        roundTrip(new BinaryFormat(), Framing.LENGTH_PREFIXED, false);
+    }
+
+    @Test
+    public void partialReads() throws Exception {
+        roundTrip(new FastJsonFormat("UTF-8"), Framing.NEWLINE, true);
+        roundTrip(new BinaryFormat(), Framing.LENGTH_PREFIXED, true);
+    }
+
+    @Test
+    public void blankLinesAndCarriageReturns() throws Exception {
+        byte[] bytes = "{\"a\":1}\r\n\r\n  \n[true,null]\r\n\"last\"".getBytes("UTF-8");
+        FrameReader reader = new FrameReader(new FastJsonFormat("UTF-8"), new ByteArrayInputStream(bytes), Framing.NEWLINE);
+        SObject object = new SObject();
+        object.put("a", new SNumber(1));
+        assertEquals(object, reader.next());
+        assertEquals(new SList(new SBool(true), new SNull()), reader.next());
+        assertEquals(new SString("last"), reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void largeMessages() throws Exception {
+        SObject payload = SpeedTest.payload(100 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameWriter writer = new FrameWriter(new FastJsonFormat("UTF-8"), out, Framing.NEWLINE);
+        writer.write(payload);
+        writer.write(new SString("after"));
+        FrameReader reader = new FrameReader(new FastJsonFormat("UTF-8"), new ByteArrayInputStream(out.toByteArray()), Framing.NEWLINE);
+        assertEquals(payload, reader.next());
+        assertEquals(new SString("after"), reader.next());
+    }
+
+    @Test(expected = FormatException.class)
+    public void frameTooLarge() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FrameWriter(new BinaryFormat(), out, Framing.LENGTH_PREFIXED).write(new SString("this is more than sixteen bytes"));
+        new FrameReader(new BinaryFormat(), new ByteArrayInputStream(out.toByteArray()), Framing.LENGTH_PREFIXED, 16).next();
+    }
+
+    @Test(expected = FormatException.class)
+    public void truncatedFrame() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FrameWriter(new BinaryFormat(), out, Framing.LENGTH_PREFIXED).write(new SString("hello"));
+        byte[] bytes = out.toByteArray();
+        new FrameReader(new BinaryFormat(), new ByteArrayInputStream(bytes, 0, bytes.length - 1), Framing.LENGTH_PREFIXED).next();
+    }
+}
@@ -0,0 +1,144 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class GeneratedSerializerTest {
+
+    @GenerateSerializer
+    public static class Point {
+        int x;
+        int y;
+    }
+
+    /**
+     * Marked, but nothing was generated for it.
+     */
+    @GenerateSerializer
+    public static class Plain {
+        private String name;
+        private long count;
+    }
+
+    @Test
+    public void namesAreFlattened() {
+        assertEquals("com.example.Outer_Inner_JabertSerializer", GeneratedSerializer.nameFor("com.example.Outer$Inner"));
+        assertEquals("Top_JabertSerializer", GeneratedSerializer.nameFor("Top"));
+    }
+
+    @Test
+    public void defaultSerializerUsesGeneratedSerializer() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Point p = new Point();
+        p.x = 3;
+        p.y = -4;
+        int before = GeneratedSerializerTest_Point_JabertSerializer.calls;
+        SObject so = (SObject)serializer.serialize(p);
+        assertEquals(new SNumber(3L), so.get("x"));
+        Point q = (Point)serializer.deserialize(so, Point.class);
+        assertEquals(3, q.x);
+        assertEquals(-4, q.y);
+
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serializers.emit(serializer, p, format, out);
+        assertEquals("{\"x\":3,\"y\":-4}", new String(out.toByteArray(), "UTF-8"));
+        Point r = (Point)Serializers.parse(serializer, Point.class, format, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(-4, r.y);
+        assertEquals(before + 4, GeneratedSerializerTest_Point_JabertSerializer.calls);
+    }
+
+    @Test
+    public void missingGeneratedSerializerFallsBackToReflection() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Plain p = new Plain();
+        p.name = "plain";
+        p.count = 7;
+        SValue sv = serializer.serialize(p);
+        assertEquals(new ReflectionSerializer(serializer).serialize(p), sv);
+        Plain q = (Plain)serializer.deserialize(sv, Plain.class);
+        assertEquals("plain", q.name);
+        assertEquals(7, q.count);
+    }
+
+    @Test
+    public void primitivesFollowTheBaseSerializer() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        GeneratedSerializerTest_Point_JabertSerializer generated = new GeneratedSerializerTest_Point_JabertSerializer(serializer);
+        SValueTreeWriter out = new SValueTreeWriter();
+        generated.writePrimitive(1.5f, out);
+        assertEquals(new SNumber(1.5f), out.getValue());
+        assertEquals(12, generated.readInt(new SNumber(12L)));
+        try{
+            generated.readInt(new SNull());
+            throw new AssertionError("Read null into an int");
+        }catch(SerializationException e){
+            assertTrue(e.getMessage().contains("int"));
+        }
+    }
+}
+
+/**
+ * Written the way jabert-processor would generate it.
+ */
+class GeneratedSerializerTest_Point_JabertSerializer extends GeneratedSerializer {
+    static int calls;
+
+    public GeneratedSerializerTest_Point_JabertSerializer(Serializer base){
+        super(base);
+    }
+
+    public SValue serialize(Object o) throws SerializationException {
+        calls++;
+        GeneratedSerializerTest.Point t = (GeneratedSerializerTest.Point)o;
+        SObject so = new SObject();
+        so.put("x", base.serialize(t.x));
+        so.put("y", base.serialize(t.y));
+        return so;
+    }
+
+    public void serialize(Object o, SValueWriter out) throws SerializationException, FormatException {
+        calls++;
+        GeneratedSerializerTest.Point t = (GeneratedSerializerTest.Point)o;
+        out.beginObject();
+        out.name("x");
+        writePrimitive(t.x, out);
+        out.name("y");
+        writePrimitive(t.y, out);
+        out.endObject();
+    }
+
+    public Object deserialize(SValue sv, Class<? extends Object> clazz) throws SerializationException {
+        calls++;
+        SObject so = (SObject)sv;
+        GeneratedSerializerTest.Point t = new GeneratedSerializerTest.Point();
+        t.x = readInt(so.get("x"));
+        t.y = readInt(so.get("y"));
+        return t;
+    }
+
+    public Object deserialize(SValueReader in, Class<? extends Object> clazz) throws SerializationException, FormatException {
+        calls++;
+        GeneratedSerializerTest.Point t = new GeneratedSerializerTest.Point();
+        in.beginObject();
+        while(in.hasNext()){
+            String name = in.nextName();
+            if(name.equals("x")){
+                t.x = readInt(in);
+            }else if(name.equals("y")){
+                t.y = readInt(in);
+            }else{
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return t;
+    }
+}
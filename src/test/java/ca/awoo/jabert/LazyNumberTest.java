@@ -0,0 +1,133 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class LazyNumberTest {
+
+    private SValue parse(Format format, String json) throws Exception {
+        return format.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void conversions() {
+        LazyNumber n = new LazyNumber("9007199254740993");
+        assertTrue(n.isLong());
+        assertEquals(9007199254740993L, n.longValue());
+        assertEquals(9007199254740992.0, n.doubleValue(), 0);
+        LazyNumber d = new LazyNumber("-12.5e1");
+        assertFalse(d.isLong());
+        assertEquals(-125.0, d.doubleValue(), 0);
+        assertEquals(-125, d.intValue());
+        assertEquals(new BigDecimal("-12.5e1"), d.bigDecimalValue());
+        assertEquals("-12.5e1", d.toString());
+        LazyNumber big = new LazyNumber("3000000000");
+        assertEquals(3000000000L, big.longValue());
+        assertEquals(new Double(3e9).intValue(), big.intValue());
+        assertFalse(new LazyNumber("9223372036854775808").isLong());
+        assertEquals(Long.MIN_VALUE, new LazyNumber("-9223372036854775808").longValue());
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(new LazyNumber("-0").doubleValue()));
+    }
+
+    @Test
+    public void equality() {
+        assertEquals(new LazyNumber("1"), new LazyNumber("1.0"));
+        assertEquals(new LazyNumber("1").hashCode(), new LazyNumber("1.0").hashCode());
+        assertEquals(new LazyNumber(100), new LazyNumber("1e2"));
+        assertFalse(new LazyNumber("9007199254740993").equals(new LazyNumber("9007199254740992")));
+        assertEquals(new SNumber(1.5), new SNumber(new LazyNumber("1.5")));
+        assertEquals(new SNumber(new LazyNumber("2")), new SNumber(2));
+    }
+
+    @Test
+    public void invalid() {
+        String[] invalid = { "", "-", "1e", "1e+", "1-2", "1.2.3", "e5", "01", "-01", "00", "1.", "-.5", ".5", "1.e5" };
+        for(String s : invalid){
+            try{
+                new LazyNumber(s);
+                fail("Accepted " + s);
+            }catch(NumberFormatException e){
+            }
+        }
+    }
+
+    @Test
+    public void parsersKeepDigits() throws Exception {
+        String json = "[9007199254740993,-9223372036854775808,12345678901234567890,0.1,1.50,-0,0,0e1]";
+        String[] encodings = { "UTF-8", "UTF-16" };
+        for(String encoding : encodings){
+            SList list = (SList)new FastJsonFormat(encoding).parse(new ByteArrayInputStream(json.getBytes(encoding)));
+            assertEquals(9007199254740993L, ((SNumber)list.get(0)).longValue());
+            assertEquals(Long.MIN_VALUE, ((SNumber)list.get(1)).longValue());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FastJsonFormat utf8 = new FastJsonFormat("UTF-8");
+            utf8.emit(list, out);
+            assertEquals(json, new String(out.toByteArray(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void readerKeepsDigits() throws Exception {
+        SValueReader reader = new FastJsonFormat("UTF-8").reader(new ByteArrayInputStream("[9007199254740993]".getBytes("UTF-8")));
+        reader.beginList();
+        assertEquals(9007199254740993L, reader.nextLong());
+        reader.endList();
+        reader.close();
+    }
+
+    @Test(expected = FormatException.class)
+    public void parserRejectsInvalid() throws Exception {
+        parse(new FastJsonFormat("UTF-8"), "[1e]");
+    }
+
+    @Test
+    public void parsersFollowTheJsonGrammar() throws Exception {
+        String[] invalid = { "[01]", "[-01]", "[1.]", "[-.5]", "[1.e5]", "{\"a\":00}" };
+        for(String json : invalid){
+            for(String encoding : new String[]{ "UTF-8", "UTF-16" }){
+                FastJsonFormat format = new FastJsonFormat(encoding);
+                try{
+                    format.parse(new ByteArrayInputStream(json.getBytes(encoding)));
+                    fail("Parsed " + json + " in " + encoding);
+                }catch(FormatException e){
+                }
+                try{
+                    format.parseLazy(new ByteArrayInputStream(json.getBytes(encoding)));
+                    fail("Lazily parsed " + json + " in " + encoding);
+                }catch(FormatException e){
+                }
+                try{
+                    new JsonFormat(encoding).parse(new ByteArrayInputStream(json.getBytes(encoding)));
+                    fail("Strictly parsed " + json + " in " + encoding);
+                }catch(FormatException e){
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emittedNumbersParseAgain() throws Exception {
+        String json = "[0,-0,0.5,-0.5,10,0e1,1E+2,-12.5e-1,12345678901234567890.25]";
+        FastJsonFormat fast = new FastJsonFormat("UTF-8");
+        JsonFormat strict = new JsonFormat("UTF-8");
+        SValue[] parsed = { parse(fast, json), fast.parseLazy(new ByteArrayInputStream(json.getBytes("UTF-8"))), new FastJsonFormat("UTF-16").parse(new ByteArrayInputStream(json.getBytes("UTF-16"))) };
+        for(SValue sv : parsed){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            fast.emit(sv, out);
+            String emitted = new String(out.toByteArray(), "UTF-8");
+            assertEquals(json, emitted);
+            assertEquals(sv, parse(strict, emitted));
+            assertEquals(sv, parse(fast, emitted));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static ca.awoo.jabert.TestSupport.emit;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class LazyParseTest {
+
+    @Test
+    public void sameAsParse() throws Exception {
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        for(SValue sv : FormatTest.everyValue(3)){
+            byte[] bytes = emit(sv);
+            SValue lazy = format.parseLazy(new ByteArrayInputStream(bytes));
+            assertEquals(sv, lazy);
+            assertEquals(format.parse(new ByteArrayInputStream(bytes)), lazy);
+            assertEquals(format.parse(new ByteArrayInputStream(bytes)).hashCode(), lazy.hashCode());
+        }
+    }
+
+    @Test
+    public void otherEncodings() throws Exception {
+        String json = " { \"caf\\u00e9\" : [ 1 , 2.5 , \"\u263a\" ] } ";
+        SValue lazy = new FastJsonFormat("UTF-16").parseLazy(new ByteArrayInputStream(json.getBytes("UTF-16")));
+        SObject expected = new SObject();
+        expected.put("caf\u00e9", new SList(new SNumber(1), new SNumber(2.5), new SString("\u263a")));
+        assertEquals(expected, lazy);
+    }
+
+    @Test
+    public void partialAccessAndMutation() throws Exception {
+        SObject payload = SpeedTest.payload(10 * 1024);
+        SObject lazy = (SObject)new FastJsonFormat("UTF-8").parseLazy(new ByteArrayInputStream(emit(payload)));
+        SObject message = (SObject)lazy.get("message42");
+        assertEquals(new SString("user42"), message.get("user"));
+        message.put("edited", new SBool(true));
+        assertEquals(new SBool(true), ((SObject)lazy.get("message42")).get("edited"));
+        SList list = (SList)new FastJsonFormat("UTF-8").parseLazy(new ByteArrayInputStream("[[1],[2]]".getBytes("UTF-8")));
+        list.add(new SNull());
+        list.remove(0);
+        assertEquals(new SList(new SList(new SNumber(2)), new SNull()), list);
+    }
+
+    @Test
+    public void lookupsBeforeDecoding() throws Exception {
+        String json = "{\"a\":1,\"caf\\u00e9\":2,\"\u263a\":3,\"a\":4,\"b\":{\"c\":[5]}}";
+        SObject lazy = (SObject)new FastJsonFormat("UTF-8").parseLazy(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(new SNumber(4), lazy.get("a"));
+        assertEquals(new SNumber(2), lazy.get("caf\u00e9"));
+        assertEquals(new SNumber(3), lazy.get("\u263a"));
+        assertEquals(null, lazy.get("a\":4"));
+        assertEquals(false, lazy.has("c"));
+        SObject b = (SObject)lazy.get("b");
+        assertSame(b, lazy.get("b"));
+        b.put("d", new SNull());
+        assertEquals(4, lazy.size());
+        assertSame(b, lazy.get("b"));
+        assertEquals(new SNull(), ((SObject)lazy.get("b")).get("d"));
+    }
+
+    @Test
+    public void rejectsMalformed() throws Exception {
+        String[] malformed = { "", "[1,]", "{\"a\" 1}", "{\"a\":1", "tru", "\"abc", "\"\\x\"", "-", "1e", "1-2", "[1] 2", "{1:2}", "[\"\\u12\"]" };
+        for(String json : malformed){
+            try{
+                new FastJsonFormat("UTF-8").parseLazy(new ByteArrayInputStream(json.getBytes("UTF-8")));
+                fail("Parsed malformed json " + json);
+            }catch(FormatException e){
+            }
+        }
+    }
+}
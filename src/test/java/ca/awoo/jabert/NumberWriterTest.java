@@ -0,0 +1,108 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class NumberWriterTest {
+
+    private static String write(double d){
+        byte[] buf = new byte[NumberWriter.MAX_LENGTH];
+        int end = NumberWriter.writeDouble(d, buf, 0);
+        return new String(buf, 0, end);
+    }
+
+    private static String write(long l){
+        byte[] buf = new byte[NumberWriter.MAX_LENGTH];
+        int end = NumberWriter.writeLong(l, buf, 0);
+        return new String(buf, 0, end);
+    }
+
+    /**
+     * Checks that s parses back to d and that no decimal with fewer digits does.
+     */
+    private static void assertShortest(double d){
+        String s = write(d);
+        assertEquals(s, Double.doubleToLongBits(d), Double.doubleToLongBits(Double.parseDouble(s)));
+        BigDecimal bd = new BigDecimal(s).stripTrailingZeros();
+        int precision = bd.precision();
+        if(precision > 1){
+            MathContext down = new MathContext(precision - 1, RoundingMode.FLOOR);
+            MathContext up = new MathContext(precision - 1, RoundingMode.CEILING);
+            assertTrue(s + " is not the shortest", bd.round(down).doubleValue() != d);
+            assertTrue(s + " is not the shortest", bd.round(up).doubleValue() != d);
+        }
+    }
+
+    @Test
+    public void longs() {
+        long[] values = { 0, 1, -1, 9, 10, 99, 100, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 999999999999999999L, 1000000000000000000L };
+        for(long l : values){
+            assertEquals(Long.toString(l), write(l));
+        }
+    }
+
+    @Test
+    public void knownDoubles() {
+        assertEquals("0", write(0.0));
+        assertEquals("-0", write(-0.0));
+        assertEquals("42", write(42.0));
+        assertEquals("-1", write(-1.0));
+        assertEquals("0.1", write(0.1));
+        assertEquals("1.1", write(1.1));
+        assertEquals("123.456", write(123.456));
+        assertEquals("0.000001", write(1e-6));
+        assertEquals("1e-7", write(1e-7));
+        assertEquals("1.5e-7", write(1.5e-7));
+        assertEquals("100000000000000000000", write(1e20));
+        assertEquals("1e21", write(1e21));
+        assertEquals("1e23", write(1e23));
+        assertEquals("9007199254740992", write(9007199254740992.0));
+        assertEquals("1.7976931348623157e308", write(Double.MAX_VALUE));
+        assertEquals("5e-324", write(Double.MIN_VALUE));
+        assertEquals("2.2250738585072014e-308", write(Double.MIN_NORMAL));
+        assertEquals("NaN", write(Double.NaN));
+        assertEquals("-Infinity", write(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void randomDoublesAreShortest() {
+        Random random = new Random(1234);
+        for(int i = 0; i < 100000; i++){
+            double d = Double.longBitsToDouble(random.nextLong());
+            if(Double.isNaN(d) || Double.isInfinite(d)){
+                continue;
+            }
+            assertShortest(d);
+        }
+        for(int i = 0; i < 100000; i++){
+            assertShortest(random.nextInt(1000000) / 100.0);
+            assertShortest(random.nextDouble());
+        }
+        for(int e = -1074; e < 1024; e++){
+            assertShortest(Math.pow(2, e));
+        }
+    }
+
+    @Test
+    public void emittedIntegralDoublesHaveNoFraction() throws Exception {
+        SList list = new SList(new SNumber(42.0), new SNumber(-7.0), new SNumber(0.25), new SNumber(3), new SNumber(2.5f), new SNumber(8.0f));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FastJsonFormat("UTF-8").emit(list, out);
+        assertEquals("[42,-7,0.25,3,2.5,8]", new String(out.toByteArray(), "UTF-8"));
+        out.reset();
+        new JsonFormat("UTF-8").emit(list, out);
+        assertEquals("[42,-7,0.25,3,2.5,8]", new String(out.toByteArray(), "UTF-8"));
+        assertFalse(write(42.0).contains("."));
+    }
+}
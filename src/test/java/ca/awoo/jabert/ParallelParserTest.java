@@ -0,0 +1,111 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class ParallelParserTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static List<SValue> records() throws Exception {
+        List<SValue> records = new ArrayList<SValue>(FormatTest.everyValue(2));
+        SObject tricky = new SObject();
+        tricky.put("a,b]}", new SString("\"[{,\\"));
+        tricky.put("n", new SList(new SNumber(1), new SList(), new SObject()));
+        records.add(tricky);
+        return records;
+    }
+
+    private static byte[] lines(List<SValue> records) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrameWriter writer = new FrameWriter(new FastJsonFormat("UTF-8"), out, Framing.NEWLINE);
+        for(SValue record : records){
+            writer.write(record);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] array(List<SValue> records) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FastJsonFormat("UTF-8").emit(new SList(records), out);
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void newlineDelimited() throws Exception {
+        List<SValue> records = records();
+        byte[] bytes = lines(records);
+        int[] chunkSizes = { 1, 16, 100, ParallelParser.DEFAULT_CHUNK_SIZE };
+        for(int chunkSize : chunkSizes){
+            ParallelParser parser = new ParallelParser(executor, chunkSize);
+            assertEquals(new SList(records), parser.parseLines(ByteBuffer.wrap(bytes)));
+            assertEquals(new SList(records), parser.parseLines(direct(bytes)));
+        }
+    }
+
+    @Test
+    public void topLevelArray() throws Exception {
+        List<SValue> records = records();
+        byte[] bytes = array(records);
+        int[] chunkSizes = { 1, 16, 100, ParallelParser.DEFAULT_CHUNK_SIZE };
+        for(int chunkSize : chunkSizes){
+            ParallelParser parser = new ParallelParser(executor, chunkSize);
+            assertEquals(new SList(records), parser.parseArray(ByteBuffer.wrap(bytes)));
+            assertEquals(new SList(records), parser.parseArray(direct(bytes)));
+        }
+        assertEquals(new SList(), new ParallelParser(executor, 1).parseArray(ByteBuffer.wrap(" [ ] ".getBytes("UTF-8"))));
+        assertEquals(new SList(), new ParallelParser(executor, 1).parseLines(ByteBuffer.wrap("\n\n".getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void handlerGetsRecordsInOrder() throws Exception {
+        List<SValue> expected = new ArrayList<SValue>();
+        for(int i = 0; i < 10000; i++){
+            expected.add(new SNumber(i));
+        }
+        final List<SValue> handled = new ArrayList<SValue>();
+        new ParallelParser(executor, 64).parseLines(ByteBuffer.wrap(lines(expected)), new ParallelParser.RecordHandler() {
+            public void record(SValue record) {
+                handled.add(record);
+            }
+        });
+        assertEquals(expected, handled);
+    }
+
+    @Test(expected = FormatException.class)
+    public void trailingComma() throws Exception {
+        new ParallelParser(executor, 1).parseArray(ByteBuffer.wrap("[1,2,]".getBytes("UTF-8")));
+    }
+
+    @Test(expected = FormatException.class)
+    public void unterminatedArray() throws Exception {
+        new ParallelParser(executor, 1).parseArray(ByteBuffer.wrap("[1,[2]".getBytes("UTF-8")));
+    }
+
+    @Test(expected = FormatException.class)
+    public void malformedRecord() throws Exception {
+        new ParallelParser(executor, 1).parseLines(ByteBuffer.wrap("{\"a\":1}\n{\"a\" 1}\n".getBytes("UTF-8")));
+    }
+}
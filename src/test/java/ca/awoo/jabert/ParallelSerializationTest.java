@@ -0,0 +1,90 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static ca.awoo.jabert.TestSupport.emit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelSerializationTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class Message {
+        private long id;
+        private String user;
+        private String text;
+        private double[] scores;
+
+        public Message(long id) {
+            this.id = id;
+            this.user = "user" + (id % 100);
+            this.text = "message number " + id;
+            this.scores = new double[] { id * 0.5, -id };
+        }
+
+        protected Message() {
+        }
+    }
+
+    public static class Room {
+        private String name;
+        private List<Message> messages;
+        private Message[] pinned;
+        private Message[][] threads;
+
+        public Room(int size) {
+            name = "room";
+            messages = new ArrayList<Message>();
+            for(int i = 0; i < size; i++){
+                messages.add(new Message(i));
+            }
+            pinned = messages.subList(0, size / 2).toArray(new Message[0]);
+            threads = new Message[300][];
+            for(int i = 0; i < threads.length; i++){
+                threads[i] = messages.subList(i, i + 300).toArray(new Message[0]);
+            }
+        }
+
+        protected Room() {
+        }
+    }
+
+    public static class Unserializable {
+        private Object[] things;
+    }
+
+    @Test
+    public void sameAsSequential() throws Exception {
+        Room room = new Room(5000);
+        Serializer sequential = Serializers.defaultSerializer();
+        Serializer parallel = Serializers.defaultSerializer(executor, 100);
+        assertEquals(sequential.serialize(room), parallel.serialize(room));
+        assertArrayEquals(emit(sequential, room), emit(parallel, room));
+        int[] numbers = new int[10000];
+        for(int i = 0; i < numbers.length; i++){
+            numbers[i] = i * 7;
+        }
+        assertEquals(sequential.serialize(numbers), parallel.serialize(numbers));
+        assertArrayEquals(emit(sequential, numbers), emit(parallel, numbers));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void errorsReachTheCaller() throws Exception {
+        Object[] things = new Object[1000];
+        for(int i = 0; i < things.length; i++){
+            things[i] = i == 700 ? new Thread() : "thing";
+        }
+        Serializers.defaultSerializer(executor, 100).serialize(things);
+    }
+}
@@ -1,6 +1,7 @@
 package ca.awoo.jabert;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -160,4 +161,30 @@ public class ReflectionSerializerTest {
         assertTrue(so.get("s") instanceof SValue.SNull);
     }
 
+    public static class GenericClass {
+        public java.util.List<String> names;
+        public java.util.Map<String, java.util.List<String>> groups;
+        @SuppressWarnings("rawtypes")
+        public java.util.List raw;
+    }
+
+    @Test
+    public void planIsWorkedOutOnce() throws Exception {
+        ReflectionPlan plan = ReflectionPlan.of(GenericClass.class);
+        assertSame(plan, ReflectionPlan.of(GenericClass.class));
+        assertEquals(3, plan.fields.length);
+        assertEquals(String.class, plan.byName.get("names").elementType);
+        assertEquals(java.util.List.class, plan.byName.get("groups").elementType);
+        assertTrue(plan.byName.get("groups").stringKeys);
+        assertEquals(null, plan.byName.get("raw").elementType);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void rawCollectionCanNotBeRead() throws Exception {
+        SObject so = new SObject();
+        so.put("names", new SValue.SList());
+        so.put("groups", new SObject());
+        so.put("raw", new SValue.SList(new SValue.SString("a")));
+        Serializers.defaultSerializer().deserialize(so, GenericClass.class);
+    }
 }
@@ -0,0 +1,87 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static ca.awoo.jabert.TestSupport.emit;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class ResumableEmitterTest {
+
+    /**
+     * Emits through a buffer of the given size, emptying it after every call like a channel that takes everything.
+     */
+    private static byte[] emitResumable(SValue sv, int bufferSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResumableEmitter emitter = new ResumableEmitter(sv);
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        boolean done;
+        do{
+            done = emitter.fill(buffer);
+            buffer.flip();
+            out.write(buffer.array(), 0, buffer.limit());
+            buffer.clear();
+        }while(!done);
+        assertTrue(emitter.isDone());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void sameAsEmit() throws Exception {
+        List<SValue> values = FormatTest.everyValue(3);
+        int[] bufferSizes = { 1, 7, 64, 8192 };
+        for(SValue value : values){
+            for(int bufferSize : bufferSizes){
+                assertArrayEquals(emit(value), emitResumable(value, bufferSize));
+            }
+        }
+    }
+
+    @Test
+    public void longStrings() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 5000; i++){
+            sb.append(i % 7 == 0 ? '\u263a' : i % 11 == 0 ? '\n' : (char)('a' + i % 26));
+        }
+        StringBuilder digits = new StringBuilder("1.");
+        for(int i = 0; i < 3000; i++){
+            digits.append((char)('0' + i % 10));
+        }
+        SObject object = new SObject();
+        object.put(sb.toString(), new SString(sb.toString()));
+        object.put("decimal", new SNumber(new BigDecimal(digits.toString())));
+        object.put("list", new SList(new SString(sb.toString()), new SNumber(Long.MIN_VALUE), new SNumber(-1.5e-300)));
+        assertArrayEquals(emit(object), emitResumable(object, 1));
+        assertArrayEquals(emit(object), emitResumable(object, 1000));
+    }
+
+    @Test
+    public void largeValue() throws Exception {
+        SObject payload = SpeedTest.payload(100 * 1024);
+        assertArrayEquals(emit(payload), emitResumable(payload, 4096));
+    }
+
+    @Test
+    public void partialWrites() throws Exception {
+        ResumableEmitter emitter = new ResumableEmitter(new SString("hello"));
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        assertFalse(emitter.fill(buffer));
+        assertFalse(emitter.isDone());
+        //Nothing was taken from the buffer, so nothing more fits
+        assertFalse(emitter.fill(buffer));
+        assertFalse(buffer.hasRemaining());
+        buffer.clear();
+        assertFalse(emitter.fill(buffer));
+        buffer.clear();
+        assertTrue(emitter.fill(buffer));
+        assertTrue(emitter.isDone());
+    }
+}
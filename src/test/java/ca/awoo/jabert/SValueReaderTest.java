@@ -0,0 +1,103 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static ca.awoo.jabert.TestSupport.emit;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+import ca.awoo.jabert.SValueReader.Token;
+
+public class SValueReaderTest {
+
+    private static List<Token> tokens(SValueReader reader) throws Exception {
+        List<Token> tokens = new ArrayList<Token>();
+        Token token;
+        do{
+            token = reader.nextToken();
+            tokens.add(token);
+        }while(token != Token.END_DOCUMENT);
+        reader.close();
+        return tokens;
+    }
+
+    @Test
+    public void envelopeFields() throws Exception {
+        String json = "{\"body\": {\"text\": \"hi\", \"list\": [1, [2, \"]\"], {\"a\": \"}\"}]}, \"type\": \"message\", \"room\": {\"name\": \"lobby\", \"id\": 42}}";
+        SValueReader reader = new FastJsonFormat("UTF-8").reader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        String type = null;
+        long roomId = -1;
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if(name.equals("type")){
+                type = reader.nextString();
+            }else if(name.equals("room")){
+                reader.beginObject();
+                while(reader.hasNext()){
+                    if(reader.nextName().equals("id")){
+                        roomId = reader.nextLong();
+                    }else{
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+        reader.close();
+        assertEquals("message", type);
+        assertEquals(42, roomId);
+    }
+
+    @Test
+    public void matchesTreeReader() throws Exception {
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        for(SValue sv : FormatTest.everyValue(3)){
+            byte[] bytes = emit(sv);
+            assertEquals(new String(bytes, "UTF-8"), tokens(new SValueTreeReader(sv)), tokens(format.reader(new ByteArrayInputStream(bytes))));
+        }
+    }
+
+    @Test
+    public void nextValueMatchesParse() throws Exception {
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        for(SValue sv : FormatTest.everyValue(3)){
+            SValueReader reader = format.reader(new ByteArrayInputStream(emit(sv)));
+            assertEquals(sv, reader.nextValue());
+            assertFalse(reader.hasNext());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void skipMember() throws Exception {
+        String json = "{\"a\": [1, 2, {\"b\": null}], \"c\": true}";
+        SValueReader reader = new FastJsonFormat("UTF-8").reader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        reader.beginObject();
+        reader.skipValue();
+        assertEquals("c", reader.nextName());
+        assertEquals(true, reader.nextBoolean());
+        reader.endObject();
+        reader.close();
+    }
+
+    @Test(expected = FormatException.class)
+    public void trailingComma() throws Exception {
+        String json = "[1, 2, ]";
+        SValueReader reader = new FastJsonFormat("UTF-8").reader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        try{
+            reader.nextValue();
+        }finally{
+            reader.close();
+        }
+    }
+}
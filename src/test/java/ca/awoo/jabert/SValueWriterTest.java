@@ -0,0 +1,161 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static ca.awoo.jabert.TestSupport.emit;
+import static ca.awoo.jabert.TestSupport.message;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class SValueWriterTest {
+
+    /**
+     * Writes {@link TestSupport#message(int)} 0 with the streaming methods.
+     */
+    private static void writeMessage(SValueWriter writer) throws Exception {
+        writer.beginObject();
+        writer.name("id");
+        writer.value(0L);
+        writer.name("type");
+        writer.value("chat");
+        writer.name("room");
+        writer.beginObject();
+        writer.name("id");
+        writer.value(42L);
+        writer.name("name");
+        writer.value("lobby");
+        writer.endObject();
+        writer.name("user");
+        writer.value("fred \u00e9\n");
+        writer.name("text");
+        writer.value("message \u263a 0 \"quoted\"\n");
+        writer.name("score");
+        writer.value(1.5);
+        writer.name("values");
+        writer.beginList();
+        writer.endList();
+        writer.name("members");
+        writer.beginList();
+        writer.value("a");
+        writer.beginObject();
+        writer.endObject();
+        writer.beginList();
+        writer.value(1L);
+        writer.value(2L);
+        writer.endList();
+        writer.endList();
+        writer.name("tags");
+        writer.beginList();
+        writer.value(true);
+        writer.nullValue();
+        writer.beginObject();
+        writer.endObject();
+        writer.beginList();
+        writer.endList();
+        writer.endList();
+        writer.name("display name");
+        writer.value(true);
+        writer.name("nothing");
+        writer.nullValue();
+        writer.name("body");
+        writer.value("{[\"not\", \"json\"]}");
+        writer.endObject();
+    }
+
+    @Test
+    public void sameAsEmit() throws Exception {
+        Format[] formats = { new FastJsonFormat("UTF-8"), new JsonFormat("UTF-8") };
+        for(Format format : formats){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            SValueWriter writer = format.writer(out);
+            writeMessage(writer);
+            writer.close();
+            SValueTreeWriter tree = new SValueTreeWriter();
+            writeMessage(tree);
+            assertEquals(message(0), tree.getValue());
+            assertArrayEquals(emit(format, tree.getValue()), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void everyValue() throws Exception {
+        Format format = new FastJsonFormat("UTF-8");
+        for(SValue sv : FormatTest.everyValue(3)){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            SValueWriter writer = format.writer(out);
+            writer.value(sv);
+            writer.close();
+            assertArrayEquals(emit(format, sv), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void treeWriterEmits() throws Exception {
+        Format format = new JsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeMessage(new SValueTreeWriter(format, out));
+        assertArrayEquals(emit(format, message(0)), out.toByteArray());
+    }
+
+    @Test(expected = FormatException.class)
+    public void valueWithoutName() throws Exception {
+        SValueWriter writer = new FastJsonFormat("UTF-8").writer(new ByteArrayOutputStream());
+        try{
+            writer.beginObject();
+            writer.value(1L);
+        }finally{
+            writer.abort();
+        }
+    }
+
+    @Test(expected = FormatException.class)
+    public void mismatchedEnd() throws Exception {
+        SValueWriter writer = new FastJsonFormat("UTF-8").writer(new ByteArrayOutputStream());
+        try{
+            writer.beginList();
+            writer.endObject();
+        }finally{
+            writer.abort();
+        }
+    }
+
+    @Test
+    public void endAfterAbortIsRejected() throws Exception {
+        SValueWriter writer = new FastJsonFormat("UTF-8").writer(new ByteArrayOutputStream());
+        writer.beginObject();
+        writer.abort();
+        try{
+            writer.endObject();
+            fail("Ended an object after aborting");
+        }catch(FormatException e){
+            assertEquals("Writer is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void closingAnUnfinishedDocumentWritesNothing() throws Exception {
+        for(Format format : new Format[]{ new FastJsonFormat("UTF-8"), new JsonFormat("UTF-8") }){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            SValueWriter writer = format.writer(out);
+            writer.beginList();
+            writer.beginObject();
+            writer.name("a");
+            writer.value(1L);
+            writer.endObject();
+            try{
+                writer.close();
+                fail("Closed an unfinished document on " + format);
+            }catch(FormatException e){
+                //Expected
+            }
+            assertEquals(0, out.size());
+            //Already released, closing again does nothing
+            writer.close();
+        }
+    }
+}
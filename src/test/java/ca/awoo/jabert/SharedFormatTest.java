@@ -0,0 +1,138 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static ca.awoo.jabert.TestSupport.emit;
+import static ca.awoo.jabert.TestSupport.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ca.awoo.jabert.SValue.*;
+
+public class SharedFormatTest {
+
+    /**
+     * Round trips different messages through one format on several threads at once.
+     */
+    private static void shared(final Format format) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try{
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for(int t = 0; t < 4; t++){
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int checked = 0;
+                        for(int i = thread; i < 2000; i += 4){
+                            SValue expected = message(i);
+                            assertEquals(expected, format.parse(new ByteArrayInputStream(emit(format, expected))));
+                            checked++;
+                        }
+                        return checked;
+                    }
+                }));
+            }
+            int total = 0;
+            for(Future<Integer> future : futures){
+                total += future.get();
+            }
+            assertEquals(2000, total);
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void fastJsonCanBeShared() throws Exception {
+        shared(new FastJsonFormat("UTF-8"));
+        shared(new FastJsonFormat("UTF-16"));
+        shared(new FastJsonFormat("ISO-8859-1"));
+    }
+
+    @Test
+    public void otherFormatsCanBeShared() throws Exception {
+        shared(new JsonFormat("UTF-8"));
+        shared(new BinaryFormat());
+    }
+
+    @Test
+    public void errorOffsetsAreKeptPerCall() throws Exception {
+        final FastJsonFormat format = new FastJsonFormat("UTF-16");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try{
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for(int t = 0; t < 4; t++){
+                final int padding = t * 10;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        StringBuilder sb = new StringBuilder("[");
+                        for(int i = 0; i < padding; i++){
+                            sb.append(' ');
+                        }
+                        sb.append("1 x]");
+                        byte[] bytes = sb.toString().getBytes("UTF-16");
+                        for(int i = 0; i < 500; i++){
+                            try{
+                                format.parse(new ByteArrayInputStream(bytes));
+                                throw new AssertionError("Parsed invalid input");
+                            }catch(FormatException e){
+                                assertTrue(e.getMessage(), e.getMessage().endsWith(" at " + (padding + 4)));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for(Future<?> future : futures){
+                future.get();
+            }
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void decodingMatchesUtf8() throws Exception {
+        StringBuilder big = new StringBuilder();
+        for(int i = 0; i < 20000; i++){
+            big.append((char)('a' + i % 26));
+            if(i % 1000 == 0){
+                big.append("\\u00e9\\n\ud83d\ude00");
+            }
+        }
+        String json = "{\"big\":\"" + big + "\",\"n\":[1,2.5,-3e2],\"t\":true}";
+        SValue expected = new FastJsonFormat("UTF-8").parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        for(String encoding : new String[]{ "UTF-16", "UTF-16LE", "UTF-32" }){
+            FastJsonFormat format = new FastJsonFormat(encoding);
+            assertEquals(encoding, expected, format.parse(new ByteArrayInputStream(json.getBytes(encoding))));
+            //Again, with the pooled input reused
+            assertEquals(encoding, expected, format.parse(new ByteArrayInputStream(json.getBytes(encoding))));
+        }
+    }
+
+    @Test
+    public void malformedInputIsReplaced() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("[\"ab".getBytes("UTF-16BE"));
+        //A low surrogate with no high surrogate before it
+        out.write(0xDC);
+        out.write(0x00);
+        out.write("\"]".getBytes("UTF-16BE"));
+        SList list = (SList)new FastJsonFormat("UTF-16BE").parse(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(new SString("ab\ufffd"), list.get(0));
+    }
+
+    @Test(expected = FormatException.class)
+    public void unsupportedEncodingFailsWhenParsing() throws Exception {
+        new FastJsonFormat("no such encoding").parse(new ByteArrayInputStream(new byte[0]));
+    }
+}
@@ -1,13 +1,23 @@
 package ca.awoo.jabert;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
 
 import org.junit.Test;
 
-import ca.awoo.jabert.SValue.SList;
+import ca.awoo.jabert.SValue.*;
+import ca.awoo.praser.Context;
+import ca.awoo.praser.Text;
 
 public class SpeedTest {
     @Test
@@ -22,6 +32,37 @@ public class SpeedTest {
         assertEquals("test" + list.toString() + " on " + format.toString(), list, sv2);
     }
 
+    /**
+     * Times JsonFormat against reading the same bytes one boxed character at a time,
+     * which is as fast as its old combinator lexer could have gone before doing any lexing at all.
+     */
+    @Test
+    public void strictJsonSpeedTest() throws Exception {
+        SObject sv = payload(256 * 1024);
+        Format format = new JsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.emit(sv, out);
+        byte[] bytes = out.toByteArray();
+        long boxed = Long.MAX_VALUE;
+        long parse = Long.MAX_VALUE;
+        for(int round = 0; round < 5; round++){
+            long start = System.nanoTime();
+            Context<Character> chars = Text.contextFromStream(new ByteArrayInputStream(bytes), Charset.forName("UTF-8"));
+            int count = 0;
+            while(chars.next().isSome()){
+                count++;
+            }
+            boxed = Math.min(boxed, System.nanoTime() - start);
+            assertEquals(bytes.length, count);
+            start = System.nanoTime();
+            SValue parsed = format.parse(new ByteArrayInputStream(bytes));
+            parse = Math.min(parse, System.nanoTime() - start);
+            assertEquals(sv, parsed);
+        }
+        System.out.println("JsonFormat parsing " + bytes.length + " bytes: " + parse / 1000000 + "ms, reading them as boxed characters: " + boxed / 1000000 + "ms");
+        assertTrue("JsonFormat took " + parse + "ns, boxed characters " + boxed + "ns", parse < boxed);
+    }
+
     @Test
     public void fastJsonSpeedTest() throws Exception {
         SList list = new SList(FormatTest.everyValue(5));
@@ -33,4 +74,212 @@ public class SpeedTest {
         SValue sv2 = format.parse(new ByteArrayInputStream(bytes));
         assertEquals("test" + list.toString() + " on " + format.toString(), list, sv2);
     }
+
+    @Test
+    public void binarySpeedTest() throws Exception {
+        SObject sv = payload(100 * 1024);
+        Format[] formats = { new FastJsonFormat("UTF-8"), new BinaryFormat() };
+        for(Format format : formats){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            format.emit(sv, out);
+            byte[] bytes = out.toByteArray();
+            long start = System.nanoTime();
+            for(int i = 0; i < 20; i++){
+                out.reset();
+                format.emit(sv, out);
+            }
+            long emit = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < 20; i++){
+                assertEquals(sv, format.parse(new ByteArrayInputStream(bytes)));
+            }
+            long parse = System.nanoTime() - start;
+            System.out.println(format.getClass().getSimpleName() + " size: " + bytes.length + ", emit: " + emit / 1000000 + "ms, parse: " + parse / 1000000 + "ms");
+        }
+    }
+
+    /**
+     * Builds an object of roughly the given size when emitted as json.
+     */
+    public static SObject payload(int size){
+        SObject object = new SObject();
+        int i = 0;
+        while(size > 0){
+            SObject message = new SObject();
+            message.put("id", new SNumber(i));
+            message.put("user", new SString("user" + (i % 100)));
+            message.put("text", new SString("Hello, this is message number " + i + " in the room"));
+            message.put("edited", new SBool(i % 7 == 0));
+            object.put("message" + i, message);
+            size -= 100;
+            i++;
+        }
+        return object;
+    }
+
+    private long emitThroughput(Format format, SValue sv, OutputStream os, int iterations) throws Exception {
+        long bytes = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++){
+            CountingOutputStream counter = new CountingOutputStream(os);
+            format.emit(sv, counter);
+            bytes += counter.count;
+        }
+        long elapsed = System.nanoTime() - start;
+        return bytes * 1000000000L / Math.max(elapsed, 1);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream os;
+        private long count;
+
+        public CountingOutputStream(OutputStream os){
+            this.os = os;
+        }
+
+        @Override
+        public void write(int b) throws java.io.IOException {
+            os.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws java.io.IOException {
+            os.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws java.io.IOException {
+            os.flush();
+        }
+    }
+
+    @Test
+    public void emitSpeedTest() throws Exception {
+        SObject sv = payload(100 * 1024);
+        Format[] formats = { new FastJsonFormat("UTF-8"), new JsonFormat("UTF-8") };
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        Thread drain = new Thread(){
+            @Override
+            public void run(){
+                try{
+                    Socket s = server.accept();
+                    InputStream in = s.getInputStream();
+                    byte[] buf = new byte[65536];
+                    while(in.read(buf) >= 0){}
+                    s.close();
+                }catch(Exception e){
+                    e.printStackTrace();
+                }
+            }
+        };
+        drain.start();
+        Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+        try{
+            for(Format format : formats){
+                System.out.println(format.getClass().getSimpleName() + " to memory: " + emitThroughput(format, sv, new ByteArrayOutputStream(), 20) + " bytes/sec");
+                System.out.println(format.getClass().getSimpleName() + " to socket: " + emitThroughput(format, sv, socket.getOutputStream(), 20) + " bytes/sec");
+            }
+        }finally{
+            socket.close();
+            drain.join();
+            server.close();
+        }
+    }
+
+    @Test
+    public void fusedSpeedTest() throws Exception {
+        StreamingSerializerTest.Message[] messages = new StreamingSerializerTest.Message[2000];
+        for(int i = 0; i < messages.length; i++){
+            messages[i] = new StreamingSerializerTest.Message();
+            messages[i].id = i;
+            messages[i].text = "Hello, this is message number " + i;
+            messages[i].counts = new int[] { i, i + 1 };
+        }
+        Serializer serializer = Serializers.defaultSerializer();
+        Format format = new FastJsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        for(int i = 0; i < 20; i++){
+            out.reset();
+            format.emit(serializer.serialize(messages), out);
+        }
+        long twoStep = System.nanoTime() - start;
+        start = System.nanoTime();
+        for(int i = 0; i < 20; i++){
+            out.reset();
+            Serializers.emit(serializer, messages, format, out);
+        }
+        long fused = System.nanoTime() - start;
+        System.out.println("Two step: " + twoStep / 1000000 + "ms, fused: " + fused / 1000000 + "ms");
+    }
+
+    @Test
+    public void lazySpeedTest() throws Exception {
+        FastJsonFormat format = new FastJsonFormat("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.emit(payload(1024 * 1024), out);
+        byte[] bytes = out.toByteArray();
+        for(int round = 0; round < 3; round++){
+            long start = System.nanoTime();
+            for(int i = 0; i < 5; i++){
+                ((SObject)format.parse(new ByteArrayInputStream(bytes))).get("message7");
+            }
+            long eager = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < 5; i++){
+                ((SObject)((SObject)format.parseLazy(new ByteArrayInputStream(bytes))).get("message7")).get("text");
+            }
+            long lazy = System.nanoTime() - start;
+            if(round == 2){
+                System.out.println("Reading one field of " + bytes.length + " bytes, eager: " + eager / 1000000 + "ms, lazy: " + lazy / 1000000 + "ms");
+            }
+        }
+    }
+
+    public static class Accessed {
+        int number;
+        String text;
+    }
+
+    private static long accessorTime(FieldAccessor number, FieldAccessor text, Accessed a, int count) throws Exception {
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++){
+            number.setInt(a, number.getInt(a) + i);
+            text.set(a, text.get(a));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long fieldTime(Field number, Field text, Accessed a, int count) throws Exception {
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++){
+            number.setInt(a, number.getInt(a) + i);
+            text.set(a, text.get(a));
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void fieldAccessSpeedTest() throws Exception {
+        Field number = Accessed.class.getDeclaredField("number");
+        Field text = Accessed.class.getDeclaredField("text");
+        number.setAccessible(true);
+        text.setAccessible(true);
+        FieldAccessor numberAccessor = FieldAccessor.of(number);
+        FieldAccessor textAccessor = FieldAccessor.of(text);
+        Accessed a = new Accessed();
+        a.text = "text";
+        long accessor = Long.MAX_VALUE;
+        long field = Long.MAX_VALUE;
+        for(int round = 0; round < 5; round++){
+            accessor = Math.min(accessor, accessorTime(numberAccessor, textAccessor, a, 2000000));
+            field = Math.min(field, fieldTime(number, text, a, 2000000));
+        }
+        System.out.println("Field access, accessor: " + accessor / 1000000 + "ms, reflection: " + field / 1000000 + "ms");
+        assertEquals("text", a.text);
+        //The accessor is there to be faster than reflection, it must never fall behind it
+        assertTrue("Field accessor took " + accessor + "ns, reflection " + field + "ns", accessor <= field);
+    }
 }
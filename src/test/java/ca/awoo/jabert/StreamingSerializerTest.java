@@ -0,0 +1,176 @@
+package ca.awoo.jabert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ca.awoo.fwoabl.Optional;
+import ca.awoo.jabert.SValue.SString;
+
+public class StreamingSerializerTest {
+
+    public static class Message {
+        public long id;
+        public float score;
+        public char flag;
+        public boolean edited;
+        public String text;
+        public int[] counts;
+        public Message reply;
+        public List<Message> thread;
+        public Map<String, Integer> reactions;
+        @SerializeAsNull
+        public Optional<String> editedBy;
+        public Optional<Double> rating;
+        public transient String ignored;
+    }
+
+    private static Message message(long id){
+        Message m = new Message();
+        m.id = id;
+        m.score = 1.1f;
+        m.flag = 'x';
+        m.edited = id % 2 == 0;
+        m.text = "Hello \"world\" é\n";
+        m.counts = new int[] { 1, -2, 3 };
+        m.thread = new ArrayList<Message>();
+        m.reactions = new HashMap<String, Integer>();
+        m.reactions.put("smile", 3);
+        m.reactions.put("frown", 0);
+        m.editedBy = new Optional.None<String>();
+        m.rating = new Optional.Some<Double>(4.5);
+        return m;
+    }
+
+    private static List<Object> objects(){
+        List<Object> objects = new ArrayList<Object>();
+        objects.add(new ReflectionSerializerTest.TestClass(5, "Hello", new double[] { 1.0, 2.5 }));
+        objects.add(new ReflectionSerializerTest.BasicClass());
+        ReflectionSerializerTest.NullTestClass none = new ReflectionSerializerTest.NullTestClass();
+        none.x = new Optional.None<Integer>();
+        objects.add(none);
+        CollectionsSerializerTest.MapTestClass maps = new CollectionsSerializerTest.MapTestClass();
+        maps.map1 = new HashMap<String, String>();
+        maps.map1.put("key1", "value1");
+        maps.map2 = new TreeMap<String, String>();
+        maps.map2.put("key2", "value2");
+        objects.add(maps);
+        CollectionsSerializerTest.ListTestClass lists = new CollectionsSerializerTest.ListTestClass();
+        lists.list1 = new ArrayList<String>();
+        lists.list2 = new LinkedList<String>();
+        lists.list2.add("value");
+        objects.add(lists);
+        CollectionsSerializerTest.SetTestClass sets = new CollectionsSerializerTest.SetTestClass();
+        sets.set1 = new TreeSet<String>();
+        sets.set1.add("a");
+        sets.set1.add("b");
+        sets.set2 = new TreeSet<String>();
+        objects.add(sets);
+        SValueSerializerTest.TestClass svalue = new SValueSerializerTest.TestClass();
+        svalue.b = new SString("raw");
+        objects.add(svalue);
+        objects.add(new SerializableSerializerTest.TestClass(1, "s", new double[] { 1, 2 }));
+        Message m = message(1);
+        m.reply = message(2);
+        m.thread.add(message(3));
+        m.thread.add(message(4));
+        objects.add(m);
+        objects.add(new Message[] { message(5), null });
+        objects.add("just a string");
+        objects.add(12L);
+        return objects;
+    }
+
+    @Test
+    public void sameAsTwoStep() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Format[] formats = { new FastJsonFormat("UTF-8"), new JsonFormat("UTF-8") };
+        for(Format format : formats){
+            for(Object o : objects()){
+                ByteArrayOutputStream twoStep = new ByteArrayOutputStream();
+                format.emit(serializer.serialize(o), twoStep);
+                ByteArrayOutputStream fused = new ByteArrayOutputStream();
+                Serializers.emit(serializer, o, format, fused);
+                assertArrayEquals(twoStep.toString("UTF-8"), twoStep.toByteArray(), fused.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void sameAsTreeDeserialize() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Format[] formats = { new FastJsonFormat("UTF-8"), new JsonFormat("UTF-8") };
+        for(Format format : formats){
+            for(Object o : objects()){
+                if(o instanceof ReflectionSerializerTest.BasicClass){
+                    //A null string is written as null, which neither path can read back into a String
+                    continue;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Serializers.emit(serializer, o, format, out);
+                byte[] bytes = out.toByteArray();
+                Object tree = serializer.deserialize(format.parse(new ByteArrayInputStream(bytes)), o.getClass());
+                Object fused = Serializers.parse(serializer, o.getClass(), format, new ByteArrayInputStream(bytes));
+                assertEquals(new String(bytes, "UTF-8"), serializer.serialize(tree), serializer.serialize(fused));
+            }
+        }
+    }
+
+    @Test
+    public void unknownMembersSkipped() throws Exception {
+        String json = "{\"extra\": {\"deep\": [1, 2, \"}\"]}, \"x\": 7, \"more\": null}";
+        Serializer serializer = Serializers.defaultSerializer();
+        ReflectionSerializerTest.NullTestClass tc = (ReflectionSerializerTest.NullTestClass) Serializers.parse(serializer, ReflectionSerializerTest.NullTestClass.class, new FastJsonFormat("UTF-8"), new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals(new Integer(7), tc.x.get());
+    }
+
+    @Test
+    public void missingOptionalIsNone() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        ReflectionSerializerTest.NullTestClass tc = (ReflectionSerializerTest.NullTestClass) Serializers.parse(serializer, ReflectionSerializerTest.NullTestClass.class, new FastJsonFormat("UTF-8"), new ByteArrayInputStream("{}".getBytes("UTF-8")));
+        assertTrue(tc.x instanceof Optional.None);
+    }
+
+    @Test(expected = SerializationException.class)
+    public void missingField() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Serializers.parse(serializer, ReflectionSerializerTest.BasicClass.class, new FastJsonFormat("UTF-8"), new ByteArrayInputStream("{}".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void failedEmitWritesNothing() throws Exception {
+        Serializer serializer = Serializers.defaultSerializer();
+        Message m = message(1);
+        //Fails at the reply field, after most of the object has been written
+        m.reply = m;
+        Format[] formats = { new FastJsonFormat("UTF-8"), new FastJsonFormat("UTF-16"), new JsonFormat("UTF-8"), new BinaryFormat() };
+        for(Format format : formats){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try{
+                Serializers.emit(serializer, m, format, out);
+                fail("Emitted an object that contains itself");
+            }catch(SerializationException e){
+            }
+            assertEquals(0, out.size());
+            //The aborted writer went back to the pool and works again
+            Message ok = message(2);
+            Serializers.emit(serializer, ok, format, out);
+            ByteArrayOutputStream twoStep = new ByteArrayOutputStream();
+            format.emit(serializer.serialize(ok), twoStep);
+            assertArrayEquals(twoStep.toByteArray(), out.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ca.awoo.jabert;
+
+import java.io.ByteArrayOutputStream;
+
+import ca.awoo.jabert.SValue.*;
+
+/**
+ * Helpers and fixtures shared by the tests.
+ */
+final class TestSupport {
+    private TestSupport(){}
+
+    /**
+     * Emits a value to an array.
+     */
+    static byte[] emit(Format format, SValue sv) throws FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.emit(sv, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Emits a value to an array as UTF-8 json.
+     */
+    static byte[] emit(SValue sv) throws FormatException {
+        return emit(new FastJsonFormat("UTF-8"), sv);
+    }
+
+    /**
+     * Emits an object with a serializer to an array as UTF-8 json.
+     */
+    static byte[] emit(Serializer serializer, Object t) throws SerializationException, FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serializers.emit(serializer, t, new FastJsonFormat("UTF-8"), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds a chat message with every kind of value, escapes, non-ASCII text and nesting, which differs a little for each number.
+     * {@link SValueWriterTest} writes message 0 by hand, so the two must be changed together.
+     */
+    static SObject message(int i){
+        SObject room = new SObject();
+        room.put("id", new SNumber(42L));
+        room.put("name", new SString("lobby"));
+        SList values = new SList();
+        for(int j = 0; j < i % 7; j++){
+            values.add(new SNumber(j * 0.5));
+        }
+        SObject message = new SObject();
+        message.put("id", new SNumber((long)i));
+        message.put("type", new SString("chat"));
+        message.put("room", room);
+        message.put("user", new SString("fred \u00e9\n"));
+        message.put("text", new SString("message \u263a " + i + " \"quoted\"\n"));
+        message.put("score", new SNumber(1.5));
+        message.put("values", values);
+        message.put("members", new SList(new SString("a"), new SObject(), new SList(new SNumber(1L), new SNumber(2L))));
+        message.put("tags", new SList(new SBool(true), new SNull(), new SObject(), new SList()));
+        message.put("display name", new SBool(i % 2 == 0));
+        message.put("nothing", new SNull());
+        message.put("body", new SString("{[\"not\", \"json\"]}"));
+        return message;
+    }
+}